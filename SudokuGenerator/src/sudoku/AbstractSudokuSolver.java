@@ -0,0 +1,128 @@
+package sudoku;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Base class for the solvers. Everything about how many solutions a board
+ * has is answered by countSolutions(SudokuBoard, int), so a solver only has
+ * to know how to count, and listing them all is just draining the iterator
+ * from solutions(SudokuBoard).
+ *
+ * Every search gets its SearchContext from context(), which also counts the
+ * work of the search once the solver has been given stats to count into.
+ *
+ * @author Taras Mychaskiw
+ */
+public abstract class AbstractSudokuSolver implements SudokuSolver {
+
+    private volatile SearchStats stats;     //null unless counting
+
+    /**
+     * Counts the work of every search from now on into the stats. The same
+     * stats can be given to several solvers, to count them together.
+     *
+     * @param stats where to count, or null to stop counting
+     */
+    public void setStats(SearchStats stats){
+        this.stats = stats;
+    }
+
+    /**
+     * @return where the work of the searches is counted, or null if it is not
+     */
+    public SearchStats getStats(){
+        return stats;
+    }
+
+    /**
+     * Returns the context for a search to tick, asked once as it starts. If
+     * the solver is counting, it must be flushed once the search is done.
+     *
+     * @return the context of the search
+     */
+    protected SearchContext context(){
+        return SearchContext.current(stats);
+    }
+
+    /**
+     * Returns a list of all solutions to the board given.
+     *
+     * @param board the board to solve
+     * @return the list of all solutions to the board
+     */
+    @Override
+    public List<SudokuBoard> enumerate(SudokuBoard board){
+        List<SudokuBoard> list = new LinkedList<>();
+        for (Iterator<SudokuBoard> it = solutions(board); it.hasNext(); ){
+            list.add(it.next());
+        }
+        return list;
+    }
+
+    /**
+     * Returns true if the board is well formed, that is if the
+     * board only has one solution.
+     *
+     * @param board the board to test
+     * @return true if it only has one possible solution
+     */
+    @Override
+    public boolean isWellFormed(SudokuBoard board){
+        return countSolutions(board, 2) == 1;
+    }
+
+    /**
+     * Returns the formity of the board sent. The search stops as soon as a
+     * second solution is found.
+     *
+     * @param board the board to test
+     * @return 0 if no solutions, 1 if unique solution, -1 if multiple solutions
+     */
+    @Override
+    public int getFormity(SudokuBoard board){
+        return toFormity(countSolutions(board, 2));
+    }
+
+    /**
+     * Returns true if the board has a solution other than the known one in
+     * which the cell holds a different value. Tries each other legal value
+     * in the cell in turn and stops at the first solution found.
+     *
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
+     */
+    @Override
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, int cell){
+        final SudokuBoard other = new SudokuBoard(board);
+        other.clearCell(cell);
+        for (int value = other.nextOption(cell, 0); value != -1; value = other.nextOption(cell, value)){
+            if (value != knownSolution.getCell(cell)){
+                other.setCell(cell, value);
+                if (countSolutions(other, 1) > 0){
+                    return true;
+                }
+                other.clearCell(cell);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param count a number of solutions
+     * @return the formity of a board with that many solutions
+     */
+    public static int toFormity(int count){
+        switch (count){
+            case 0:
+                return NO_SOLUTIONS;
+            case 1:
+                return UNIQUE_SOLUTION;
+            default:
+                return MULTIPLE_SOLUTIONS;
+        }
+    }
+}
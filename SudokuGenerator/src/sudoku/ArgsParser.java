@@ -1,10 +1,15 @@
 package sudoku;
 
 import java.awt.Point;
+import sudoku.bitboard.BitboardSolver;
+import sudoku.bitboard.ParallelBitboardSolver;
+import sudoku.clp.ConstraintSolver;
+import sudoku.clp.PropagationLevel;
 import sudoku.generate.BottomUpGenerator;
 import sudoku.generate.DeductionGenerator;
 import sudoku.generate.SudokuGenerator;
 import sudoku.generate.TopDownGenerator;
+import sudoku.io.PuzzleFormat;
 import sudoku.util.ArrayUtil;
 
 /**
@@ -14,11 +19,24 @@ import sudoku.util.ArrayUtil;
  */
 public class ArgsParser {
 
-    private final SudokuGenerator gen;
+    private final Mode mode;
+    private final String input;             //puzzles to solve or verify
+    private final String genType;
     private final int p, q;
+    private final int workers;
+    private final boolean ordered;
     private final int num;
     private final String path;
+    private final PuzzleFormat format;
+    private final boolean gzip;
     private final boolean verbose;
+    private final boolean countWork;            //generating only, solving always counts
+    private final boolean parallel;             //bitboard searches over every core
+    private final int reportPeriod;             //seconds, 0 for only at the end
+    private final long timeout;                 //ms per puzzle, 0 for none
+    private final long nodeBudget;              //nodes per puzzle, 0 for none
+    private final SolverService.Policy policy;
+    private final PropagationLevel level;
 
     /**
      * Pulls all the information out of the command line arguments.
@@ -30,20 +48,54 @@ public class ArgsParser {
             usage();    //display help and exit
             System.exit(0);
         }
+        policy = parsePolicy(args);
+        level = parseLevel(args);
         Point size = parseSize(args);
         p = size.x; q = size.y;
-        gen = parseGen(args);
+        mode = parseMode(args);
+        input = mode == Mode.GENERATE ? null : parseInput(args);
+        genType = mode == Mode.GENERATE ? parseGenType(args) : null;
+        workers = parseWorkers(args);
+        ordered = ArrayUtil.contains(args, "-i");
         num = parseNum(args);
+        format = parseFormat(args);
+        gzip = ArrayUtil.contains(args, "-z");
         path = parsePath(args);
         verbose = ArrayUtil.contains(args, "-v");
+        countWork = ArrayUtil.contains(args, "-w");
+        parallel = ArrayUtil.contains(args, "-p");
+        reportPeriod = parseReportPeriod(args);
+        timeout = parseLimit(args, "-t");
+        nodeBudget = parseLimit(args, "-b");
     }
 
-    public SudokuGenerator getGenerator(){ return gen; }
+    /**
+     * What the program is asked to do.
+     */
+    public static enum Mode {
+        GENERATE,       //make new puzzles
+        SOLVE,          //solve the puzzles in a file
+        VERIFY          //find the formity of the puzzles in a file
+    }
+
+    public Mode getMode(){ return mode; }
+    public String getInput(){ return input; }
+    public int getNumWorkers(){ return workers; }
+    public boolean isOrdered(){ return ordered; }
     public int getSmallWidth(){ return p; }
     public int getSmallHeight(){ return q; }
     public int getNumToCreate(){ return num; }
     public String getPath(){ return path; }
+    public PuzzleFormat getFormat(){ return format; }
+    public boolean isGzip(){ return gzip; }
     public boolean isVerbose(){ return verbose; }
+    public boolean isCountingWork(){ return countWork; }
+    public boolean isParallel(){ return parallel; }
+    public int getReportPeriod(){ return reportPeriod; }
+    public long getTimeout(){ return timeout; }
+    public long getNodeBudget(){ return nodeBudget; }
+    public SolverService.Policy getPolicy(){ return policy; }
+    public PropagationLevel getLevel(){ return level; }
 
     /**
      * @param args the command line arguments
@@ -60,22 +112,102 @@ public class ArgsParser {
 
     /**
      * @param args the command line arguments
-     * @return the generator to use
+     * @return what to do
+     */
+    private Mode parseMode(String[] args){
+        final boolean solve = ArrayUtil.contains(args, "-solve");
+        final boolean verify = ArrayUtil.contains(args, "-verify");
+        if (solve && verify){
+            throw new IllegalArgumentException("use one of -solve or -verify, not both");
+        }
+        return solve ? Mode.SOLVE : verify ? Mode.VERIFY : Mode.GENERATE;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return the file of puzzles to solve or verify
+     */
+    private String parseInput(String[] args){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("-solve") || args[i].equals("-verify")){
+                if (i + 1 == args.length){
+                    throw new IllegalArgumentException(args[i] + " needs a file of puzzles");
+                }
+                return args[i+1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return the type of generator to use
      */
-    private SudokuGenerator parseGen(String[] args){
+    private String parseGenType(String[] args){
         for (int i = 0; i < args.length; i++){
             if (args[i].equals("-g")){
                 switch (args[i+1]) {
                     case "t":
-                        return new TopDownGenerator(p, q);
                     case "b":
-                        return new BottomUpGenerator(p, q);
                     case "d":
-                        return new DeductionGenerator(p, q);
+                        return args[i+1];
+                }
+            }
+        }
+        throw new IllegalArgumentException("generator type if required: use -g t|b|d");
+    }
+
+    /**
+     * Makes another generator of the type asked for, so every worker can
+     * have its own. They all share the one service.
+     *
+     * @param service the service the generator checks its boards with
+     * @return a new generator
+     */
+    public SudokuGenerator newGenerator(SolverService service){
+        switch (genType) {
+            case "t":
+                return new TopDownGenerator(p, q, service);
+            case "b":
+                return new BottomUpGenerator(p, q, service);
+            default:
+                return new DeductionGenerator(p, q, service);
+        }
+    }
+
+    /**
+     * Makes another solver for the puzzles of a file, so every worker can
+     * have its own. Bitboards are quickest on 9x9 boards, bigger ones need
+     * the matching of the constraint solver. With -p, every worker gets a
+     * parallel bitboard solver, all searching in the one shared pool.
+     *
+     * @return a new solver
+     */
+    public SudokuSolver newSolver(){
+        if (parallel){
+            return new ParallelBitboardSolver();
+        }
+        if (p * q <= 9){
+            return new BitboardSolver();
+        }
+        return new ConstraintSolver(level == PropagationLevel.SINGLES ? PropagationLevel.ALL_DIFFERENT : level);
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return how many generators to run at once
+     */
+    private int parseWorkers(String[] args){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("-j")){
+                int num = Integer.valueOf(args[i+1]);
+                if (num < 1){
+                    throw new IllegalArgumentException("need at least one worker, not " + num);
                 }
+                return num;
             }
         }
-        throw new IllegalArgumentException("generator type if required: use -g t|b");
+        return 1;
     }
 
     /**
@@ -101,14 +233,109 @@ public class ArgsParser {
                 return args[i+1];
             }
         }
-        return System.currentTimeMillis() + ".sudoku.txt";
+        switch (mode){
+            case SOLVE:
+                return input + ".solved." + format.getExtension() + (gzip ? ".gz" : "");
+            case VERIFY:
+                return input + ".verified.csv";
+            default:
+                return System.currentTimeMillis() + ".sudoku." + format.getExtension() + (gzip ? ".gz" : "");
+        }
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return how to write the sudoku problems
+     */
+    private PuzzleFormat parseFormat(String[] args){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("-f")){
+                return PuzzleFormat.parse(args[i+1]);
+            }
+        }
+        return PuzzleFormat.PRETTY;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return how the solvers are asked if boards are well formed
+     */
+    private SolverService.Policy parsePolicy(String[] args){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("-m")){
+                switch (args[i+1]) {
+                    case "race":
+                        return SolverService.Policy.RACE;
+                    case "route":
+                        return SolverService.Policy.ROUTE;
+                    case "hedge":
+                        return SolverService.Policy.HEDGE;
+                }
+                throw new IllegalArgumentException("unknown solver mode: use -m race|route|hedge");
+            }
+        }
+        return SolverService.Policy.RACE;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return how much the constraint solver propagates
+     */
+    private PropagationLevel parseLevel(String[] args){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("-l")){
+                for (PropagationLevel level : PropagationLevel.values()){
+                    if (level.name().equalsIgnoreCase(args[i+1])){
+                        return level;
+                    }
+                }
+                throw new IllegalArgumentException("unknown propagation level: use -l singles|intersections|subsets|all_different|fish");
+            }
+        }
+        return PropagationLevel.SINGLES;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @return how many seconds between dumps of the latencies, 0 for none until the end
+     */
+    private int parseReportPeriod(String[] args){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals("-r")){
+                int seconds = Integer.valueOf(args[i+1]);
+                if (seconds < 0){
+                    throw new IllegalArgumentException("the report period can not be negative");
+                }
+                return seconds;
+            }
+        }
+        return 10;
+    }
+
+    /**
+     * @param args the command line arguments
+     * @param flag the flag the limit follows
+     * @return the limit on each puzzle, 0 for none
+     */
+    private long parseLimit(String[] args, String flag){
+        for (int i = 0; i < args.length; i++){
+            if (args[i].equals(flag)){
+                long limit = Long.valueOf(args[i+1]);
+                if (limit < 0){
+                    throw new IllegalArgumentException("the limit of " + flag + " can not be negative");
+                }
+                return limit;
+            }
+        }
+        return 0;
     }
 
     /**
      * Displays usage details.
      */
     public void usage(){
-        System.out.println("Usage: java -cp ./build/classes sudoku.Main [-s p q] -g t|b|d [-n number] [-o path] [-v]\n\n"
+        System.out.println("Usage: java -cp ./build/classes sudoku.Main [-s p q] -g t|b|d [-n number] [-o path] [-f format [-z]] [-m race|route|hedge] [-l level] [-p] [-j workers [-i]] [-r seconds] [-w] [-v]\n"
+                + "       java -cp ./build/classes sudoku.Main -solve|-verify file [-s p q] [-o path] [-f format [-z]] [-l level] [-p] [-j workers] [-t ms] [-b nodes] [-r seconds]\n\n"
                 + "\t-s\tSpecifiy the size of the sudoku boards to create.\n"
                 + "\t\tp: width of the box regions\n"
                 + "\t\tq: height of the box regions\n"
@@ -117,12 +344,56 @@ public class ArgsParser {
                 + "\t\tt: use a top down generator\n"
                 + "\t\tb: use a bottom up generator\n"
                 + "\t\td: use a deduction generator\n\n"
+                + "\t-solve\tSolve every sudoku in the file instead, and write the\n"
+                + "\t\tsolutions in the same order, in the format of -f.\n"
+                + "\t\tThe file can be any format -f writes, gzipped or not.\n"
+                + "\t\tText files are read as boards of the size of -s.\n\n"
+                + "\t-verify\tFind if every sudoku in the file has one, none or\n"
+                + "\t\tmany solutions instead, and write them as csv lines.\n\n"
                 + "\t-n\tSpecify the number of sudokus to create.\n"
                 + "\t\tnumber: the number of sudokus to create\n"
                 + "\t\tBy default, 100 sudokus are created.\n\n"
                 + "\t-o\tSpecify the location to store the sudokus.\n"
                 + "\t\tpath: the file to store all the sudokus in\n"
                 + "\t\tBy default, \"[system_time].sudoku.txt\" is used.\n\n"
+                + "\t-f\tSpecify how to write the sudokus.\n"
+                + "\t\tline: one line per sudoku, a character per cell\n"
+                + "\t\tpretty: the grid, as printed in verbose mode\n"
+                + "\t\tcsv: puzzle, solution, clues and time in ms, as lines\n"
+                + "\t\tbinary: the cells packed into bits\n"
+                + "\t\tBy default, the pretty grid is used.\n\n"
+                + "\t-z\tCompress the output with gzip.\n\n"
+                + "\t-m\tSpecify how the solvers check the boards.\n"
+                + "\t\trace: run every solver at once, keep the first answer\n"
+                + "\t\troute: run only the solver learned to be fastest\n"
+                + "\t\thedge: like route, but start the next solver if it runs late\n"
+                + "\t\tBy default, the solvers race.\n\n"
+                + "\t-l\tSpecify how much the constraint solver propagates.\n"
+                + "\t\tlevel: singles, intersections, subsets, all_different or fish\n"
+                + "\t\tall_different helps a lot on 16x16 and bigger boards.\n"
+                + "\t\tBy default, only singles are propagated.\n\n"
+                + "\t-p\tSpread each bitboard search over every core, in one\n"
+                + "\t\tfork/join pool shared by all the workers. Pays off on\n"
+                + "\t\thard boards, 16x16 and up. Solving then always uses it.\n\n"
+                + "\t-j\tSpecify how many generators, or solvers, run at once.\n"
+                + "\t\tworkers: the number of worker threads\n"
+                + "\t\tBy default, one generator is used.\n\n"
+                + "\t-i\tWrite the problems in the order they were started,\n"
+                + "\t\tinstead of the order they were finished in.\n\n"
+                + "\t-t\tSpecify the most time to spend on one puzzle of a file.\n"
+                + "\t\tms: the time limit, 0 for none\n"
+                + "\t\tA puzzle which runs out is reported as timed out.\n"
+                + "\t\tBy default, there is no limit.\n\n"
+                + "\t-b\tSpecify the most nodes to search for one puzzle of a file.\n"
+                + "\t\tnodes: the node budget, 0 for none\n"
+                + "\t\tA puzzle which runs out is reported as out of nodes.\n"
+                + "\t\tBy default, there is no limit.\n\n"
+                + "\t-r\tSpecify how often the latencies are printed while running.\n"
+                + "\t\tseconds: the time between reports, 0 for none\n"
+                + "\t\tThey are always printed at the end. By default, every 10s.\n\n"
+                + "\t-w\tCount the nodes and backtracks of the solvers checking the\n"
+                + "\t\tgenerated boards. Off by default, the workers share the\n"
+                + "\t\tsolvers, and so the counts. Solving always counts.\n\n"
                 + "\t-v\tTurn verbose mode on, default off.\n"
         );
     }
@@ -0,0 +1,144 @@
+package sudoku;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The shape of a sudoku board of one particular size. Holds flat tables of
+ * the peers and units of every cell, built once when the size is first used.
+ * A geometry never changes after it is built, so one instance is shared by
+ * every board of the same size, from any thread.
+ *
+ * Units are numbered columns first, then rows, then boxes, which is the same
+ * order SudokuBoard has always listed a cell's units in.
+ *
+ * @author Taras Mychaskiw
+ */
+public final class BoardGeometry {
+
+    public static final int COLUMN = 0;
+    public static final int ROW = 1;
+    public static final int BOX = 2;
+    public static final int UNITS_PER_CELL = 3;
+
+    private static final ConcurrentMap<Long,BoardGeometry> cache = new ConcurrentHashMap<>();
+
+    private final int p, q, n;          //board dimensions
+    private final int numCells;
+    private final int numPeers;         //peers per cell, the same for all cells
+    private final int[] peers;          //numPeers entries per cell
+    private final int[] units;          //n cells per unit
+    private final int[] cellUnits;      //UNITS_PER_CELL unit indices per cell
+
+    /**
+     * Returns the geometry for boards with the given small box dimensions.
+     * The tables are only built the first time a size is asked for.
+     *
+     * @param p width of the small box
+     * @param q height of the small box
+     * @return the shared geometry for p by q boxes
+     */
+    public static BoardGeometry get(int p, int q){
+        final Long key = ((long)p << 32) | q;
+        BoardGeometry geometry = cache.get(key);
+        if (geometry == null){
+            geometry = new BoardGeometry(p, q);
+            BoardGeometry existing = cache.putIfAbsent(key, geometry);
+            if (existing != null){
+                geometry = existing;
+            }
+        }
+        return geometry;
+    }
+
+    /**
+     * Builds all the tables for the given box dimensions.
+     *
+     * @param p width of the small box
+     * @param q height of the small box
+     */
+    private BoardGeometry(int p, int q){
+        if (p <= 0 || q <= 0){
+            throw new IllegalArgumentException("box dimensions must be positive: " + p + "x" + q);
+        }
+        this.p = p;
+        this.q = q;
+        this.n = p * q;
+        this.numCells = n * n;
+        this.numPeers = 3*n - p - q - 1;
+
+        units = new int[UNITS_PER_CELL * n * n];
+        cellUnits = new int[UNITS_PER_CELL * numCells];
+        for (int i = 0; i < n; i++){
+            final int column = COLUMN*n + i, row = ROW*n + i, box = BOX*n + i;
+            final int boxX = (i % p) * q, boxY = (i / p) * p;
+            for (int j = 0; j < n; j++){
+                units[column*n + j] = j*n + i;
+                units[row*n + j] = i*n + j;
+                units[box*n + j] = (boxY + j / q)*n + boxX + j % q;
+            }
+        }
+        for (int unit = 0; unit < UNITS_PER_CELL * n; unit++){
+            for (int j = 0; j < n; j++){
+                cellUnits[units[unit*n + j]*UNITS_PER_CELL + unit / n] = unit;
+            }
+        }
+
+        //peers are listed in ascending order, the same cell is never listed twice
+        peers = new int[numCells * numPeers];
+        final boolean[] isPeer = new boolean[numCells];
+        for (int cell = 0; cell < numCells; cell++){
+            for (int kind = 0; kind < UNITS_PER_CELL; kind++){
+                final int unit = getUnit(cell, kind);
+                for (int j = 0; j < n; j++){
+                    isPeer[units[unit*n + j]] = true;
+                }
+            }
+            isPeer[cell] = false;
+            int pos = cell * numPeers;
+            for (int other = 0; other < numCells; other++){
+                if (isPeer[other]){
+                    peers[pos++] = other;
+                    isPeer[other] = false;
+                }
+            }
+        }
+    }
+
+    public int getSmallWidth(){ return p; }
+    public int getSmallHeight(){ return q; }
+    public int getSize(){ return n; }
+    public int getNumCells(){ return numCells; }
+    public int getNumUnits(){ return UNITS_PER_CELL * n; }
+    public int getNumPeers(){ return numPeers; }
+
+    /**
+     * @param cell the cell index
+     * @param i which peer, 0 &lt;= i &lt; getNumPeers()
+     * @return the ith peer of the cell
+     */
+    public int getPeer(int cell, int i){ return peers[cell*numPeers + i]; }
+
+    /**
+     * @param cell the cell index
+     * @param kind one of COLUMN, ROW or BOX
+     * @return the index of the unit of that kind the cell belongs to
+     */
+    public int getUnit(int cell, int kind){ return cellUnits[cell*UNITS_PER_CELL + kind]; }
+    public int getColumnUnit(int cell){ return getUnit(cell, COLUMN); }
+    public int getRowUnit(int cell){ return getUnit(cell, ROW); }
+    public int getBoxUnit(int cell){ return getUnit(cell, BOX); }
+
+    /**
+     * @param unit the unit index
+     * @param i which cell of the unit, 0 &lt;= i &lt; getSize()
+     * @return the ith cell of the unit
+     */
+    public int getUnitCell(int unit, int i){ return units[unit*n + i]; }
+
+    /**
+     * @param cell the cell index
+     * @return which box the cell is in, 0 &lt;= box &lt; getSize()
+     */
+    public int getBox(int cell){ return getBoxUnit(cell) - BOX*n; }
+}
@@ -1,20 +1,25 @@
 package sudoku;
 
-import java.util.BitSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Random;
 
 /**
  * Set of possible candidates, one of these will be needed for each cell in the
- * ConstraintBoard. A BitSet is used over a List<Boolean> or Set<Integer> to
- * avoid ConcurrentModifcationExceptions, since the size of the BitSet never
- * changes. A List could be written, but BitSet already has everything needed.
+ * ConstraintBoard. Candidates are kept as bits, bit (value - 1) is on if the
+ * value is a candidate. Sets for boards up to 64x64 fit in a single long,
+ * larger boards fall back to an array of longs.
+ *
+ * The static methods work on the same bit layout stored in a flat long[], so
+ * a whole board worth of candidates can be kept in one array and copied in
+ * bulk, without any CandidateSet objects at all.
  *
  * @author Taras Mychaskiw
  */
 public class CandidateSet implements Iterable<Integer> {
 
-    private final BitSet bitset;    //to hold the candidates
+    private long bits;              //the candidates, if MAX_SIZE <= 64
+    private final long[] words;     //the candidates, if MAX_SIZE > 64
     private final int MAX_SIZE;     //size of the board this set is for
     private static final Random rand = new Random();
 
@@ -24,9 +29,60 @@ public class CandidateSet implements Iterable<Integer> {
      * @param maxSize the highest value this can hold
      */
     public CandidateSet(int maxSize){
-        bitset = new BitSet(maxSize + 1);
-        bitset.set(1, maxSize + 1); //set all to true by default
         this.MAX_SIZE = maxSize;
+        if (maxSize <= Long.SIZE){
+            words = null;
+            bits = fullMask(maxSize);
+        }
+        else {
+            words = new long[numWords(maxSize)];
+            fill(words, 0, maxSize);
+        }
+    }
+
+    /**
+     * Constructs a new candidate set from a single word mask. Bits past
+     * maxSize are ignored.
+     *
+     * @param maxSize the highest value this can hold, at most 64
+     * @param mask the candidate bits
+     */
+    CandidateSet(int maxSize, long mask){
+        this.MAX_SIZE = maxSize;
+        this.words = null;
+        this.bits = mask & fullMask(maxSize);
+    }
+
+    /**
+     * Constructs a new candidate set from a mask, where bit (value - 1) is on
+     * if the value is a candidate. Bits past maxSize are ignored.
+     *
+     * @param maxSize the highest value this can hold
+     * @param mask the candidate bits, 64 values per long
+     */
+    CandidateSet(int maxSize, long[] mask){
+        this(maxSize, mask, 0);
+    }
+
+    /**
+     * Constructs a new candidate set by copying the words for a set out of a
+     * flat array of candidate words.
+     *
+     * @param maxSize the highest value this can hold
+     * @param src the flat array holding the set
+     * @param offset where the set starts in src
+     */
+    public CandidateSet(int maxSize, long[] src, int offset){
+        this.MAX_SIZE = maxSize;
+        if (maxSize <= Long.SIZE){
+            words = null;
+            bits = src[offset] & fullMask(maxSize);
+        }
+        else {
+            words = new long[numWords(maxSize)];
+            System.arraycopy(src, offset, words, 0, words.length);
+            words[words.length - 1] &= lastWordMask(maxSize);
+        }
     }
 
     /**
@@ -35,8 +91,9 @@ public class CandidateSet implements Iterable<Integer> {
      * @param other the CandidateSet to deep copy
      */
     public CandidateSet(CandidateSet other){
-        bitset = (BitSet)other.bitset.clone();
         this.MAX_SIZE = other.MAX_SIZE;
+        this.bits = other.bits;
+        this.words = other.words == null ? null : other.words.clone();
     }
 
     /**
@@ -44,7 +101,13 @@ public class CandidateSet implements Iterable<Integer> {
      * @return true if the candidate value sent is in the set
      */
     public boolean has(int cand){
-        return bitset.get(cand);
+        if (cand < 1 || cand > MAX_SIZE){
+            return false;
+        }
+        if (words == null){
+            return (bits & (1L << (cand - 1))) != 0;
+        }
+        return has(words, 0, cand);
     }
 
     /**
@@ -53,7 +116,12 @@ public class CandidateSet implements Iterable<Integer> {
      * @param cand the candidate to set to true
      */
     public void put(int cand){
-        bitset.set(cand);
+        if (words == null){
+            bits |= 1L << (cand - 1);
+        }
+        else {
+            words[(cand - 1) >>> 6] |= 1L << (cand - 1);
+        }
     }
 
     /**
@@ -62,22 +130,44 @@ public class CandidateSet implements Iterable<Integer> {
      * @param cand the candidate to remove
      */
     public void remove(int cand){
-        bitset.clear(cand);
+        if (words == null){
+            bits &= ~(1L << (cand - 1));
+        }
+        else {
+            words[(cand - 1) >>> 6] &= ~(1L << (cand - 1));
+        }
     }
 
     /**
-     * @return the first allowed candidate in the set
+     * @return the first allowed candidate in the set, or -1 if it is empty
      */
     public int getLowestValue(){
-        return bitset.nextSetBit(1);
+        return nextCandidate(0);
+    }
+
+    /**
+     * Returns the smallest candidate strictly greater than the value given.
+     * Iterate with: for (v = set.nextCandidate(0); v != -1; v = set.nextCandidate(v))
+     *
+     * @param value the value to search after, 0 to start from the beginning
+     * @return the next candidate, or -1 if there are no more
+     */
+    public int nextCandidate(int value){
+        if (words == null){
+            if (value >= Long.SIZE){
+                return -1;
+            }
+            final long rest = bits & (-1L << value);
+            return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest) + 1;
+        }
+        return nextCandidate(words, 0, words.length, value);
     }
 
     /**
      * @return a random allowed candidate in the set
      */
     public int getRandomValue(){
-        int value = rand.nextInt(MAX_SIZE);
-        value = bitset.nextSetBit(value);
+        int value = nextCandidate(rand.nextInt(MAX_SIZE));
         if (value == -1){
             return getLowestValue();
         }
@@ -95,14 +185,35 @@ public class CandidateSet implements Iterable<Integer> {
      * @return the number of candidates that are current on in the set
      */
     public int cardinality(){
-        return bitset.cardinality();
+        if (words == null){
+            return Long.bitCount(bits);
+        }
+        return cardinality(words, 0, words.length);
     }
 
     /**
      * @return true if the candidate set has no possible candidates
      */
     public boolean isEmpty(){
-        return bitset.isEmpty();
+        if (words == null){
+            return bits == 0;
+        }
+        return cardinality(words, 0, words.length) == 0;
+    }
+
+    /**
+     * Copies the words of this set into a flat array of candidate words.
+     *
+     * @param dest where to copy to
+     * @param offset where in dest this set should start
+     */
+    public void copyTo(long[] dest, int offset){
+        if (words == null){
+            dest[offset] = bits;
+        }
+        else {
+            System.arraycopy(words, 0, dest, offset, words.length);
+        }
     }
 
     /**
@@ -110,52 +221,132 @@ public class CandidateSet implements Iterable<Integer> {
      */
     @Override
     public String toString(){
-        return bitset.toString();
+        StringBuilder sb = new StringBuilder("{");
+        for (int v = nextCandidate(0); v != -1; v = nextCandidate(v)){
+            if (sb.length() > 1){
+                sb.append(", ");
+            }
+            sb.append(v);
+        }
+        return sb.append("}").toString();
     }
 
     /**
+     * Iterates over the candidates boxed, prefer nextCandidate(int) in loops
+     * that need to be fast.
+     *
      * @return candidate value iterator
      */
     @Override
     public Iterator<Integer> iterator(){
-        return new CandidateIterator(bitset);
+        return new Iterator<Integer>(){
+            int next = nextCandidate(0);
+
+            @Override
+            public boolean hasNext(){
+                return next != -1;
+            }
+
+            @Override
+            public Integer next(){
+                if (next == -1){
+                    throw new NoSuchElementException();
+                }
+                final int value = next;
+                next = nextCandidate(value);
+                return value;
+            }
+
+            @Override
+            public void remove(){
+                throw new UnsupportedOperationException();
+            }
+        };
     }
 
+
     /**
-     * Provides iteration over the set values in the set.
+     * @param maxSize the highest value a set can hold
+     * @return the number of longs one set takes in a flat array
      */
-    private class CandidateIterator implements Iterator<Integer> {
-        final BitSet set;
-        int next;
+    public static int numWords(int maxSize){
+        return (maxSize + 63) >>> 6;
+    }
 
-        CandidateIterator(BitSet set){
-            this.set = set;
-            next = 0;
-        }
+    /**
+     * @param maxSize the highest value a set can hold, at most 64
+     * @return the single word mask with all values 1..maxSize on
+     */
+    public static long fullMask(int maxSize){
+        return maxSize >= Long.SIZE ? -1L : (1L << maxSize) - 1;
+    }
 
-        /**
-         * Advances the next candidate, and returns true if there are more
-         * useful values.
-         *
-         * @return true if there are more values in the set
-         */
-        @Override
-        public boolean hasNext(){
-            next = set.nextSetBit(next + 1);
-            return next != -1;
+    /**
+     * @param maxSize the highest value a set can hold
+     * @return the mask of the bits in use in the last word of a set
+     */
+    private static long lastWordMask(int maxSize){
+        return fullMask(maxSize - ((numWords(maxSize) - 1) << 6));
+    }
+
+    /**
+     * Turns on all values 1..maxSize of the set starting at offset.
+     *
+     * @param words flat array of candidate words
+     * @param offset where the set starts
+     * @param maxSize the highest value the set can hold
+     */
+    public static void fill(long[] words, int offset, int maxSize){
+        final int num = numWords(maxSize);
+        for (int w = 0; w < num - 1; w++){
+            words[offset + w] = -1L;
         }
+        words[offset + num - 1] = lastWordMask(maxSize);
+    }
+
+    /**
+     * @param words flat array of candidate words
+     * @param offset where the set starts
+     * @param cand the candidate to check
+     * @return true if the candidate is on in the set
+     */
+    public static boolean has(long[] words, int offset, int cand){
+        return (words[offset + ((cand - 1) >>> 6)] & (1L << (cand - 1))) != 0;
+    }
 
-        /**
-         * @return the next value
-         */
-        @Override
-        public Integer next(){
-            return next;
+    /**
+     * @param words flat array of candidate words
+     * @param offset where the set starts
+     * @param numWords how many words the set takes
+     * @return the number of candidates on in the set
+     */
+    public static int cardinality(long[] words, int offset, int numWords){
+        int count = 0;
+        for (int w = 0; w < numWords; w++){
+            count += Long.bitCount(words[offset + w]);
         }
+        return count;
+    }
 
-        @Override
-        public void remove(){
-            throw new UnsupportedOperationException();
+    /**
+     * @param words flat array of candidate words
+     * @param offset where the set starts
+     * @param numWords how many words the set takes
+     * @param value the value to search after, 0 to start from the beginning
+     * @return the smallest candidate greater than value, or -1 if none
+     */
+    public static int nextCandidate(long[] words, int offset, int numWords, int value){
+        int w = value >>> 6;
+        if (w >= numWords){
+            return -1;
+        }
+        long rest = words[offset + w] & (-1L << value);
+        while (rest == 0){
+            if (++w == numWords){
+                return -1;
+            }
+            rest = words[offset + w];
         }
+        return (w << 6) + Long.numberOfTrailingZeros(rest) + 1;
     }
 }
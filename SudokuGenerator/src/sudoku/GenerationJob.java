@@ -0,0 +1,242 @@
+package sudoku;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import sudoku.generate.SudokuGenerator;
+import sudoku.io.PuzzleWriter;
+import sudoku.metrics.LatencyHistogram;
+import sudoku.metrics.MetricsRegistry;
+
+/**
+ * Generates a batch of problems with one worker thread per generator. Each
+ * worker takes the next sequence number and makes a problem for it, and hands
+ * it to the thread which called run() through a bounded queue. That thread is
+ * the only one which writes the problems out or adds up the statistics.
+ * If the output wants the solutions too, the workers solve their problems
+ * before handing them over.
+ *
+ * In order mode the problems are written in sequence number order, and the
+ * ones which come early wait until the ones before them are written. Workers
+ * can only take a sequence number when there is room for its problem, so the
+ * problems waiting in the queue or for their turn never number more than the
+ * capacity, however slow one problem is.
+ *
+ * @author Taras Mychaskiw
+ */
+class GenerationJob {
+
+    private static final int SLOTS_PER_WORKER = 4;  //problems in flight per worker
+
+    private final List<SudokuGenerator> generators;
+    private final int numToCreate;
+    private final boolean ordered;
+    private final SudokuSolver solver;          //for the solutions, or null
+    private final BlockingQueue<Result> queue;
+    private final Semaphore slots;              //room for problems not yet written
+    private final AtomicInteger next = new AtomicInteger();   //sequence number to take
+
+    //statistics, only touched by the writing thread
+    private int created;
+    private int minClues = Integer.MAX_VALUE;
+    private SudokuBoard minBoard;
+    private long totalClues, totalTime, wallTime;   //times in ns
+
+    /**
+     * @param generators one per worker, none of them are shared
+     * @param numToCreate how many problems to make
+     * @param ordered true to write the problems in sequence number order
+     * @param solver used to solve every problem for the output, or null if
+     * the solutions are not written
+     */
+    GenerationJob(List<SudokuGenerator> generators, int numToCreate, boolean ordered, SudokuSolver solver){
+        this.generators = generators;
+        this.numToCreate = numToCreate;
+        this.ordered = ordered;
+        this.solver = solver;
+        final int capacity = SLOTS_PER_WORKER * generators.size();
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.slots = new Semaphore(capacity);
+    }
+
+    /**
+     * Runs the workers, and writes every problem as it comes in.
+     *
+     * @param output where to write the problems
+     * @param verbose dump problems to screen if on
+     * @throws IOException if the problems can not be written
+     * @throws IllegalStateException if a generator failed
+     */
+    void run(PuzzleWriter output, boolean verbose) throws IOException {
+        final long start = System.nanoTime();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService workers = Executors.newFixedThreadPool(generators.size(), new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread thread = new Thread(task, "generator-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);     //never keeps the program alive
+                return thread;
+            }
+        });
+        try {
+            for (SudokuGenerator generator : generators){
+                workers.execute(new Worker(generator));
+            }
+            final PriorityQueue<Result> waiting = new PriorityQueue<>();   //come early, in order mode
+            int nextToWrite = 0;
+            while (created < numToCreate){
+                final Result result = queue.take();
+                if (result.failure != null){
+                    throw new IllegalStateException("generator failed on problem " + (result.seq + 1), result.failure);
+                }
+                if (!ordered){
+                    write(result, output, verbose);
+                    continue;
+                }
+                waiting.add(result);
+                while (!waiting.isEmpty() && waiting.peek().seq == nextToWrite){
+                    write(waiting.poll(), output, verbose);
+                    nextToWrite++;
+                }
+            }
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the generators");
+        } finally {
+            workers.shutdownNow();
+            wallTime = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Writes one problem, counts it, and makes room for another.
+     */
+    private void write(Result result, PuzzleWriter output, boolean verbose) throws IOException {
+        created++;
+        final int numClues = result.board.getNumClues();
+        if (numClues < minClues){
+            minClues = numClues;
+            minBoard = result.board;
+        }
+        totalClues += numClues;
+        totalTime += result.nanos;
+
+        System.out.print("problem " + (ordered ? result.seq + 1 : created) + " of " + numToCreate + ": ");
+        System.out.println(numClues + " / " + result.board.getNumCells() + " problem created, took "
+                + result.nanos / 1000000 + "ms");
+        if (verbose){
+            System.out.println(result.board);
+            System.out.println();
+        }
+        output.write(result.board, result.solution, result.nanos);
+        slots.release();
+    }
+
+    int getCreated(){ return created; }
+    int getMinClues(){ return minClues; }
+    SudokuBoard getMinBoard(){ return minBoard; }
+
+    /**
+     * @return the average number of clues of the problems written
+     */
+    double getAverageClues(){
+        return created == 0 ? 0 : (double)totalClues / created;
+    }
+
+    /**
+     * @return the average time one worker took to make a problem, in ms
+     */
+    double getAverageTime(){
+        return created == 0 ? 0 : totalTime / 1e6 / created;
+    }
+
+    /**
+     * @return how long the whole job took, in ms
+     */
+    long getWallTime(){
+        return wallTime / 1000000;
+    }
+
+    /**
+     * @return problems made per second over the whole job
+     */
+    double getThroughput(){
+        return wallTime == 0 ? 0 : created * 1e9 / wallTime;
+    }
+
+    /**
+     * A problem, or the failure of the worker meant to make it.
+     */
+    private static class Result implements Comparable<Result> {
+        final int seq;
+        final SudokuBoard board, solution;
+        final long nanos;
+        final Throwable failure;
+
+        Result(int seq, SudokuBoard board, SudokuBoard solution, long nanos, Throwable failure){
+            this.seq = seq;
+            this.board = board;
+            this.solution = solution;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+
+        @Override
+        public int compareTo(Result other){
+            return Integer.compare(seq, other.seq);
+        }
+    }
+
+    /**
+     * Makes problems with one generator until there are enough.
+     */
+    private class Worker implements Runnable {
+        private final SudokuGenerator generator;
+        private final LatencyHistogram problemTimes, solveTimes;
+
+        Worker(SudokuGenerator generator){
+            this.generator = generator;
+            final MetricsRegistry metrics = MetricsRegistry.getDefault();
+            problemTimes = metrics.timer("generator." + generator.getClass().getSimpleName() + ".getProblem");
+            solveTimes = solver == null ? null : metrics.timer("solver." + solver.getClass().getSimpleName() + ".solve");
+        }
+
+        @Override
+        public void run(){
+            int seq = -1;
+            try {
+                while (true){
+                    slots.acquire();
+                    seq = next.getAndIncrement();
+                    if (seq >= numToCreate){
+                        slots.release();
+                        return;
+                    }
+                    long time = System.nanoTime();
+                    SudokuBoard board = generator.getProblem();
+                    time = System.nanoTime() - time;
+                    problemTimes.record(time);
+                    SudokuBoard solution = null;
+                    if (solver != null){
+                        long start = System.nanoTime();
+                        solution = solver.solve(board);
+                        solveTimes.recordSince(start);
+                    }
+                    queue.put(new Result(seq, board, solution, time, null));
+                }
+            } catch (InterruptedException | CancellationException ex){
+                //the job is over
+            } catch (RuntimeException | Error ex){
+                queue.offer(new Result(seq, null, null, 0, ex));   //there is always room for the slot taken
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import sudoku.backtrack.BacktrackSolver;
+import sudoku.bitboard.BitboardSolver;
+import sudoku.clp.ConstraintSolver;
+import sudoku.dlx.ExactCoverSolver;
+
+/**
+ * Checks that the node budget and the deadline of a SearchContext stop a
+ * listing of solutions, with every solver, counting work or not. A 6x6 board
+ * with only one line given has 39168 solutions, found close together, so a
+ * solver which lets the limits slip between solutions runs through all of
+ * them and says it finished. The budget is smaller than the poll interval,
+ * and the search has to stop at exactly it.
+ *
+ * Counting, it also lists every solution, to check the solvers agree on what
+ * nodes and backtracks are: in a whole search each value which got below its
+ * node was taken back, to a node or to a solution, so there is one backtrack
+ * less than there are nodes and solutions together.
+ *
+ * @author Taras Mychaskiw
+ */
+public class LimitCheck {
+
+    private static final int BUDGET = 100;
+
+    /**
+     * @param args unused
+     */
+    public static void main(String[] args){
+        final SudokuBoard board = new SudokuBoard(3, 2);
+        for (int i = 0; i < board.getSize(); i++){
+            board.setCell(i * board.getSize(), i + 1);
+        }
+        List<AbstractSudokuSolver> solvers = new ArrayList<AbstractSudokuSolver>(){{
+            add(new BacktrackSolver());
+            add(new ConstraintSolver());
+            add(new ExactCoverSolver());
+            add(new BitboardSolver());
+        }};
+        int failed = 0;
+        for (AbstractSudokuSolver solver : solvers){
+            for (SearchStats stats : new SearchStats[]{ null, new SearchStats() }){
+                solver.setStats(stats);
+                String name = solver.getClass().getSimpleName() + (stats == null ? "" : " (counting)");
+                SearchResult budget = new SearchContext(BUDGET).enumerate(solver, board);
+                SearchResult deadline = new SearchContext(1, TimeUnit.MILLISECONDS).enumerate(solver, board);
+                boolean ok = budget.getStatus() == SearchResult.Status.OUT_OF_NODES
+                        && budget.getNodes() == BUDGET
+                        && deadline.getStatus() == SearchResult.Status.TIMED_OUT;
+                String counts = "";
+                if (stats != null){
+                    stats.reset();
+                    SearchResult all = new SearchContext().enumerate(solver, board);
+                    ok &= all.isFinished() && stats.getBacktracks() == stats.getNodes() - 1 + all.getCount();
+                    counts = ", all " + all.getCount() + " solutions with " + stats;
+                }
+                System.out.println((ok ? "ok     " : "FAILED ") + name + ": budget " + budget + ", deadline " + deadline + counts);
+                if (!ok){
+                    failed++;
+                }
+            }
+            solver.setStats(null);
+        }
+        if (failed > 0){
+            System.out.println(failed + " failed");
+            System.exit(1);
+        }
+    }
+}
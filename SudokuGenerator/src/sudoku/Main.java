@@ -1,12 +1,24 @@
 package sudoku;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import sudoku.clp.ConstraintSolver;
+import sudoku.clp.PropagationLevel;
 import sudoku.generate.SudokuGenerator;
+import sudoku.io.PuzzleFormat;
+import sudoku.io.PuzzleReader;
+import sudoku.io.PuzzleWriter;
+import sudoku.metrics.MetricsRegistry;
+import sudoku.metrics.MetricsReporter;
 import sudoku.util.StringUtil;
 
 /**
@@ -21,11 +33,18 @@ public class Main {
      */
     public static void main(String[] args){
         ArgsParser parse = new ArgsParser(args);
+        if (parse.getMode() != ArgsParser.Mode.GENERATE){
+            check(parse);
+            return;
+        }
 
         int p = parse.getSmallWidth(), q = parse.getSmallHeight();
         int size = p * q;
-        SudokuGenerator gen = parse.getGenerator();
+        SolverService service = new SolverService(parse.getLevel(), parse.isParallel());    //not the default, which others may share
+        service.setPolicy(parse.getPolicy());
+        SudokuGenerator gen = parse.newGenerator(service);
         int num = parse.getNumToCreate();
+        int workers = parse.getNumWorkers();
         String path = parse.getPath();
         boolean verbose = parse.isVerbose();
 
@@ -33,91 +52,256 @@ public class Main {
         System.out.println("generator......: " + gen.getClass().getSimpleName());
         System.out.println("will create....: " + num + " sudoku problems");
         System.out.println("output file....: " + path);
+        System.out.println("output format..: " + parse.getFormat().name().toLowerCase() + (parse.isGzip() ? ", gzip" : ""));
+        System.out.println("workers........: " + workers + (workers > 1 && parse.isOrdered() ? " (in order)" : ""));
+        System.out.println("solver mode....: " + parse.getPolicy().name().toLowerCase());
+        System.out.println("propagation....: " + parse.getLevel().name().toLowerCase());
+        System.out.println("parallel search: " + (parse.isParallel() ? "on" : "off"));
+        System.out.println("report every...: " + reportPeriod(parse));
+        System.out.println("search work....: " + (parse.isCountingWork() ? "counted" : "not counted"));
         System.out.println("verbose mode...: " + (verbose ? "on" : "off"));
         System.out.println();
 
-        run(gen, num, path, verbose);
+        List<SudokuGenerator> generators = new ArrayList<>(workers);
+        generators.add(gen);
+        while (generators.size() < workers){
+            generators.add(parse.newGenerator(service));
+        }
+        run(generators, service, num, path, parse.getFormat(), parse.isGzip(), parse.isOrdered(),
+                parse.getReportPeriod(), parse.isCountingWork(), verbose);
     }
 
     /**
-     * Writes all the problems into the file.
-     *
-     * @param problems the sudoku problems to save
-     * @param output where to save the problems
+     * Runs the program.
+     * @param generator what to use to generate the sudoku problems
+     * @param service the service the generator checks its boards with
+     * @param numToCreate how many problems to create
+     * @param output where to store the problems
+     * @param verbose dump problems to screen if on
      */
-    public static void writeFile(List<SudokuBoard> problems, String output){
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(output))){
-            for (SudokuBoard board : problems){
-                writer.write(board + "\n\n");
-            }
-            writer.close();
-            System.out.println("output file created: " + output);
-        } catch (IOException ex){
-            System.err.println("FAILED TO WRITE OUTPUT FILE");
-        }
+    public static void run(SudokuGenerator generator, SolverService service, int numToCreate, String output, final boolean verbose){
+        run(Collections.singletonList(generator), service, numToCreate, output, PuzzleFormat.PRETTY, false, true, 0, false, verbose);
     }
 
     /**
-     * Runs the program.
-     * @param generator what to use to generate the sudoku problems
+     * Runs the program with a worker thread per generator. The problems are
+     * written to the file as they come in.
+     * @param generators what to use to generate the sudoku problems, one per worker
+     * @param service the service the generators check their boards with
      * @param numToCreate how many problems to create
      * @param output where to store the problems
+     * @param format how to write the problems
+     * @param gzip compress the file if on
+     * @param ordered write the problems in the order they were started
+     * @param reportPeriod seconds between printing the latencies, 0 for only at the end
+     * @param count count the work of the service's solvers, which every worker shares
      * @param verbose dump problems to screen if on
      */
-    public static void run(SudokuGenerator generator, int numToCreate, String output, final boolean verbose){
-        List<SudokuBoard> problems = new ArrayList<>(numToCreate);
-        int minClues = Integer.MAX_VALUE;
-        SudokuBoard minBoard = null;
-        int totalClues = 0;
-        long totalTime = 0;
-        //maxTime is always the first board generated due to JIT it seems
-        //long maxTime = Long.MIN_VALUE;
-        //SudokuBoard maxBoard = null;
-        for (int i = 1; i <= numToCreate; i++){
-            long time = System.currentTimeMillis();
-            SudokuBoard board = generator.getProblem();
-            time = System.currentTimeMillis() - time;
-
-            int numClues = board.getNumClues();
-            int numCells = board.getNumCells();
-            if (numClues < minClues){
-                minClues = numClues;
-                minBoard = board;
+    public static void run(List<SudokuGenerator> generators, SolverService service, int numToCreate, String output,
+            PuzzleFormat format, boolean gzip, boolean ordered, int reportPeriod, boolean count, final boolean verbose){
+        //any size of board, and a generated problem needs next to no guessing
+        SudokuSolver solver = format.needsSolution() ? new ConstraintSolver(PropagationLevel.ALL_DIFFERENT) : null;
+        List<SearchStats> work = new ArrayList<>();
+        if (count){
+            for (SudokuSolver s : service.getSolvers()){
+                work.add(countWork(s));
             }
-            /*
-            if (time > maxTime){
-                maxTime = time;
-                maxBoard = board;
-            }
-                    */
-            totalClues += numClues;
-            totalTime += time;
-
-            System.out.print("problem " + i + " of " + numToCreate + ": ");
-            System.out.println(numClues + " / " + numCells + " problem created, took " + time + "ms");
-            if (verbose){
-                System.out.println(board);
-                System.out.println();
+        }
+        GenerationJob job = new GenerationJob(generators, numToCreate, ordered, solver);
+        MetricsReporter reporter = startReporter(reportPeriod);
+        try (PuzzleWriter writer = PuzzleWriter.open(output, format, gzip)){
+            job.run(writer, verbose);
+        } catch (IOException ex){
+            System.err.println("FAILED TO WRITE OUTPUT FILE");
+            return;
+        } finally {
+            if (reporter != null){
+                reporter.close();
             }
-            problems.add(board);
         }
 
-        System.out.println("\nboard with minimal number of clues ("+minClues+") created:\n" + minBoard);
-        //System.out.println("\nboard that took longest to create ("+maxTime+"ms):\n" + maxBoard);
+        System.out.println("\nboard with minimal number of clues ("+job.getMinClues()+") created:\n" + job.getMinBoard());
 
         System.out.println("\nsolver statistics");
         System.out.println("        strategy        |  wins  ");
         System.out.println("------------------------+--------");
-        Map<Class,Integer> wins = SolverService.getWinMap();
+        Map<Class,Integer> wins = service.getWinMap();
         for (Class strat : wins.keySet()){
             String name = " " + StringUtil.padRight(strat.getSimpleName(), ' ', 23);
             System.out.println(name + "|  " + wins.get(strat));
         }
+        System.out.println("checks raced:  " + service.getRaceCount());
+        System.out.println("checks routed: " + service.getRoutedCount()
+                + " (" + service.getFallbackCount() + " raced after the solver failed)");
+        System.out.println("checks hedged: " + service.getHedgedCount()
+                + " (" + service.getHedgesFired() + " backups started, " + service.getHedgesWon() + " won)");
+        SearchStats total = new SearchStats();
+        if (count){
+            System.out.println();
+            System.out.println(workHeader());
+            for (int i = 0; i < work.size(); i++){
+                if (work.get(i) != null){
+                    System.out.println(workRow(service.getSolvers().get(i).getClass().getSimpleName(), work.get(i)));
+                    total.add(work.get(i));
+                }
+            }
+        }
+        System.out.println();
+        System.out.println("average number of clues per puzzle:  " + job.getAverageClues());
+        System.out.println("average time to generate one puzzle: " + job.getAverageTime() + "ms" + (!count ? "" : " ("
+                + perPuzzle(total.getNodes(), job.getCreated()) + " nodes, "
+                + perPuzzle(total.getBacktracks(), job.getCreated()) + " backtracks, every solver)"));
+        System.out.println("total time with " + generators.size() + " workers:  " + job.getWallTime()
+                + "ms (" + String.format("%.1f", job.getThroughput()) + " puzzles/s)");
+        System.out.println("\nlatency");
+        MetricsRegistry.getDefault().dump(System.out);
+        System.out.println();
+        System.out.println("output file created: " + output);
+    }
+
+    /**
+     * Solves or verifies every puzzle of the input file, as the arguments ask.
+     * @param parse the command line arguments
+     */
+    private static void check(ArgsParser parse){
+        boolean verify = parse.getMode() == ArgsParser.Mode.VERIFY;
+        int workers = parse.getNumWorkers();
+        String path = parse.getPath();
+        PuzzleFormat format = parse.getFormat();
+
+        System.out.println("mode...........: " + parse.getMode().name().toLowerCase());
+        System.out.println("input file.....: " + parse.getInput());
+        System.out.println("output file....: " + path);
+        if (!verify){
+            System.out.println("output format..: " + format.name().toLowerCase() + (parse.isGzip() ? ", gzip" : ""));
+        }
+        List<SudokuSolver> solvers = new ArrayList<>(workers);
+        List<SearchStats> work = new ArrayList<>(workers);
+        while (solvers.size() < workers){
+            solvers.add(parse.newSolver());
+            work.add(countWork(solvers.get(solvers.size() - 1)));
+        }
+        System.out.println("solver.........: " + solvers.get(0).getClass().getSimpleName());
+        System.out.println("workers........: " + workers);
+        System.out.println("time limit.....: " + (parse.getTimeout() == 0 ? "none" : parse.getTimeout() + "ms"));
+        System.out.println("node budget....: " + (parse.getNodeBudget() == 0 ? "none" : parse.getNodeBudget()));
+        System.out.println("report every...: " + reportPeriod(parse));
+        System.out.println();
+
+        SolveJob job = new SolveJob(solvers, verify, format.needsSolution(), parse.getTimeout(), parse.getNodeBudget());
+        MetricsReporter reporter = startReporter(parse.getReportPeriod());
+        try (PuzzleReader reader = PuzzleReader.open(parse.getInput(), parse.getSmallWidth(), parse.getSmallHeight())){
+            if (verify){
+                try (Writer report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path), StandardCharsets.US_ASCII))){
+                    report.write("puzzle,formity,time_ms,nodes,backtracks\n");
+                    job.run(reader, null, report);
+                }
+            } else {
+                try (PuzzleWriter writer = PuzzleWriter.open(path, format, parse.isGzip())){
+                    job.run(reader, writer, null);
+                }
+            }
+        } catch (IOException ex){
+            System.err.println("FAILED: " + ex.getMessage());
+            return;
+        } finally {
+            if (reporter != null){
+                reporter.close();
+            }
+        }
+
+        System.out.println();
+        if (verify){
+            System.out.println("unique solution:   " + job.getCount(SudokuSolver.UNIQUE_SOLUTION));
+            System.out.println("many solutions:    " + job.getCount(SudokuSolver.MULTIPLE_SOLUTIONS));
+            System.out.println("no solution:       " + job.getCount(SudokuSolver.NO_SOLUTIONS));
+        } else {
+            System.out.println("solved:            " + job.getCount(SudokuSolver.UNIQUE_SOLUTION));
+            System.out.println("no solution:       " + job.getCount(SudokuSolver.NO_SOLUTIONS));
+        }
+        System.out.println("timed out:         " + job.getStopped(SearchResult.Status.TIMED_OUT));
+        System.out.println("out of nodes:      " + job.getStopped(SearchResult.Status.OUT_OF_NODES));
+        System.out.println("\nslowest puzzles:");
+        for (String slow : job.getSlowest()){
+            System.out.println("  " + slow);
+        }
+        SearchStats total = new SearchStats();
+        for (SearchStats stats : work){
+            if (stats != null){
+                total.add(stats);
+            }
+        }
+        System.out.println();
+        System.out.println(workHeader());
+        System.out.println(workRow(solvers.get(0).getClass().getSimpleName(), total));
         System.out.println();
-        System.out.println("average number of clues per puzzle:  " + ((double)totalClues / numToCreate));
-        System.out.println("average time to generate one puzzle: " + ((double)totalTime / numToCreate) + "ms");
+        System.out.println("average time for one puzzle: " + String.format("%.3f", job.getAverageTime()) + "ms ("
+                + perPuzzle(total.getNodes(), job.getRead()) + " nodes, "
+                + perPuzzle(total.getBacktracks(), job.getRead()) + " backtracks)");
+        System.out.println("total time with " + workers + " workers: " + job.getWallTime()
+                + "ms (" + String.format("%.1f", job.getThroughput()) + " puzzles/s)");
+        System.out.println("\nlatency");
+        MetricsRegistry.getDefault().dump(System.out);
         System.out.println();
+        System.out.println("output file created: " + path);
+    }
+
+    /**
+     * @param seconds how often to print the latencies while running, 0 for never
+     * @return what prints them until it is closed, or null if nothing does
+     */
+    static MetricsReporter startReporter(int seconds){
+        return seconds == 0 ? null : new MetricsReporter(MetricsRegistry.getDefault(), System.out, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param parse the command line arguments
+     * @return the report period, for the header
+     */
+    private static String reportPeriod(ArgsParser parse){
+        return parse.getReportPeriod() == 0 ? "end only" : parse.getReportPeriod() + "s";
+    }
 
-        writeFile(problems, output);
+    /**
+     * Has the solver count the work of its searches, if it can.
+     *
+     * @param solver the solver
+     * @return where it counts, or null if it is not a solver which counts
+     */
+    static SearchStats countWork(SudokuSolver solver){
+        if (!(solver instanceof AbstractSudokuSolver)){
+            return null;
+        }
+        final AbstractSudokuSolver counting = (AbstractSudokuSolver)solver;
+        if (counting.getStats() == null){
+            counting.setStats(new SearchStats());
+        }
+        return counting.getStats();
+    }
+
+    /**
+     * @return the heading of the table of search work, see workRow()
+     */
+    static String workHeader(){
+        return "        strategy        |     nodes    |  backtracks  |  assignments | eliminations |    covers    | depth\n"
+             + "------------------------+--------------+--------------+--------------+--------------+--------------+------";
+    }
+
+    /**
+     * @param name what did the work
+     * @param stats the work it did
+     * @return a row of the table of search work
+     */
+    static String workRow(String name, SearchStats stats){
+        return " " + StringUtil.padRight(name, ' ', 23) + String.format("|%13d |%13d |%13d |%13d |%13d |%5d",
+                stats.getNodes(), stats.getBacktracks(), stats.getAssignments(), stats.getEliminations(),
+                stats.getCovers(), stats.getMaxDepth());
+    }
+
+    /**
+     * @return the count per puzzle, 0 if there were none
+     */
+    private static long perPuzzle(long count, long puzzles){
+        return puzzles == 0 ? 0 : count / puzzles;
     }
 }
@@ -0,0 +1,225 @@
+package sudoku;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * What the SolverService has learned about its solvers. Boards are sorted
+ * into buckets by their size and by how many of their cells are clues, and
+ * each bucket keeps a moving average of how long every solver takes there,
+ * along with how many races each one has won.
+ *
+ * A race only times the winner; the losers are known to be at least as slow
+ * as the winner, so their averages are raised to that if they were lower.
+ * The last few times of each solver are also kept, so the service can tell
+ * how long a solver usually takes before deciding it is running late. A
+ * solver stopped because a backup beat it keeps how long it had run there
+ * too, or its slowest times would never be among them.
+ *
+ * @author Taras Mychaskiw
+ */
+class RoutingModel {
+
+    static final int DENSITY_BUCKETS = 10;  //clue density is cut into tenths
+    static final int MIN_RACES = 3;         //races in a bucket before routing
+    static final int RECENT = 32;           //times kept per solver per bucket
+    private static final double WEIGHT = 0.2;   //weight of the newest time
+
+    private final int numSolvers;
+    private final ConcurrentMap<Integer,Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile double exploreRate = 0.05;
+
+    /**
+     * @param numSolvers how many solvers are being learned about
+     */
+    RoutingModel(int numSolvers){
+        this.numSolvers = numSolvers;
+    }
+
+    double getExploreRate(){ return exploreRate; }
+    void setExploreRate(double rate){ exploreRate = rate; }
+
+    /**
+     * @param board the board about to be asked about
+     * @return the bucket the board falls into
+     */
+    Bucket getBucket(SudokuBoard board){
+        final int density = board.getNumClues() * DENSITY_BUCKETS / board.getNumCells();
+        final Integer key = board.getSize() * (DENSITY_BUCKETS + 1) + density;
+        Bucket bucket = buckets.get(key);
+        if (bucket == null){
+            Bucket fresh = new Bucket(board.getSize(), density);
+            bucket = buckets.putIfAbsent(key, fresh);
+            if (bucket == null){
+                bucket = fresh;
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Boards of one size and about the same number of clues.
+     */
+    class Bucket {
+        final int size, density;
+        private final double[] average = new double[numSolvers];   //ns, 0 if unknown
+        private final int[] raceWins = new int[numSolvers];
+        private final int[] answers = new int[numSolvers];
+        private final long[][] recent = new long[numSolvers][RECENT];  //ring of times, ns
+        private final int[] samples = new int[numSolvers];     //times put in the ring
+        private int races;
+
+        Bucket(int size, int density){
+            this.size = size;
+            this.density = density;
+        }
+
+        /**
+         * Picks the solver expected to answer first, or -1 if the bucket
+         * should be raced instead. Buckets are raced until they have seen
+         * a few races, and then every so often to keep the averages honest.
+         *
+         * @return the index of the solver to use, or -1 to race them all
+         */
+        synchronized int predict(){
+            if (races < MIN_RACES || ThreadLocalRandom.current().nextDouble() < exploreRate){
+                return -1;
+            }
+            return best();
+        }
+
+        /**
+         * @return the index of the solver with the lowest average, or -1 if
+         * nothing is known about the bucket yet
+         */
+        synchronized int best(){
+            int best = -1;
+            for (int i = 0; i < numSolvers; i++){
+                if (average[i] > 0 && (best < 0 || average[i] < average[best])){
+                    best = i;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Records a race.
+         *
+         * @param winner the index of the solver that answered first
+         * @param nanos how long it took
+         */
+        synchronized void recordRace(int winner, long nanos){
+            races++;
+            raceWins[winner]++;
+            for (int i = 0; i < numSolvers; i++){
+                if (i == winner){
+                    update(i, nanos);
+                }
+                else {
+                    recordSlower(i, nanos);
+                }
+            }
+        }
+
+        /**
+         * Records that a solver was stopped before it answered.
+         *
+         * @param solver the index of the solver
+         * @param nanos how long it ran, it would have taken at least this long
+         */
+        synchronized void recordSlower(int solver, long nanos){
+            if (average[solver] < nanos){
+                average[solver] = nanos;
+            }
+        }
+
+        /**
+         * Records that a solver asked by a hedge was stopped when another
+         * one answered first. How long it ran also goes into its recent
+         * times, it is a lower bound, but one from its slow tail.
+         *
+         * @param solver the index of the solver
+         * @param nanos how long it ran
+         */
+        synchronized void recordStopped(int solver, long nanos){
+            recordSlower(solver, nanos);
+            sample(solver, nanos);
+        }
+
+        /**
+         * Records a question sent to only one solver.
+         *
+         * @param solver the index of the solver
+         * @param nanos how long it took
+         */
+        synchronized void recordAnswer(int solver, long nanos){
+            update(solver, nanos);
+        }
+
+        /**
+         * Folds a new time into the moving average of the solver.
+         */
+        private void update(int solver, long nanos){
+            sample(solver, nanos);
+            answers[solver]++;
+            average[solver] = average[solver] == 0 ? nanos : WEIGHT*nanos + (1 - WEIGHT)*average[solver];
+        }
+
+        private void sample(int solver, long nanos){
+            recent[solver][samples[solver]++ % RECENT] = nanos;
+        }
+
+        /**
+         * Returns the time within which the solver has given the fraction of
+         * its recent answers, or was stopped in a hedge. If it has no recent
+         * times, its average is used.
+         *
+         * @param solver the index of the solver
+         * @param percentile the fraction of answers, 0 to 1
+         * @return the time in ns, 0 if nothing is known about the solver
+         */
+        synchronized long getPercentile(int solver, double percentile){
+            final int num = Math.min(samples[solver], RECENT);
+            if (num == 0){
+                return (long)average[solver];
+            }
+            final long[] times = Arrays.copyOf(recent[solver], num);
+            Arrays.sort(times);
+            final int rank = Math.max(0, (int)Math.ceil(percentile * num) - 1);
+            return times[Math.min(num - 1, rank)];
+        }
+
+        /**
+         * @param first the index of the solver asked first
+         * @return the other solvers, the lowest average first, unknown ones last
+         */
+        synchronized int[] getBackupOrder(int first){
+            final Integer[] order = new Integer[numSolvers - 1];
+            for (int i = 0, j = 0; i < numSolvers; i++){
+                if (i != first){
+                    order[j++] = i;
+                }
+            }
+            Arrays.sort(order, new Comparator<Integer>(){
+                @Override
+                public int compare(Integer a, Integer b){
+                    final double x = average[a], y = average[b];
+                    return x == y ? 0 : x == 0 ? 1 : y == 0 ? -1 : Double.compare(x, y);
+                }
+            });
+            final int[] result = new int[order.length];
+            for (int i = 0; i < order.length; i++){
+                result[i] = order[i];
+            }
+            return result;
+        }
+
+        synchronized int getRaces(){ return races; }
+        synchronized int getRaceWins(int solver){ return raceWins[solver]; }
+        synchronized int getAnswers(int solver){ return answers[solver]; }
+        synchronized double getAverage(int solver){ return average[solver]; }
+    }
+}
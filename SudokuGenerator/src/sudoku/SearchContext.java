@@ -0,0 +1,417 @@
+package sudoku;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits on a search: a deadline, a budget of nodes, and a way to cancel it
+ * from another thread. A solver call run through one of the methods here
+ * comes back with a SearchResult, which says if the search was cut short
+ * instead of throwing.
+ *
+ * While a call runs, the context is the current one of its thread, and the
+ * searches of every solver tick it once per node. Only every POLL_INTERVAL
+ * ticks does it add up the nodes and look at the clock, so the deadline and
+ * cancel() are noticed within that many nodes. Near the end of the budget it
+ * polls sooner, so a search stops at exactly the budget; threads helping
+ * with one search can together go a little over it. Interrupting the thread
+ * still stops the search with a CancellationException at the very next
+ * node, as it always has.
+ *
+ * One context can be used for several calls in a row, which then share the
+ * deadline and the budget.
+ *
+ * A solver given SearchStats asks for its context with current(SearchStats),
+ * and gets a fork of the current one which also counts what the search does
+ * into stats of its own, added to the solver's when the fork is flushed.
+ * Without stats there is no fork, and each count is just a null check.
+ *
+ * @author Taras Mychaskiw
+ */
+public class SearchContext {
+
+    public static final int POLL_INTERVAL = 256;    //ticks between looking at the limits
+
+    private static final ThreadLocal<SearchContext> current = new ThreadLocal<>();
+
+    private final SearchContext root;       //holds the limits and totals, this unless forked
+    private final long deadline;            //System.nanoTime() to stop at
+    private final boolean hasDeadline;
+    private final long nodeBudget;
+    private final AtomicLong nodes;         //root only
+    private volatile SearchResult.Status stopped;   //root only, null while running
+    private int ticks;                      //since the last poll, per thread
+    private int pollAt;                     //ticks at which to poll next, per thread
+    private int reported;                   //of the ticks, how many are in the counts already
+    private final SearchStats sink;         //the solver's stats, or null
+    private final SearchStats counts;       //this thread's counts for the sink, or null
+
+    /**
+     * Makes a context with no limits, it can only be cancelled.
+     */
+    public SearchContext(){
+        this(0, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param nodeBudget the most nodes to search
+     */
+    public SearchContext(long nodeBudget){
+        this(0, null, nodeBudget);
+    }
+
+    /**
+     * @param timeout how long from now to give up
+     * @param unit the unit of the timeout
+     */
+    public SearchContext(long timeout, TimeUnit unit){
+        this(timeout, unit, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param timeout how long from now to give up
+     * @param unit the unit of the timeout, or null for no deadline
+     * @param nodeBudget the most nodes to search
+     */
+    public SearchContext(long timeout, TimeUnit unit, long nodeBudget){
+        this.root = this;
+        this.hasDeadline = unit != null;
+        this.deadline = hasDeadline ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        this.nodeBudget = nodeBudget;
+        this.nodes = new AtomicLong();
+        this.sink = null;
+        this.counts = null;
+        this.pollAt = pollInterval(0);
+    }
+
+    /**
+     * A context for another thread working on the same search, or for one
+     * search counting into the stats.
+     */
+    private SearchContext(SearchContext parent, SearchStats sink){
+        this.root = parent.root;
+        this.hasDeadline = false;
+        this.deadline = 0;
+        this.nodeBudget = 0;
+        this.nodes = null;
+        this.sink = sink;
+        this.counts = sink == null ? null : new SearchStats();
+        this.pollAt = pollInterval(root.nodes.get());
+    }
+
+    /**
+     * Returns the context of the call this thread is running, or a new one
+     * without limits if there is none. A search asks once when it starts.
+     *
+     * @return the context to tick
+     */
+    public static SearchContext current(){
+        final SearchContext context = current.get();
+        return context == null ? new SearchContext() : context;
+    }
+
+    /**
+     * Returns the context for a search which counts its work into the stats.
+     * It must be flushed when the search is done, or the counts are lost.
+     *
+     * @param stats where to add the counts, or null not to count
+     * @return the context to tick, the current one if there are no stats
+     */
+    public static SearchContext current(SearchStats stats){
+        final SearchContext context = current();
+        return stats == null ? context : new SearchContext(context, stats);
+    }
+
+    /**
+     * Returns a context to tick from another thread helping with the search.
+     * It shares the limits and the totals of this one, and the stats if it
+     * counts into any.
+     *
+     * @return the context for the other thread
+     */
+    public SearchContext fork(){
+        return new SearchContext(this, sink);
+    }
+
+    /**
+     * Stops every search using the context, at its next poll.
+     */
+    public void cancel(){
+        root.stop(SearchResult.Status.CANCELLED);
+    }
+
+    /**
+     * @return why the searches were stopped, or null if they were not
+     */
+    public SearchResult.Status getStopReason(){
+        return root.stopped;
+    }
+
+    /**
+     * @return the nodes searched so far, to within the poll interval
+     */
+    public long getNodes(){
+        return root.nodes.get() + ticks;
+    }
+
+    /**
+     * Counts a node of the search.
+     *
+     * @throws CancellationException if the thread is interrupted
+     */
+    public void tick(){
+        if (Thread.interrupted()){
+            throw new CancellationException();
+        }
+        if (++ticks >= pollAt){
+            poll();
+        }
+    }
+
+    /**
+     * Counts a node of the search, and how deep it is.
+     *
+     * @param depth the guesses made on the way to the node
+     * @throws CancellationException if the thread is interrupted
+     */
+    public void tick(int depth){
+        if (counts != null && depth > counts.maxDepth){
+            counts.maxDepth = depth;
+        }
+        tick();
+    }
+
+    /**
+     * Counts a value taken back after it was tried.
+     */
+    public void backtrack(){
+        if (counts != null){
+            counts.backtracks++;
+        }
+    }
+
+    /**
+     * @param cells how many cells were just decided
+     */
+    public void assign(int cells){
+        if (counts != null){
+            counts.assignments += cells;
+        }
+    }
+
+    /**
+     * @param candidates how many candidates were just removed
+     */
+    public void eliminate(int candidates){
+        if (counts != null){
+            counts.eliminations += candidates;
+        }
+    }
+
+    /**
+     * @param columns how many columns were just covered or uncovered
+     */
+    public void cover(long columns){
+        if (counts != null){
+            counts.covers += columns;
+        }
+    }
+
+    /**
+     * Adds the ticks since the last poll to the totals, and the counts to
+     * the stats. A fork should be flushed when its thread is done with it.
+     * The limits are not checked, so a search which is only paused should
+     * report() instead.
+     */
+    public void flush(){
+        final long total = root.nodes.addAndGet(ticks);
+        report();
+        ticks = 0;
+        reported = 0;
+        pollAt = pollInterval(total);
+    }
+
+    /**
+     * Adds the counts so far to the stats, but keeps the ticks since the
+     * last poll towards the next one. A search which stops often, like a
+     * solution iterator handing out solutions close together, still polls
+     * the limits on time.
+     */
+    public void report(){
+        if (counts != null){
+            counts.nodes += ticks - reported;
+            reported = ticks;
+            sink.add(counts);
+            counts.reset();
+        }
+    }
+
+    /**
+     * Adds up the nodes and checks every limit.
+     */
+    private void poll(){
+        final long total = root.nodes.addAndGet(ticks);
+        if (counts != null){
+            counts.nodes += ticks - reported;
+        }
+        ticks = 0;
+        reported = 0;
+        pollAt = pollInterval(total);
+        if (total > root.nodeBudget){
+            root.nodes.decrementAndGet();   //the node past the budget is not searched
+            if (counts != null){
+                counts.nodes--;
+            }
+            root.stop(SearchResult.Status.OUT_OF_NODES);
+        }
+        else if (root.hasDeadline && System.nanoTime() - root.deadline >= 0){
+            root.stop(SearchResult.Status.TIMED_OUT);
+        }
+        if (root.stopped != null){
+            throw new Stopped();
+        }
+    }
+
+    /**
+     * @param total the nodes searched so far
+     * @return the ticks until the next poll, fewer if the budget runs out
+     *         sooner, so the poll lands on the first node past it
+     */
+    private int pollInterval(long total){
+        final long left = root.nodeBudget - total;
+        return left < POLL_INTERVAL ? (int) Math.max(left + 1, 1) : POLL_INTERVAL;
+    }
+
+    /**
+     * Records why the search stopped, if it has not already.
+     */
+    private synchronized void stop(SearchResult.Status reason){
+        if (stopped == null){
+            stopped = reason;
+        }
+    }
+
+
+    /**
+     * Solves the board within the limits.
+     *
+     * @param solver the solver to use
+     * @param board the board to solve
+     * @return the result, with the solution if one was found
+     */
+    public SearchResult solve(SudokuSolver solver, SudokuBoard board){
+        final long start = enter();
+        try {
+            final SudokuBoard solution = solver.solve(board);
+            return result(start, true, solution == null ? 0 : 1, solution, null);
+        } catch (Stopped ex){
+            return result(start, false, 0, null, null);
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Counts the solutions to the board within the limits.
+     *
+     * @param solver the solver to use
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the result, with the count if the search finished
+     */
+    public SearchResult countSolutions(SudokuSolver solver, SudokuBoard board, int limit){
+        final long start = enter();
+        try {
+            return result(start, true, solver.countSolutions(board, limit), null, null);
+        } catch (Stopped ex){
+            return result(start, false, 0, null, null);
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Finds the formity of the board within the limits.
+     *
+     * @param solver the solver to use
+     * @param board the board to test
+     * @return the result, with the formity if the search finished
+     */
+    public SearchResult getFormity(SudokuSolver solver, SudokuBoard board){
+        final long start = enter();
+        try {
+            final int formity = solver.getFormity(board);
+            return result(start, true, formity == SudokuSolver.MULTIPLE_SOLUTIONS ? 2 : formity, null, null);
+        } catch (Stopped ex){
+            return result(start, false, 0, null, null);
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Lists the solutions to the board within the limits.
+     *
+     * @param solver the solver to use
+     * @param board the board to solve
+     * @return the result, with every solution found before the search stopped
+     */
+    public SearchResult enumerate(SudokuSolver solver, SudokuBoard board){
+        final long start = enter();
+        final List<SudokuBoard> list = new ArrayList<>();
+        try {
+            for (Iterator<SudokuBoard> it = solver.solutions(board); it.hasNext(); ){
+                list.add(it.next());
+            }
+            return result(start, true, list.size(), list.isEmpty() ? null : list.get(0), list);
+        } catch (Stopped ex){
+            return result(start, false, 0, null, list);
+        } finally {
+            leave();
+        }
+    }
+
+    /**
+     * Makes this the context of the thread.
+     *
+     * @return the time the call started
+     */
+    private long enter(){
+        if (current.get() != null){
+            throw new IllegalStateException("this thread is already running a search in a context");
+        }
+        current.set(this);
+        return System.nanoTime();
+    }
+
+    private void leave(){
+        current.remove();
+        flush();
+    }
+
+    /**
+     * @param finished false if the search was stopped
+     * @return the result of the call
+     */
+    private SearchResult result(long start, boolean finished, int count, SudokuBoard solution, List<SudokuBoard> solutions){
+        final SearchResult.Status status = finished ? SearchResult.Status.FINISHED : root.stopped;
+        return new SearchResult(status, count, solution, solutions, getNodes(), System.nanoTime() - start);
+    }
+
+    /**
+     * Unwinds a search stopped by the context, it never leaves the methods
+     * of the context that run the calls. Code catching every exception of a
+     * search in between must let it through.
+     */
+    static class Stopped extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Stopped(){
+            super("search stopped", null, false, false);
+        }
+    }
+}
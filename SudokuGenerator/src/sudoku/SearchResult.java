@@ -0,0 +1,78 @@
+package sudoku;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What a search run through a SearchContext came back with. If the search
+ * was stopped before it finished, the status says why, and the answer is
+ * only as far as the search got: no solution, no count, and whatever
+ * solutions had been listed so far.
+ *
+ * @author Taras Mychaskiw
+ */
+public class SearchResult {
+
+    public enum Status {
+        FINISHED,       //the search ran to the end, the answer is right
+        TIMED_OUT,      //the deadline passed
+        OUT_OF_NODES,   //the node budget ran out
+        CANCELLED       //someone called SearchContext.cancel()
+    }
+
+    private final Status status;
+    private final int count;
+    private final SudokuBoard solution;
+    private final List<SudokuBoard> solutions;
+    private final long nodes, nanos;
+
+    SearchResult(Status status, int count, SudokuBoard solution, List<SudokuBoard> solutions, long nodes, long nanos){
+        this.status = status;
+        this.count = count;
+        this.solution = solution;
+        this.solutions = solutions == null ? Collections.<SudokuBoard>emptyList() : solutions;
+        this.nodes = nodes;
+        this.nanos = nanos;
+    }
+
+    public Status getStatus(){ return status; }
+    public boolean isFinished(){ return status == Status.FINISHED; }
+    public boolean isTimedOut(){ return status == Status.TIMED_OUT; }
+
+    /**
+     * @return the number of solutions found, 0 if the search was stopped
+     * before it could count
+     */
+    public int getCount(){ return count; }
+
+    /**
+     * @return the formity of the board, if the search finished
+     */
+    public int getFormity(){ return AbstractSudokuSolver.toFormity(count); }
+
+    /**
+     * @return the solution found, or null if there was none or the search
+     * was stopped first
+     */
+    public SudokuBoard getSolution(){ return solution; }
+
+    /**
+     * @return the solutions listed, all of them only if the search finished
+     */
+    public List<SudokuBoard> getSolutions(){ return solutions; }
+
+    /**
+     * @return how many nodes the search went through
+     */
+    public long getNodes(){ return nodes; }
+
+    /**
+     * @return how long the search ran for, in ns
+     */
+    public long getTime(){ return nanos; }
+
+    @Override
+    public String toString(){
+        return status.name().toLowerCase() + " after " + nodes + " nodes, " + nanos / 1000 + "us";
+    }
+}
@@ -0,0 +1,95 @@
+package sudoku;
+
+/**
+ * Counts the work the searches of a solver do, so solvers can be compared by
+ * more than their time. A solver only counts once it is given one with
+ * AbstractSudokuSolver.setStats(), and until then every count it would make
+ * is a single null check.
+ *
+ * Each search counts into a SearchStats of its own, which only its thread
+ * touches, and adds it to the solver's when it is done. So a solver used by
+ * several threads at once, or a parallel search, never shares a counter
+ * while it runs.
+ *
+ * What is counted:
+ *   nodes         branch points, the cells (or columns) the search picks to
+ *                 try values in, each counted once however many values it
+ *                 tries; a solution is not a node. These are the ticks of the
+ *                 SearchContext, so the node budget means the same to every
+ *                 solver
+ *   backtracks    values (or rows) taken back after the search went below
+ *                 them, to a node or a solution; a value which fails as soon
+ *                 as it is placed is not one. So there are never more
+ *                 backtracks than nodes and solutions together
+ *   assignments   cells decided, by guessing or by propagation
+ *   eliminations  candidates removed by propagation
+ *   covers        covers and uncovers of dancing links columns
+ *   max depth     the most guesses on the path to any node
+ *
+ * @author Taras Mychaskiw
+ */
+public class SearchStats {
+
+    //a search counting into its own stats writes these straight from SearchContext
+    long nodes, backtracks, assignments, eliminations, covers;
+    int maxDepth;
+
+    public synchronized long getNodes(){ return nodes; }
+    public synchronized long getBacktracks(){ return backtracks; }
+    public synchronized long getAssignments(){ return assignments; }
+    public synchronized long getEliminations(){ return eliminations; }
+    public synchronized long getCovers(){ return covers; }
+    public synchronized int getMaxDepth(){ return maxDepth; }
+
+    /**
+     * Adds the counts of a finished search. Its deepest node is kept if it
+     * is deeper than any seen so far.
+     *
+     * @param other the counts to add, not being counted into by another thread
+     */
+    public synchronized void add(SearchStats other){
+        nodes += other.nodes;
+        backtracks += other.backtracks;
+        assignments += other.assignments;
+        eliminations += other.eliminations;
+        covers += other.covers;
+        maxDepth = Math.max(maxDepth, other.maxDepth);
+    }
+
+    /**
+     * @return a copy of the counts so far
+     */
+    public synchronized SearchStats snapshot(){
+        final SearchStats copy = new SearchStats();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * @param before a snapshot taken earlier
+     * @return the counts since the snapshot, with the deepest node overall
+     */
+    public synchronized SearchStats since(SearchStats before){
+        final SearchStats diff = snapshot();
+        diff.nodes -= before.nodes;
+        diff.backtracks -= before.backtracks;
+        diff.assignments -= before.assignments;
+        diff.eliminations -= before.eliminations;
+        diff.covers -= before.covers;
+        return diff;
+    }
+
+    /**
+     * Sets every count back to 0.
+     */
+    public synchronized void reset(){
+        nodes = backtracks = assignments = eliminations = covers = 0;
+        maxDepth = 0;
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "nodes " + nodes + ", backtracks " + backtracks + ", assignments " + assignments
+                + ", eliminations " + eliminations + ", covers " + covers + ", max depth " + maxDepth;
+    }
+}
@@ -0,0 +1,75 @@
+package sudoku;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hands out the solutions of a board one at a time. The search is kept on
+ * an explicit stack, and only runs far enough to find the next solution when
+ * it is asked for, so stopping early costs nothing and memory does not grow
+ * with the number of solutions.
+ *
+ * If the search has a context, its counts are reported every time the search
+ * stops to hand out a solution, so they are never held back, and it is
+ * flushed once the search is over. Reporting keeps the ticks towards the
+ * next poll, so the limits of the context hold however close together the
+ * solutions are.
+ *
+ * @author Taras Mychaskiw
+ */
+public abstract class SolutionIterator implements Iterator<SudokuBoard> {
+
+    private SudokuBoard next;       //the solution found ahead, if any
+    private boolean finished;       //the search has run out
+    private final SearchContext context;    //reported after every advance, or null
+
+    protected SolutionIterator(){
+        this(null);
+    }
+
+    /**
+     * @param context the context the search ticks
+     */
+    protected SolutionIterator(SearchContext context){
+        this.context = context;
+    }
+
+    /**
+     * Runs the search on to its next solution.
+     *
+     * @return the next solution, or null if there are no more
+     */
+    protected abstract SudokuBoard advance();
+
+    @Override
+    public boolean hasNext(){
+        if (next == null && !finished){
+            try {
+                next = advance();
+            } finally {
+                if (context != null && next == null){
+                    context.flush();    //ran out, or was stopped
+                } else if (context != null){
+                    context.report();
+                }
+            }
+            finished = next == null;
+        }
+        return next != null;
+    }
+
+    @Override
+    public SudokuBoard next(){
+        if (!hasNext()){
+            throw new NoSuchElementException();
+        }
+        SudokuBoard result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void remove(){
+        throw new UnsupportedOperationException("solutions can not be removed");
+    }
+}
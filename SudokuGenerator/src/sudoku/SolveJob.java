@@ -0,0 +1,341 @@
+package sudoku;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import sudoku.io.PuzzleReader;
+import sudoku.io.PuzzleWriter;
+import sudoku.metrics.LatencyHistogram;
+import sudoku.metrics.MetricsRegistry;
+
+/**
+ * Solves, or checks the formity of, every puzzle in a file with one worker
+ * thread per solver. The thread which called run() reads the puzzles and
+ * hands them out through a queue, and the workers hand back their answers
+ * through another. The answers are written in the order the puzzles were
+ * read, and the ones which come early wait until the ones before them are
+ * written, like the ordered mode of GenerationJob.
+ *
+ * A puzzle is only read when there is room for its answer, so the puzzles
+ * waiting to be solved or written never number more than the capacity, and
+ * a file of any size can go through.
+ *
+ * Every puzzle is searched in a SearchContext of its own, which can have a
+ * deadline and a node budget, so one pathological puzzle can not hold up a
+ * worker for good. A puzzle whose search is stopped is written as it was,
+ * and reported as timed out or out of nodes instead of with a formity.
+ *
+ * The nodes each puzzle took are kept with its answer, for the report and
+ * the list of the slowest puzzles, and so are the backtracks if the solvers
+ * count their work in SearchStats.
+ *
+ * @author Taras Mychaskiw
+ */
+class SolveJob {
+
+    private static final int SLOTS_PER_WORKER = 4;  //puzzles in flight per worker
+    private static final int NUM_SLOWEST = 10;      //puzzles kept for the report
+
+    private final List<SudokuSolver> solvers;
+    private final boolean verify;
+    private final boolean withPuzzles;          //write the puzzle with its solution
+    private final long timeout;                 //ms per puzzle, 0 for none
+    private final long nodeBudget;              //nodes per puzzle, 0 for none
+    private final BlockingQueue<Result> puzzles = new LinkedBlockingQueue<>();  //held to the capacity by slots
+    private final BlockingQueue<Result> answers = new LinkedBlockingQueue<>();
+    private final Semaphore slots;              //room for puzzles not yet written
+
+    //statistics, only touched by the reading thread
+    private long read, written;
+    private final long[] formities = new long[3];   //by formity + 1
+    private final long[] stops = new long[SearchResult.Status.values().length];   //by status
+    private final PriorityQueue<Result> slowest = new PriorityQueue<>(NUM_SLOWEST + 1, new Comparator<Result>(){
+        @Override
+        public int compare(Result a, Result b){
+            return Long.compare(a.nanos, b.nanos);
+        }
+    });
+    private long totalTime, wallTime;           //times in ns
+
+    /**
+     * @param solvers one per worker, none of them are shared
+     * @param verify true to find the formity of the puzzles, false to solve them
+     * @param withPuzzles true to write each puzzle with its solution, as csv
+     * does, false to write the solution in place of the puzzle
+     * @param timeout the most ms to spend on one puzzle, 0 for no limit
+     * @param nodeBudget the most nodes to search for one puzzle, 0 for no limit
+     */
+    SolveJob(List<SudokuSolver> solvers, boolean verify, boolean withPuzzles, long timeout, long nodeBudget){
+        this.solvers = solvers;
+        this.verify = verify;
+        this.withPuzzles = withPuzzles;
+        this.timeout = timeout;
+        this.nodeBudget = nodeBudget;
+        this.slots = new Semaphore(SLOTS_PER_WORKER * solvers.size());
+    }
+
+    /**
+     * Runs the workers over every puzzle of the input, and writes every
+     * answer in input order. When solving, the solution is written in place
+     * of each puzzle, or the puzzle itself if it has none, unless the puzzles
+     * are written too. When verifying, a line of
+     * "number,formity,time_ms,nodes,backtracks" is written per puzzle, with
+     * timed_out or out_of_nodes as the formity of a puzzle whose search was
+     * stopped.
+     *
+     * @param input where to read the puzzles
+     * @param solved where to write the solutions, when solving
+     * @param report where to write the formities, when verifying
+     * @throws IOException if the puzzles can not be read or written
+     * @throws IllegalStateException if a solver failed
+     */
+    void run(PuzzleReader input, PuzzleWriter solved, Writer report) throws IOException {
+        final long start = System.nanoTime();
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ExecutorService workers = Executors.newFixedThreadPool(solvers.size(), new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread thread = new Thread(task, "solver-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);     //never keeps the program alive
+                return thread;
+            }
+        });
+        try {
+            for (SudokuSolver solver : solvers){
+                workers.execute(new Worker(solver));
+            }
+            final PriorityQueue<Result> waiting = new PriorityQueue<>();   //came early
+            SudokuBoard puzzle;
+            while ((puzzle = input.read()) != null){
+                while (!slots.tryAcquire()){
+                    collect(answers.take(), waiting, solved, report);
+                }
+                puzzles.put(new Result(read++, puzzle, null, 0, null, 0, 0, 0, null));
+            }
+            while (written < read){
+                collect(answers.take(), waiting, solved, report);
+            }
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the solvers");
+        } finally {
+            workers.shutdownNow();
+            wallTime = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Takes in one answer, and writes every answer which is now next.
+     */
+    private void collect(Result result, PriorityQueue<Result> waiting, PuzzleWriter solved, Writer report) throws IOException {
+        if (result.failure != null){
+            throw new IllegalStateException("solver failed on puzzle " + (result.seq + 1), result.failure);
+        }
+        waiting.add(result);
+        while (!waiting.isEmpty() && waiting.peek().seq == written){
+            write(waiting.poll(), solved, report);
+            written++;
+            slots.release();
+        }
+    }
+
+    /**
+     * Writes one answer and counts it.
+     */
+    private void write(Result result, PuzzleWriter solved, Writer report) throws IOException {
+        if (result.status == SearchResult.Status.FINISHED){
+            formities[result.formity + 1]++;
+        } else {
+            stops[result.status.ordinal()]++;
+        }
+        totalTime += result.nanos;
+        slowest.add(result);
+        if (slowest.size() > NUM_SLOWEST){
+            slowest.poll();
+        }
+        if (verify){
+            report.write((result.seq + 1) + "," + result.getOutcome() + ","
+                    + String.format("%.3f", result.nanos / 1e6) + "," + result.nodes + "," + result.backtracks + "\n");
+        } else if (withPuzzles){
+            solved.write(result.puzzle, result.solution, result.nanos);
+        } else {
+            solved.write(result.solution == null ? result.puzzle : result.solution, null, result.nanos);
+        }
+    }
+
+    /**
+     * @param formity a formity, as SudokuSolver.getFormity() gives
+     * @return what to call it
+     */
+    static String formityName(int formity){
+        switch (formity){
+            case SudokuSolver.UNIQUE_SOLUTION:
+                return "unique";
+            case SudokuSolver.NO_SOLUTIONS:
+                return "none";
+            default:
+                return "multiple";
+        }
+    }
+
+    long getRead(){ return read; }
+
+    /**
+     * @param formity a formity, as SudokuSolver.getFormity() gives
+     * @return how many puzzles had it, when solving a puzzle with a solution
+     * counts as unique and one without as none
+     */
+    long getCount(int formity){
+        return formities[formity + 1];
+    }
+
+    /**
+     * @param status why a search was stopped
+     * @return how many puzzles were stopped for that reason
+     */
+    long getStopped(SearchResult.Status status){
+        return stops[status.ordinal()];
+    }
+
+    /**
+     * @return the slowest puzzles, slowest first, as
+     * "number: time ms (clues, nodes, backtracks)", with why the search was
+     * stopped if it was
+     */
+    List<String> getSlowest(){
+        final List<Result> results = new ArrayList<>(slowest);
+        Collections.sort(results, slowest.comparator());
+        Collections.reverse(results);
+        final List<String> lines = new ArrayList<>(results.size());
+        for (Result result : results){
+            lines.add("puzzle " + (result.seq + 1) + ": " + String.format("%.3f", result.nanos / 1e6)
+                    + "ms (" + result.puzzle.getNumClues() + " clues, " + result.nodes + " nodes, "
+                    + result.backtracks + " backtracks)"
+                    + (result.status == SearchResult.Status.FINISHED ? "" : " " + result.getOutcome()));
+        }
+        return lines;
+    }
+
+    /**
+     * @return the average time one worker took on a puzzle, in ms
+     */
+    double getAverageTime(){
+        return written == 0 ? 0 : totalTime / 1e6 / written;
+    }
+
+    /**
+     * @return how long the whole job took, in ms
+     */
+    long getWallTime(){
+        return wallTime / 1000000;
+    }
+
+    /**
+     * @return puzzles done per second over the whole job
+     */
+    double getThroughput(){
+        return wallTime == 0 ? 0 : written * 1e9 / wallTime;
+    }
+
+    /**
+     * A puzzle, and once a worker is done with it its answer, or the failure
+     * of the worker.
+     */
+    private static class Result implements Comparable<Result> {
+        final long seq;
+        final SudokuBoard puzzle, solution;
+        final int formity;                  //only if the search finished
+        final SearchResult.Status status;
+        final long nanos;
+        final long nodes;
+        final long backtracks;              //0 if the solver does not count them
+        final Throwable failure;
+
+        Result(long seq, SudokuBoard puzzle, SudokuBoard solution, int formity, SearchResult.Status status,
+                long nanos, long nodes, long backtracks, Throwable failure){
+            this.seq = seq;
+            this.puzzle = puzzle;
+            this.solution = solution;
+            this.formity = formity;
+            this.status = status;
+            this.nanos = nanos;
+            this.nodes = nodes;
+            this.backtracks = backtracks;
+            this.failure = failure;
+        }
+
+        /**
+         * @return the name of the formity, or why the search was stopped
+         */
+        String getOutcome(){
+            return status == SearchResult.Status.FINISHED ? formityName(formity) : status.name().toLowerCase();
+        }
+
+        @Override
+        public int compareTo(Result other){
+            return Long.compare(seq, other.seq);
+        }
+    }
+
+    /**
+     * Answers puzzles with one solver until the job is over.
+     */
+    private class Worker implements Runnable {
+        private final SudokuSolver solver;
+        private final SearchStats stats;    //of the solver, or null
+        private final LatencyHistogram times;
+
+        Worker(SudokuSolver solver){
+            this.solver = solver;
+            this.stats = solver instanceof AbstractSudokuSolver ? ((AbstractSudokuSolver)solver).getStats() : null;
+            this.times = MetricsRegistry.getDefault().timer("solver." + solver.getClass().getSimpleName()
+                    + (verify ? ".getFormity" : ".solve"));
+        }
+
+        @Override
+        public void run(){
+            long seq = -1;
+            try {
+                while (true){
+                    final Result task = puzzles.take();
+                    seq = task.seq;
+                    long backtracks = stats == null ? 0 : stats.getBacktracks();
+                    final SearchContext context = new SearchContext(timeout, timeout > 0 ? TimeUnit.MILLISECONDS : null,
+                            nodeBudget > 0 ? nodeBudget : Long.MAX_VALUE);
+                    final SearchResult result;
+                    int formity;
+                    if (verify){
+                        result = context.getFormity(solver, task.puzzle);
+                        formity = result.getFormity();
+                    } else {
+                        result = context.solve(solver, task.puzzle);
+                        formity = result.getSolution() == null ? SudokuSolver.NO_SOLUTIONS : SudokuSolver.UNIQUE_SOLUTION;
+                    }
+                    times.record(result.getTime());
+                    if (stats != null){
+                        backtracks = stats.getBacktracks() - backtracks;
+                    }
+                    answers.put(new Result(seq, task.puzzle, result.getSolution(), formity, result.getStatus(),
+                            result.getTime(), result.getNodes(), backtracks, null));
+                }
+            } catch (InterruptedException | CancellationException ex){
+                //the job is over
+            } catch (RuntimeException | Error ex){
+                answers.offer(new Result(seq, null, null, 0, null, 0, 0, 0, ex));
+            }
+        }
+    }
+}
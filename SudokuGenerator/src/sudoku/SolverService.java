@@ -1,110 +1,574 @@
 package sudoku;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import sudoku.backtrack.BacktrackSolver;
+import sudoku.bitboard.BitboardSolver;
+import sudoku.bitboard.ParallelBitboardSolver;
 import sudoku.clp.ConstraintSolver;
+import sudoku.clp.PropagationLevel;
 import sudoku.dlx.ExactCoverSolver;
-import sudoku.util.MapUtil;
+import sudoku.metrics.LatencyHistogram;
+import sudoku.metrics.MetricsRegistry;
+import sudoku.metrics.StripedCounter;
 
 /**
  * Service that runs all solvers each in their own thread. Once one thread
- * finishes, all other threads are killed and the result is returned.
+ * finishes, all other threads are cancelled and the result is returned.
+ *
+ * The threads come from a pool kept for the life of the service, so asking
+ * a question costs no thread creation. Every question works on its own copy
+ * of the board, so the caller is free to change the board again as soon as
+ * the answer comes back, even while the losing solvers are still stopping.
+ * One service may be shared by any number of generator threads.
+ *
+ * Racing every solver throws away the work of all but one of them. With the
+ * ROUTE policy, the service instead learns which solver is fastest for boards
+ * of each size and clue density, and only asks that one. Now and then it
+ * still races them all so what it has learned stays current.
+ *
+ * The HEDGE policy also starts only the solver expected to be fastest, but
+ * if it has not answered by the time it usually would have (a percentile of
+ * its recent times), the next fastest solver is started beside it, and so
+ * on. Slow outliers still get rescued, without paying for a full race on
+ * every question.
+ *
+ * How long every question takes, and how long each solver takes on the ones
+ * it finishes, goes into the default MetricsRegistry.
  *
  * @author Taras Mychaskiw
  */
 public class SolverService {
 
-    private static SudokuBoard BOARD;   //board being solved
-    private static Class winner = null;
-    private static long time = 0;
-    private static long totalTime = 0;
-    private static final Map<Class,Integer> wins = new HashMap<>();
-    private static int totalRuns = 0;
+    private static final AtomicInteger threadCount = new AtomicInteger();
 
     /**
-     * list of all the solvers testing if the sudoku is well formed
+     * the shared service, made the first time it is asked for
      */
-    private static final SudokuSolver BACK = new BacktrackSolver();
-    private static final SudokuSolver CLP = new ConstraintSolver();
-    private static final SudokuSolver DLX = new ExactCoverSolver();
-    private static final List<Callable<Integer>> CALLABLES = new LinkedList<Callable<Integer>>(){{
-        add(new Callable<Integer>(){
-            @Override
-            public Integer call(){
-                long time = System.currentTimeMillis();
-                Integer result = BACK.getFormity(BOARD);
-                setWinner(BacktrackSolver.class, System.currentTimeMillis() - time);
-                return result;
-            }
-        });
-        add(new Callable<Integer>(){
-            @Override
-            public Integer call(){
-                long time = System.currentTimeMillis();
-                Integer result = CLP.getFormity(BOARD);
-                setWinner(ConstraintSolver.class, System.currentTimeMillis() - time);
-                return result;
-            }
-        });
-        add(new Callable<Integer>(){
+    private static class DefaultHolder {
+        static final SolverService INSTANCE = new SolverService();
+    }
+
+    /**
+     * How questions are given to the solvers.
+     */
+    public enum Policy {
+        RACE,   //ask every solver, take the first answer
+        ROUTE,  //ask only the solver expected to be fastest
+        HEDGE   //ask the fastest, add backups when it runs late
+    }
+
+    private final List<SudokuSolver> solvers;
+    private final ExecutorService executor;
+    private final RoutingModel model;
+    private volatile Policy policy;
+    private volatile double hedgePercentile = 0.9;  //of the recent times
+    private volatile long minHedgeDelay = 200000;   //ns, never hedge sooner
+
+    //statistics, shared by every thread using the service
+    private final ConcurrentMap<Class,AtomicInteger> wins = new ConcurrentHashMap<>();
+    private final AtomicInteger totalRuns = new AtomicInteger();
+    private final AtomicLong totalTime = new AtomicLong();    //ns
+    private final AtomicInteger races = new AtomicInteger();
+    private final AtomicInteger routed = new AtomicInteger();
+    private final AtomicInteger fallbacks = new AtomicInteger();
+    private final AtomicInteger hedged = new AtomicInteger();
+    private final AtomicInteger hedgesFired = new AtomicInteger();
+    private final AtomicInteger hedgesWon = new AtomicInteger();
+
+    //the last answer used by each calling thread
+    private final ThreadLocal<Answer> last = new ThreadLocal<>();
+
+    //latencies, of the service and of each solver by index
+    private final LatencyHistogram formityTimes, otherTimes;
+    private final LatencyHistogram[] solverFormityTimes, solverOtherTimes;
+    private final StripedCounter[] cancelled;
+
+    /**
+     * Makes a service racing all the solvers.
+     */
+    public SolverService(){
+        this(PropagationLevel.SINGLES);
+    }
+
+    /**
+     * Makes a service racing all the solvers, the constraint solver
+     * propagating as much as the level says.
+     *
+     * @param level the propagation level of the constraint solver
+     */
+    public SolverService(PropagationLevel level){
+        this(level, false);
+    }
+
+    /**
+     * Makes a service racing all the solvers, the constraint solver
+     * propagating as much as the level says, and the bitboard solver
+     * searching on every core if asked to.
+     *
+     * @param level the propagation level of the constraint solver
+     * @param parallel spread each bitboard search over the shared fork/join pool
+     */
+    public SolverService(PropagationLevel level, boolean parallel){
+        this(defaultSolvers(level, parallel));
+    }
+
+    /**
+     * Makes a service racing the solvers given. The solvers must be safe to
+     * call from several threads at once, all the solvers here are.
+     *
+     * @param solvers the solvers to race
+     */
+    public SolverService(List<SudokuSolver> solvers){
+        this(solvers, Policy.RACE);
+    }
+
+    /**
+     * Makes a service giving questions to the solvers with the policy. The
+     * solvers must be safe to call from several threads at once.
+     *
+     * @param solvers the solvers to use
+     * @param policy how questions are given to the solvers
+     */
+    public SolverService(List<SudokuSolver> solvers, Policy policy){
+        if (solvers.isEmpty()){
+            throw new IllegalArgumentException("no solvers to race");
+        }
+        this.solvers = Collections.unmodifiableList(new ArrayList<>(solvers));
+        this.model = new RoutingModel(solvers.size());
+        this.policy = policy;
+        final MetricsRegistry metrics = MetricsRegistry.getDefault();
+        formityTimes = metrics.timer("service.getFormity");
+        otherTimes = metrics.timer("service.hasOtherSolution");
+        solverFormityTimes = new LatencyHistogram[solvers.size()];
+        solverOtherTimes = new LatencyHistogram[solvers.size()];
+        cancelled = new StripedCounter[solvers.size()];
+        for (int i = 0; i < solvers.size(); i++){
+            final String name = "solver." + solvers.get(i).getClass().getSimpleName();
+            solverFormityTimes[i] = metrics.timer(name + ".getFormity");
+            solverOtherTimes[i] = metrics.timer(name + ".hasOtherSolution");
+            cancelled[i] = metrics.counter(name + ".cancelled");
+        }
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory(){
             @Override
-            public Integer call(){
-                long time = System.currentTimeMillis();
-                Integer result = DLX.getFormity(BOARD);
-                setWinner(ExactCoverSolver.class, System.currentTimeMillis() - time);
-                return result;
+            public Thread newThread(Runnable task){
+                Thread thread = new Thread(task, "solver-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);     //never keeps the program alive
+                return thread;
             }
         });
-    }};
-    private static final int NUM_THREADS = CALLABLES.size();
+    }
+
+    /**
+     * @return the service shared by everything not given one of its own
+     */
+    public static SolverService getDefault(){
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @param level the propagation level of the constraint solver
+     * @param parallel use the parallel bitboard solver instead of the plain one
+     * @return a new list of one of each solver
+     */
+    private static List<SudokuSolver> defaultSolvers(PropagationLevel level, boolean parallel){
+        List<SudokuSolver> list = new ArrayList<>();
+        list.add(new BacktrackSolver());
+        list.add(new ConstraintSolver(level));
+        list.add(new ExactCoverSolver());
+        list.add(parallel ? new ParallelBitboardSolver() : new BitboardSolver());
+        return list;
+    }
+
+    /**
+     * A question to ask every solver, and where to record how long each one
+     * takes to answer it.
+     */
+    private abstract static class Query {
+        final LatencyHistogram[] times;     //by the index of the solver
+
+        Query(LatencyHistogram[] times){
+            this.times = times;
+        }
+
+        abstract int ask(SudokuSolver solver);
+    }
+
+    /**
+     * The answer of one solver to one question, and how long it took.
+     */
+    private class Answer {
+        final int index;    //of the solver which answered
+        final SudokuSolver solver;
+        final int result;
+        final long nanos;
+
+        Answer(int index, int result, long nanos){
+            this.index = index;
+            this.solver = solvers.get(index);
+            this.result = result;
+            this.nanos = nanos;
+        }
+    }
 
     /**
      * Checks if the sudoku is well formed. Instead of picking a general
-     * solving strategy, a thread is opened for each strategy and they all test
+     * solving strategy, a thread is used for each strategy and they all test
      * to see if the sudoku is well formed. After the first one returns,
-     * the other threads are killed.
+     * the other threads are cancelled.
      *
      * @param board the board to test
      * @return the formity of the board
      */
-    public static int getFormity(SudokuBoard board){
-        BOARD = board;
-        winner = null;
-        ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
-        int result = 0;
+    public int getFormity(SudokuBoard board){
+        final SudokuBoard snapshot = new SudokuBoard(board);
+        final long start = System.nanoTime();
         try {
-            result = executor.invokeAny(CALLABLES);
-        } catch (InterruptedException | ExecutionException ex){}
-        executor.shutdown();
-        return result;
+            return ask(snapshot, new Query(solverFormityTimes){
+                @Override
+                public int ask(SudokuSolver solver){
+                    return solver.getFormity(snapshot);
+                }
+            });
+        } finally {
+            formityTimes.recordSince(start);
+        }
     }
 
     /**
-     * Updates the winner variable.
+     * Checks if the board has a solution other than the known one in which
+     * the cell holds a different value. Raced across all the solvers just
+     * like getFormity(SudokuBoard).
      *
-     * @param winner the class that won
-     * @param time how much time they took
-     */
-    private static void setWinner(Class winner, long time){
-        if (SolverService.winner == null){
-            SolverService.winner = winner;
-            SolverService.time = time;
-            wins.put(winner, MapUtil.maybeGet(wins, winner, 0) + 1);
-            totalRuns++;
-            totalTime += time;
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
+     * @see SudokuSolver.hasOtherSolution(SudokuBoard, SudokuBoard, int)
+     */
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, final int cell){
+        final SudokuBoard snapshot = new SudokuBoard(board);
+        final SudokuBoard known = new SudokuBoard(knownSolution);
+        final long start = System.nanoTime();
+        try {
+            return ask(snapshot, new Query(solverOtherTimes){
+                @Override
+                public int ask(SudokuSolver solver){
+                    return solver.hasOtherSolution(snapshot, known, cell) ? 1 : 0;
+                }
+            }) == 1;
+        } finally {
+            otherTimes.recordSince(start);
         }
     }
 
-    public static long getLastTime(){ return time; }
-    public static Class getLastWinner(){ return winner; }
-    public static int getTotalRuns(){ return totalRuns; }
-    public static long getTotalTime(){ return totalTime; }
-    public static Map<Class,Integer> getWinMap(){ return wins; }
+    /**
+     * Gives the question to the solvers as the policy says. A routed question
+     * is answered in the calling thread; if the solver picked fails, the
+     * question is raced instead. A caller giving up is not a failure, and is
+     * passed on. Buckets which are still being learned are raced whatever the
+     * policy.
+     *
+     * @param board the board the question is about
+     * @param query the question to ask
+     * @return the answer
+     */
+    private int ask(SudokuBoard board, Query query){
+        final RoutingModel.Bucket bucket = model.getBucket(board);
+        final Policy how = policy;
+        final int index = how == Policy.RACE ? -1 : bucket.predict();
+        if (index >= 0 && how == Policy.HEDGE){
+            return hedge(query, bucket, index);
+        }
+        if (index >= 0){
+            final long start = System.nanoTime();
+            int result;
+            try {
+                result = query.ask(solvers.get(index));
+            } catch (CancellationException | SearchContext.Stopped ex){
+                throw ex;   //stopped by the caller, racing would drop its limits
+            } catch (RuntimeException ex){
+                fallbacks.incrementAndGet();
+                return race(query, bucket);     //the solver broke, let the others have a go
+            }
+            Answer answer = new Answer(index, result, System.nanoTime() - start);
+            query.times[index].record(answer.nanos);
+            bucket.recordAnswer(index, answer.nanos);
+            routed.incrementAndGet();
+            setWinner(answer);
+            return result;
+        }
+        return race(query, bucket);
+    }
+
+    /**
+     * Asks every solver the question, each in its own thread. The answer of
+     * the first one to finish is returned, and the others are interrupted.
+     * A solver that fails is ignored as long as some other one answers.
+     *
+     * @param query the question to ask
+     * @param bucket where to record the result of the race
+     * @return the answer of the fastest solver
+     * @throws IllegalStateException if every solver failed
+     * @throws CancellationException if the calling thread was interrupted
+     */
+    private int race(final Query query, RoutingModel.Bucket bucket){
+        CompletionService<Answer> done = new ExecutorCompletionService<>(executor);
+        List<Future<Answer>> futures = new ArrayList<>(solvers.size());
+        try {
+            for (int i = 0; i < solvers.size(); i++){
+                futures.add(done.submit(task(query, i)));
+            }
+
+            ExecutionException failure = null;
+            for (int i = 0; i < futures.size(); i++){
+                try {
+                    Answer answer = done.take().get();
+                    bucket.recordRace(answer.index, answer.nanos);
+                    races.incrementAndGet();
+                    setWinner(answer);
+                    return answer.result;
+                } catch (ExecutionException ex){
+                    failure = ex;   //this solver broke, wait for the next
+                }
+            }
+            throw new IllegalStateException("every solver failed", failure.getCause());
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the solvers");
+        } finally {
+            for (Future<Answer> future : futures){
+                future.cancel(true);    //the losers stop at their next check
+            }
+        }
+    }
+
+    /**
+     * Asks the solver expected to be fastest. Every time the latest solver
+     * started runs past its hedge delay, the next one in the backup order is
+     * started too. A solver which fails also starts the next one straight
+     * away. The first answer from any of them is used.
+     *
+     * @param query the question to ask
+     * @param bucket where to record how the solvers did
+     * @param first the index of the solver to start with
+     * @return the first answer
+     * @throws IllegalStateException if every solver failed
+     * @throws CancellationException if the calling thread was interrupted
+     */
+    private int hedge(Query query, RoutingModel.Bucket bucket, int first){
+        final int[] backups = bucket.getBackupOrder(first);
+        final long[] started = new long[solvers.size()];    //0 if never started
+        CompletionService<Answer> done = new ExecutorCompletionService<>(executor);
+        List<Future<Answer>> futures = new ArrayList<>(solvers.size());
+        hedged.incrementAndGet();
+        try {
+            started[first] = System.nanoTime();
+            futures.add(done.submit(task(query, first)));
+            long delay = getHedgeDelay(bucket, first);
+            int next = 0, running = 1;
+            ExecutionException failure = null;
+            while (running > 0){
+                Future<Answer> future = next < backups.length
+                        ? done.poll(delay, TimeUnit.NANOSECONDS) : done.take();
+                if (future == null){
+                    //running late, start a backup beside it
+                    hedgesFired.incrementAndGet();
+                    started[backups[next]] = System.nanoTime();
+                    futures.add(done.submit(task(query, backups[next])));
+                    delay = getHedgeDelay(bucket, backups[next++]);
+                    running++;
+                    continue;
+                }
+                running--;
+                try {
+                    Answer answer = future.get();
+                    final long now = System.nanoTime();
+                    bucket.recordAnswer(answer.index, answer.nanos);
+                    for (int i = 0; i < started.length; i++){
+                        if (i != answer.index && started[i] != 0){
+                            bucket.recordStopped(i, now - started[i]);
+                        }
+                    }
+                    if (answer.index != first){
+                        hedgesWon.incrementAndGet();
+                    }
+                    setWinner(answer);
+                    return answer.result;
+                } catch (ExecutionException ex){
+                    failure = ex;
+                    if (running == 0 && next < backups.length){
+                        started[backups[next]] = System.nanoTime();
+                        futures.add(done.submit(task(query, backups[next])));
+                        delay = getHedgeDelay(bucket, backups[next++]);
+                        running++;
+                    }
+                }
+            }
+            throw new IllegalStateException("every solver failed", failure.getCause());
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the solvers");
+        } finally {
+            for (Future<Answer> future : futures){
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * @param bucket the bucket of the board being asked about
+     * @param index the index of the solver just started
+     * @return how long to give the solver before starting a backup, in ns
+     */
+    private long getHedgeDelay(RoutingModel.Bucket bucket, int index){
+        return Math.max(minHedgeDelay, bucket.getPercentile(index, hedgePercentile));
+    }
+
+    /**
+     * @param query the question to ask
+     * @param index the index of the solver to ask
+     * @return a task asking the solver the question and timing it
+     */
+    private Callable<Answer> task(final Query query, final int index){
+        return new Callable<Answer>(){
+            @Override
+            public Answer call(){
+                long start = System.nanoTime();
+                int result;
+                try {
+                    result = query.ask(solvers.get(index));
+                } catch (CancellationException ex){
+                    cancelled[index].increment();
+                    throw ex;
+                }
+                long nanos = System.nanoTime() - start;
+                query.times[index].record(nanos);
+                return new Answer(index, result, nanos);
+            }
+        };
+    }
+
+    /**
+     * Returns how long the HEDGE policy would currently give the first solver
+     * on the board before starting a backup.
+     *
+     * @param board the board to ask about
+     * @return the delay in ns, or -1 if the board would be raced
+     */
+    public long getHedgeDelay(SudokuBoard board){
+        RoutingModel.Bucket bucket = model.getBucket(board);
+        int first = bucket.getRaces() < RoutingModel.MIN_RACES ? -1 : bucket.best();
+        return first < 0 ? -1 : getHedgeDelay(bucket, first);
+    }
+
+    /**
+     * Returns the order the HEDGE policy would currently start the solvers
+     * in on the board, the expected fastest first. Empty if it would race.
+     *
+     * @param board the board to ask about
+     * @return the solvers in the order they would be started
+     */
+    public List<SudokuSolver> getBackupOrder(SudokuBoard board){
+        RoutingModel.Bucket bucket = model.getBucket(board);
+        int first = bucket.getRaces() < RoutingModel.MIN_RACES ? -1 : bucket.best();
+        List<SudokuSolver> order = new ArrayList<>(solvers.size());
+        if (first >= 0){
+            order.add(solvers.get(first));
+            for (int index : bucket.getBackupOrder(first)){
+                order.add(solvers.get(index));
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Records the solver which answered a question.
+     *
+     * @param answer the answer used
+     */
+    private void setWinner(Answer answer){
+        last.set(answer);
+        Class<?> type = answer.solver.getClass();
+        AtomicInteger count = wins.get(type);
+        if (count == null){
+            AtomicInteger fresh = new AtomicInteger();
+            count = wins.putIfAbsent(type, fresh);
+            if (count == null){
+                count = fresh;
+            }
+        }
+        count.incrementAndGet();
+        totalRuns.incrementAndGet();
+        totalTime.addAndGet(answer.nanos);
+    }
+
+    /**
+     * Stops the threads of the service. Nothing may be asked of it after.
+     */
+    public void shutdown(){
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return how long the last question asked by this thread took, in ms
+     */
+    public long getLastTime(){
+        Answer answer = last.get();
+        return answer == null ? 0 : answer.nanos / 1000000;
+    }
+
+    /**
+     * @return the solver that answered the last question asked by this thread
+     */
+    public Class getLastWinner(){
+        Answer answer = last.get();
+        return answer == null ? null : answer.solver.getClass();
+    }
+
+    public Policy getPolicy(){ return policy; }
+    public void setPolicy(Policy policy){ this.policy = policy; }
+    public double getExploreRate(){ return model.getExploreRate(); }
+    public void setExploreRate(double rate){ model.setExploreRate(rate); }
+    public int getRaceCount(){ return races.get(); }
+    public int getRoutedCount(){ return routed.get(); }
+    public int getFallbackCount(){ return fallbacks.get(); }
+    public int getHedgedCount(){ return hedged.get(); }
+    public int getHedgesFired(){ return hedgesFired.get(); }
+    public int getHedgesWon(){ return hedgesWon.get(); }
+    public double getHedgePercentile(){ return hedgePercentile; }
+    public void setHedgePercentile(double percentile){ hedgePercentile = percentile; }
+    public long getMinHedgeDelay(){ return minHedgeDelay; }
+    public void setMinHedgeDelay(long nanos){ minHedgeDelay = nanos; }
+    public int getTotalRuns(){ return totalRuns.get(); }
+    public long getTotalTime(){ return totalTime.get() / 1000000; }
+    public List<SudokuSolver> getSolvers(){ return solvers; }
+
+    /**
+     * @return a copy of how many questions each solver has answered first
+     */
+    public Map<Class,Integer> getWinMap(){
+        Map<Class,Integer> copy = new HashMap<>();
+        for (Map.Entry<Class,AtomicInteger> entry : wins.entrySet()){
+            copy.put(entry.getKey(), entry.getValue().get());
+        }
+        return copy;
+    }
 }
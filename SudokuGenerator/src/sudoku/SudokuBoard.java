@@ -1,19 +1,16 @@
 package sudoku;
 
 import java.awt.Point;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import sudoku.io.BoardCodec;
 import sudoku.util.StringUtil;
 
 /**
  * The sudoku board. The board itself is a basic integer array.
- * The board also maintains static lists of peers and units for fast repeated
- * access. This doesn't allow for multiple size boards in one instance.
+ * The peers and units of each cell come from the BoardGeometry shared by all
+ * boards of the same size, so boards of different sizes can be used together.
+ * Each unit also keeps a mask of the values used in it, updated whenever a
+ * cell is set or cleared, so legality checks are just a few bit operations.
  *
  * @author Taras Mychaskiw
  */
@@ -21,10 +18,12 @@ public class SudokuBoard {
 
     protected final int[] board;                //the actual board values
     protected final int p, q, n;                //board dimensions
+    protected final BoardGeometry geometry;     //peers and units, shared
 
-    //only one size can exist per instance of the program... oh well
-    protected static final Map<Integer,Set<Integer>> peers = new HashMap<>();
-    protected static final Map<Integer,List<List<Integer>>> units = new HashMap<>();
+    //bit (value - 1) of a unit's mask is on if that value is used in the unit
+    protected final int words;                  //longs per unit mask
+    protected final long[] used;                //words longs per unit
+    protected final int[] counts;               //n counts per unit, for duplicates
     protected final String LINE;
     protected final int CELL_WIDTH;
 
@@ -38,7 +37,11 @@ public class SudokuBoard {
         this.p = p;
         this.q = q;
         this.n = p * q;
+        this.geometry = BoardGeometry.get(p, q);
         board = new int[getNumCells()];
+        words = (n + 63) >>> 6;
+        used = new long[geometry.getNumUnits() * words];
+        counts = new int[geometry.getNumUnits() * n];
 
         CELL_WIDTH = 2 + getSize() / 10;
         String[] build = new String[q];
@@ -68,25 +71,45 @@ public class SudokuBoard {
         this.p = other.p;
         this.q = other.q;
         this.n = other.n;
-        this.board = new int[n * n];
+        this.geometry = other.geometry;
+        this.board = other.board.clone();
+        this.words = other.words;
+        this.used = other.used.clone();
+        this.counts = other.counts.clone();
         this.CELL_WIDTH = other.CELL_WIDTH;
         this.LINE = other.LINE;
-        System.arraycopy(other.board, 0, board, 0, getNumCells());
     }
 
     public boolean isSet(int cell){ return board[cell] != 0; }
     public boolean isSet(int x, int y){ return isSet(pointToCell(x, y)); }
-    public void setCell(int cell, int value){ board[cell] = value; }
+    public void setCell(int cell, int value){
+        unmark(cell);
+        board[cell] = value;
+        mark(cell);
+    }
     public void setCell(int x, int y, int value){ setCell(pointToCell(x, y), value); }
     public int getCell(int cell){ return board[cell]; }
     public int getCell(int x, int y){ return getCell(pointToCell(x, y)); }
-    public void clearCell(int cell){ board[cell] = 0; }
+    public void clearCell(int cell){
+        unmark(cell);
+        board[cell] = 0;
+    }
     public void clearCell(int x, int y){ clearCell(pointToCell(x, y)); }
 
+    /**
+     * Empties every cell at once, much quicker than clearing them one by one.
+     */
+    public void clear(){
+        Arrays.fill(board, 0);
+        Arrays.fill(used, 0);
+        Arrays.fill(counts, 0);
+    }
+
     public int getSmallWidth(){ return p; }
     public int getSmallHeight(){ return q; }
     public int getSize(){ return n; }
     public int getNumCells(){ return n * n; }
+    public BoardGeometry getGeometry(){ return geometry; }
 
     public int getRow(int cell){ return cell % n; }
     public int getCol(int cell){ return cell / n; }
@@ -107,6 +130,76 @@ public class SudokuBoard {
     public int pointToCell(Point p){ return pointToCell(p.x, p.y); }
     public Point cellToPoint(int cell){ return new Point(getRow(cell), getCol(cell)); }
 
+    /**
+     * The peers of a cell are the cells it cannot be the same value as. They
+     * come from the shared BoardGeometry, read one at a time, nothing boxed.
+     *
+     * @param cell the cell index
+     * @param i which peer, 0 &lt;= i &lt; getNumPeers()
+     * @return the ith peer of the cell
+     */
+    public int getPeer(int cell, int i){ return geometry.getPeer(cell, i); }
+    public int getPeer(int x, int y, int i){ return getPeer(pointToCell(x, y), i); }
+    public int getPeer(Point point, int i){ return getPeer(point.x, point.y, i); }
+    public int getNumPeers(){ return geometry.getNumPeers(); }
+
+    /**
+     * The units of a cell are its column, row and box, each the whole list of
+     * cells in that constraint. Also from the BoardGeometry.
+     *
+     * @param cell the cell index
+     * @param kind one of BoardGeometry.COLUMN, ROW or BOX
+     * @return the index of the unit of that kind the cell belongs to
+     */
+    public int getUnit(int cell, int kind){ return geometry.getUnit(cell, kind); }
+    public int getUnit(int x, int y, int kind){ return getUnit(pointToCell(x, y), kind); }
+    public int getUnit(Point point, int kind){ return getUnit(point.x, point.y, kind); }
+
+    /**
+     * @param unit the unit index, from getUnit()
+     * @param i which cell of the unit, 0 &lt;= i &lt; getSize()
+     * @return the ith cell of the unit
+     */
+    public int getUnitCell(int unit, int i){ return geometry.getUnitCell(unit, i); }
+
+
+    /**
+     * Records the value in the cell as used in each of the cell's units.
+     *
+     * @param cell the cell that was just set
+     */
+    private void mark(int cell){
+        final int value = board[cell];
+        if (value < 1 || value > n){
+            return;
+        }
+        for (int kind = 0; kind < BoardGeometry.UNITS_PER_CELL; kind++){
+            final int unit = geometry.getUnit(cell, kind);
+            if (counts[unit*n + value - 1]++ == 0){
+                used[unit*words + ((value - 1) >>> 6)] |= 1L << (value - 1);
+            }
+        }
+    }
+
+    /**
+     * Removes the value in the cell from the used masks of the cell's units.
+     * The value stays used in a unit if another cell in it has the same value.
+     *
+     * @param cell the cell that is about to be changed
+     */
+    private void unmark(int cell){
+        final int value = board[cell];
+        if (value < 1 || value > n){
+            return;
+        }
+        for (int kind = 0; kind < BoardGeometry.UNITS_PER_CELL; kind++){
+            final int unit = geometry.getUnit(cell, kind);
+            if (--counts[unit*n + value - 1] == 0){
+                used[unit*words + ((value - 1) >>> 6)] &= ~(1L << (value - 1));
+            }
+        }
+    }
+
 
     /**
      * @return the number of cells that are set in the board
@@ -122,91 +215,69 @@ public class SudokuBoard {
     }
 
     /**
-     * Returns the set of peers to the point (x,y). The peers are those cells
-     * which (x,y) cannot be the same value as.
+     * Determines the candidates for the cell (x,y)
      *
      * @param x row index
      * @param y column index
-     * @return set of cell index peers to (x,y)
+     * @return the set of all possible values that can sit in (x,y)
      */
-    public Set<Integer> getPeers(int x, int y){
-        if (!peers.containsKey(pointToCell(x, y))){
-            final Set<Integer> set = new HashSet<>();
-            for (int i = 0; i < getSize(); i++){
-                set.add(pointToCell(i, y));
-                set.add(pointToCell(x, i));
-            }
-
-            final Point box = getBoxCorner(x, y);
-            for (int row = 0; row < getSmallWidth(); row++){
-                for (int col = 0; col < getSmallHeight(); col++){
-                    set.add(pointToCell(box.x + col, box.y + row));
-                }
-            }
-            set.remove(pointToCell(x, y));
-            peers.put(pointToCell(x, y), set);
+    public CandidateSet getOptions(int x, int y){ return getOptions(pointToCell(x, y)); }
+    public CandidateSet getOptions(int cell){
+        if (words == 1){
+            return new CandidateSet(getSize(), getFreeWord(cell, 0));
         }
-        return peers.get(pointToCell(x, y));
+        final long[] free = new long[words];
+        for (int w = 0; w < words; w++){
+            free[w] = getFreeWord(cell, w);
+        }
+        return new CandidateSet(getSize(), free);
     }
-    public Set<Integer> getPeers(int cell){ return getPeers(cellToPoint(cell)); }
-    public Set<Integer> getPeers(Point point){ return getPeers(point.x, point.y); }
+    public CandidateSet getOptions(Point point){ return getOptions(point.x, point.y); }
 
 
     /**
-     * Returns a 2d list of units the cell belongs to. Similar to peers,
-     * except each list is the entire list of cells in a particular constraint.
-     * For example, at (0,0) the units are:
-     * [0,1,2,3,4,5,6,7,8]          row
-     * [0,9,18,27,36,45,54,63,72]   column
-     * [0,1,2,9,10,11,18,19,20]     box
+     * Returns the smallest value greater than the one given that can legally
+     * be set in the cell. Nothing is allocated, so this is the way to loop
+     * over the options of a cell in a search:
+     * for (v = nextOption(cell, 0); v != -1; v = nextOption(cell, v))
      *
-     * @param x row index
-     * @param y column index
-     * @return list of units this cell belongs to
+     * @param cell the cell index
+     * @param value the value to search after, 0 to start from the beginning
+     * @return the next legal value, or -1 if there are no more
      */
-    public List<List<Integer>> getUnits(int x, int y){
-        if (!units.containsKey(pointToCell(x, y))){
-            List<List<Integer>> list = new ArrayList<>();
-            list.add(new ArrayList<Integer>(getSize()));
-            list.add(new ArrayList<Integer>(getSize()));
-            list.add(new ArrayList<Integer>(getSize()));
-
-            for (int i = 0; i < getSize(); i++){
-                list.get(0).add(pointToCell(x, i));
-                list.get(1).add(pointToCell(i, y));
+    public int nextOption(int cell, int value){
+        for (int w = value >>> 6; w < words; w++){
+            long free = getFreeWord(cell, w);
+            if (w == value >>> 6){
+                free &= -1L << value;
             }
-            final Point box = getBoxCorner(x, y);
-            for (int row = 0; row < getSmallWidth(); row++){
-                for (int col = 0; col < getSmallHeight(); col++){
-                    list.get(2).add(pointToCell(box.x + col, box.y + row));
-                }
+            if (free != 0){
+                final int next = (w << 6) + Long.numberOfTrailingZeros(free) + 1;
+                return next <= n ? next : -1;
             }
-            units.put(pointToCell(x, y), list);
         }
-        return units.get(pointToCell(x, y));
+        return -1;
     }
-    public List<List<Integer>> getUnits(int cell){ return getUnits(cellToPoint(cell)); }
-    public List<List<Integer>> getUnits(Point point){ return getUnits(point.x, point.y); }
-
 
     /**
-     * Determines the candidates for the cell (x,y)
+     * Returns one word of the mask of values that can legally be set in the
+     * cell. The value already in the cell does not count against itself.
      *
-     * @param x row index
-     * @param y column index
-     * @return the set of all possible values that can sit in (x,y)
+     * @param cell the cell index
+     * @param w which word of the mask
+     * @return bit (value - 1 - 64w) is on if the value is legal in the cell
      */
-    public CandidateSet getOptions(int x, int y){
-        final CandidateSet options = new CandidateSet(getSize());
-        for (int value = 1; value <= getSize(); value++){
-            if (!isAcceptable(x, y, value)){
-                options.remove(value);
-            }
+    private long getFreeWord(int cell, int w){
+        final int column = geometry.getColumnUnit(cell) * words + w;
+        final int row = geometry.getRowUnit(cell) * words + w;
+        final int box = geometry.getBoxUnit(cell) * words + w;
+        long free = ~(used[column] | used[row] | used[box]);
+        final int own = board[cell];
+        if (own > 0 && ((own - 1) >>> 6) == w && isAcceptable(cell, own)){
+            free |= 1L << (own - 1);
         }
-        return options;
+        return free;
     }
-    public CandidateSet getOptions(int cell){ return getOptions(cellToPoint(cell)); }
-    public CandidateSet getOptions(Point point){ return getOptions(point.x, point.y); }
 
 
     /**
@@ -217,18 +288,35 @@ public class SudokuBoard {
      * @param value the value to test for legality in (x,y)
      * @return true if value obeys the sudoku rules
      */
-    public boolean isAcceptable(int x, int y, int value){
-        for (int cell : getPeers(x, y)){
-            if (isSet(cell) && getCell(cell) == value){
+    public boolean isAcceptable(int x, int y, int value){ return isAcceptable(pointToCell(x, y), value); }
+    public boolean isAcceptable(int cell, int value){
+        if (value < 1 || value > n){
+            return false;
+        }
+        final int self = board[cell] == value ? 1 : 0;
+        for (int kind = 0; kind < BoardGeometry.UNITS_PER_CELL; kind++){
+            if (counts[geometry.getUnit(cell, kind)*n + value - 1] > self){
                 return false;
             }
         }
         return true;
     }
-    public boolean isAcceptable(int cell, int value){ return isAcceptable(cellToPoint(cell), value); }
     public boolean isAcceptable(Point point, int value){ return isAcceptable(point.x, point.y, value); }
 
 
+    /**
+     * @return true if none of the set cells break the rules
+     */
+    public boolean isLegal(){
+        for (int cell = 0; cell < getNumCells(); cell++){
+            if (isSet(cell) && !isAcceptable(cell, getCell(cell))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+
     /**
      * @return true if this board is solved
      */
@@ -253,9 +341,15 @@ public class SudokuBoard {
 
         int cell = 0;
         while (cell < getNumCells()){
-            String str = isSet(cell) ? String.valueOf(getCell(cell)) : ".";
-            str = StringUtil.padRight(str, ' ', CELL_WIDTH);
-            sb.append(str);
+            final int start = sb.length();
+            if (isSet(cell)){
+                sb.append(getCell(cell));
+            } else {
+                sb.append('.');
+            }
+            while (sb.length() - start < CELL_WIDTH){
+                sb.append(' ');
+            }
             cell++;
 
             if (cell % getSmallWidth() == 0 && cell != getNumCells()){
@@ -280,6 +374,8 @@ public class SudokuBoard {
      * is a String of digits if the size is less than 10, with gives as the
      * numbers, and 0 or any non number as non givens.
      * Example 4x4: ....1234........
+     * Bigger boards are read as the lines of BoardCodec, with letters for the
+     * values over 9.
      *
      * @param sudoku a result of SudokuBoard.toString() to copy into this
      */
@@ -290,6 +386,9 @@ public class SudokuBoard {
         else if (getSize() < 10){
             fromStringSmall(sudoku);
         }
+        else {
+            BoardCodec.decode(sudoku, 0, this);
+        }
     }
 
     /**
@@ -298,18 +397,8 @@ public class SudokuBoard {
      * @param sudoku a result of SudokuBoard.toString()
      */
     private void fromStringLarge(String sudoku){
-        String[] repl = { LINE, "|", "\n" };    //replace these by empty string
-        String[] values = StringUtil.replaceAll(sudoku, repl, "").split("\\s");
-        for (int cell = 0; cell < getNumCells(); cell++){
-            int v;
-            try {
-                v = Integer.valueOf(values[cell]);
-            } catch (NumberFormatException e){ v = 0; }
-            clearCell(cell);
-            if (v > 0){
-                setCell(cell, v);
-            }
-        }
+        clear();
+        BoardCodec.decodeGrid(sudoku, 0, this);
     }
 
     /**
@@ -1,5 +1,6 @@
 package sudoku;
 
+import java.util.Iterator;
 import java.util.List;
 
 
@@ -26,6 +27,16 @@ public interface SudokuSolver {
      */
     public List<SudokuBoard> enumerate(SudokuBoard board);
 
+    /**
+     * Returns the solutions to the board one at a time. Each one is only
+     * searched for when it is asked for, so the caller can stop after as
+     * many as it wants without the rest ever being found or kept.
+     *
+     * @param board the board to solve
+     * @return the solutions to the board, in the order the search finds them
+     */
+    public Iterator<SudokuBoard> solutions(SudokuBoard board);
+
     /**
      * Returns true if the board is well formed, that is if the
      * board only has one solution.
@@ -35,6 +46,29 @@ public interface SudokuSolver {
      */
     public boolean isWellFormed(SudokuBoard board);
 
+    /**
+     * Counts the solutions to the board, but stops searching as soon as the
+     * limit is reached. Solutions are only counted, never built.
+     *
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the number of solutions, at most limit
+     */
+    public int countSolutions(SudokuBoard board, int limit);
+
+    /**
+     * Returns true if the board has a solution other than the known one in
+     * which the cell holds a different value. This is all a generator needs
+     * to know after removing a clue from a board it knows the solution to,
+     * and it only takes finding one solution instead of two.
+     *
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
+     */
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, int cell);
+
     /**
      * Returns the formity of the board sent.
      *
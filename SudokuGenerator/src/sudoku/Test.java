@@ -59,7 +59,7 @@ public class Test {
         time = System.currentTimeMillis() - time;
         System.out.println(prob);
         System.out.println("time = " + time);
-        System.out.println("well = " + SolverService.getFormity(prob));
+        System.out.println("well = " + SolverService.getDefault().getFormity(prob));
         System.out.println("clues = " + prob.getNumClues() + " / " + prob.getNumCells());
     }
 }
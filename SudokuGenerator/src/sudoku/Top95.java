@@ -1,136 +1,73 @@
 package sudoku;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import sudoku.backtrack.BacktrackSolver;
+import sudoku.bitboard.BitboardSolver;
+import sudoku.bitboard.ParallelBitboardSolver;
 import sudoku.clp.ConstraintSolver;
+import sudoku.clp.PropagationLevel;
 import sudoku.dlx.ExactCoverSolver;
 import sudoku.generate.DeductionGenerator;
 import sudoku.generate.SudokuGenerator;
+import sudoku.io.PuzzleReader;
 import sudoku.util.StringUtil;
 
 /**
  * Tests each of the solvers. Just solves all the top 95 puzzles using each of
- * the solvers and records the time taken. Winner takes all.
+ * the solvers and records the time taken. The puzzles are read from CORPUS,
+ * or from the file given as the first argument. Winner takes all. The work of the
+ * searches is counted too, so the solvers can be compared by more than time.
+ * For numbers fine enough to compare between changes, use
+ * sudoku.bench.BenchmarkRunner.
  *
  * @author Taras Mychaskiw
  */
 public class Top95 {
 
-    public static final List<SudokuBoard> TOP95 = new ArrayList<SudokuBoard>(){{
-        add(new SudokuBoard(3, 3, "4.....8.5.3..........7......2.....6.....8.4......1.......6.3.7.5..2.....1.4......"));
-        add(new SudokuBoard(3, 3, "52...6.........7.13...........4..8..6......5...........418.........3..2...87....."));
-        add(new SudokuBoard(3, 3, "6.....8.3.4.7.................5.4.7.3..2.....1.6.......2.....5.....8.6......1...."));
-        add(new SudokuBoard(3, 3, "48.3............71.2.......7.5....6....2..8.............1.76...3.....4......5...."));
-        add(new SudokuBoard(3, 3, "....14....3....2...7..........9...3.6.1.............8.2.....1.4....5.6.....7.8..."));
-        add(new SudokuBoard(3, 3, "......52..8.4......3...9...5.1...6..2..7........3.....6...1..........7.4.......3."));
-        add(new SudokuBoard(3, 3, "6.2.5.........3.4..........43...8....1....2........7..5..27...........81...6....."));
-        add(new SudokuBoard(3, 3, ".524.........7.1..............8.2...3.....6...9.5.....1.6.3...........897........"));
-        add(new SudokuBoard(3, 3, "6.2.5.........4.3..........43...8....1....2........7..5..27...........81...6....."));
-        add(new SudokuBoard(3, 3, ".923.........8.1...........1.7.4...........658.........6.5.2...4.....7.....9....."));
-        add(new SudokuBoard(3, 3, "6..3.2....5.....1..........7.26............543.........8.15........4.2........7.."));
-        add(new SudokuBoard(3, 3, ".6.5.1.9.1...9..539....7....4.8...7.......5.8.817.5.3.....5.2............76..8..."));
-        add(new SudokuBoard(3, 3, "..5...987.4..5...1..7......2...48....9.1.....6..2.....3..6..2.......9.7.......5.."));
-        add(new SudokuBoard(3, 3, "3.6.7...........518.........1.4.5...7.....6.....2......2.....4.....8.3.....5....."));
-        add(new SudokuBoard(3, 3, "1.....3.8.7.4..............2.3.1...........958.........5.6...7.....8.2...4......."));
-        add(new SudokuBoard(3, 3, "6..3.2....4.....1..........7.26............543.........8.15........4.2........7.."));
-        add(new SudokuBoard(3, 3, "....3..9....2....1.5.9..............1.2.8.4.6.8.5...2..75......4.1..6..3.....4.6."));
-        add(new SudokuBoard(3, 3, "45.....3....8.1....9...........5..9.2..7.....8.........1..4..........7.2...6..8.."));
-        add(new SudokuBoard(3, 3, ".237....68...6.59.9.....7......4.97.3.7.96..2.........5..47.........2....8......."));
-        add(new SudokuBoard(3, 3, "..84...3....3.....9....157479...8........7..514.....2...9.6...2.5....4......9..56"));
-        add(new SudokuBoard(3, 3, ".98.1....2......6.............3.2.5..84.........6.........4.8.93..5...........1.."));
-        add(new SudokuBoard(3, 3, "..247..58..............1.4.....2...9528.9.4....9...1.........3.3....75..685..2..."));
-        add(new SudokuBoard(3, 3, "4.....8.5.3..........7......2.....6.....5.4......1.......6.3.7.5..2.....1.9......"));
-        add(new SudokuBoard(3, 3, ".2.3......63.....58.......15....9.3....7........1....8.879..26......6.7...6..7..4"));
-        add(new SudokuBoard(3, 3, "1.....7.9.4...72..8.........7..1..6.3.......5.6..4..2.........8..53...7.7.2....46"));
-        add(new SudokuBoard(3, 3, "4.....3.....8.2......7........1...8734.......6........5...6........1.4...82......"));
-        add(new SudokuBoard(3, 3, ".......71.2.8........4.3...7...6..5....2..3..9........6...7.....8....4......5...."));
-        add(new SudokuBoard(3, 3, "6..3.2....4.....8..........7.26............543.........8.15........8.2........7.."));
-        add(new SudokuBoard(3, 3, ".47.8...1............6..7..6....357......5....1..6....28..4.....9.1...4.....2.69."));
-        add(new SudokuBoard(3, 3, "......8.17..2........5.6......7...5..1....3...8.......5......2..4..8....6...3...."));
-        add(new SudokuBoard(3, 3, "38.6.......9.......2..3.51......5....3..1..6....4......17.5..8.......9.......7.32"));
-        add(new SudokuBoard(3, 3, "...5...........5.697.....2...48.2...25.1...3..8..3.........4.7..13.5..9..2...31.."));
-        add(new SudokuBoard(3, 3, ".2.......3.5.62..9.68...3...5..........64.8.2..47..9....3.....1.....6...17.43...."));
-        add(new SudokuBoard(3, 3, ".8..4....3......1........2...5...4.69..1..8..2...........3.9....6....5.....2....."));
-        add(new SudokuBoard(3, 3, "..8.9.1...6.5...2......6....3.1.7.5.........9..4...3...5....2...7...3.8.2..7....4"));
-        add(new SudokuBoard(3, 3, "4.....5.8.3..........7......2.....6.....5.8......1.......6.3.7.5..2.....1.8......"));
-        add(new SudokuBoard(3, 3, "1.....3.8.6.4..............2.3.1...........958.........5.6...7.....8.2...4......."));
-        add(new SudokuBoard(3, 3, "1....6.8..64..........4...7....9.6...7.4..5..5...7.1...5....32.3....8...4........"));
-        add(new SudokuBoard(3, 3, "249.6...3.3....2..8.......5.....6......2......1..4.82..9.5..7....4.....1.7...3..."));
-        add(new SudokuBoard(3, 3, "...8....9.873...4.6..7.......85..97...........43..75.......3....3...145.4....2..1"));
-        add(new SudokuBoard(3, 3, "...5.1....9....8...6.......4.1..........7..9........3.8.....1.5...2..4.....36...."));
-        add(new SudokuBoard(3, 3, "......8.16..2........7.5......6...2..1....3...8.......2......7..3..8....5...4...."));
-        add(new SudokuBoard(3, 3, ".476...5.8.3.....2.....9......8.5..6...1.....6.24......78...51...6....4..9...4..7"));
-        add(new SudokuBoard(3, 3, ".....7.95.....1...86..2.....2..73..85......6...3..49..3.5...41724................"));
-        add(new SudokuBoard(3, 3, ".4.5.....8...9..3..76.2.....146..........9..7.....36....1..4.5..6......3..71..2.."));
-        add(new SudokuBoard(3, 3, ".834.........7..5...........4.1.8..........27...3.....2.6.5....5.....8........1.."));
-        add(new SudokuBoard(3, 3, "..9.....3.....9...7.....5.6..65..4.....3......28......3..75.6..6...........12.3.8"));
-        add(new SudokuBoard(3, 3, ".26.39......6....19.....7.......4..9.5....2....85.....3..2..9..4....762.........4"));
-        add(new SudokuBoard(3, 3, "2.3.8....8..7...........1...6.5.7...4......3....1............82.5....6...1......."));
-        add(new SudokuBoard(3, 3, "6..3.2....1.....5..........7.26............843.........8.15........8.2........7.."));
-        add(new SudokuBoard(3, 3, "1.....9...64..1.7..7..4.......3.....3.89..5....7....2.....6.7.9.....4.1....129.3."));
-        add(new SudokuBoard(3, 3, ".........9......84.623...5....6...453...1...6...9...7....1.....4.5..2....3.8....9"));
-        add(new SudokuBoard(3, 3, ".2....5938..5..46.94..6...8..2.3.....6..8.73.7..2.........4.38..7....6..........5"));
-        add(new SudokuBoard(3, 3, "9.4..5...25.6..1..31......8.7...9...4..26......147....7.......2...3..8.6.4.....9."));
-        add(new SudokuBoard(3, 3, "...52.....9...3..4......7...1.....4..8..453..6...1...87.2........8....32.4..8..1."));
-        add(new SudokuBoard(3, 3, "53..2.9...24.3..5...9..........1.827...7.........981.............64....91.2.5.43."));
-        add(new SudokuBoard(3, 3, "1....786...7..8.1.8..2....9........24...1......9..5...6.8..........5.9.......93.4"));
-        add(new SudokuBoard(3, 3, "....5...11......7..6.....8......4.....9.1.3.....596.2..8..62..7..7......3.5.7.2.."));
-        add(new SudokuBoard(3, 3, ".47.2....8....1....3....9.2.....5...6..81..5.....4.....7....3.4...9...1.4..27.8.."));
-        add(new SudokuBoard(3, 3, "......94.....9...53....5.7..8.4..1..463...........7.8.8..7.....7......28.5.26...."));
-        add(new SudokuBoard(3, 3, ".2......6....41.....78....1......7....37.....6..412....1..74..5..8.5..7......39.."));
-        add(new SudokuBoard(3, 3, "1.....3.8.6.4..............2.3.1...........758.........7.5...6.....8.2...4......."));
-        add(new SudokuBoard(3, 3, "2....1.9..1..3.7..9..8...2.......85..6.4.........7...3.2.3...6....5.....1.9...2.5"));
-        add(new SudokuBoard(3, 3, "..7..8.....6.2.3...3......9.1..5..6.....1.....7.9....2........4.83..4...26....51."));
-        add(new SudokuBoard(3, 3, "...36....85.......9.4..8........68.........17..9..45...1.5...6.4....9..2.....3..."));
-        add(new SudokuBoard(3, 3, "34.6.......7.......2..8.57......5....7..1..2....4......36.2..1.......9.......7.82"));
-        add(new SudokuBoard(3, 3, "......4.18..2........6.7......8...6..4....3...1.......6......2..5..1....7...3...."));
-        add(new SudokuBoard(3, 3, ".4..5..67...1...4....2.....1..8..3........2...6...........4..5.3.....8..2........"));
-        add(new SudokuBoard(3, 3, ".......4...2..4..1.7..5..9...3..7....4..6....6..1..8...2....1..85.9...6.....8...3"));
-        add(new SudokuBoard(3, 3, "8..7....4.5....6............3.97...8....43..5....2.9....6......2...6...7.71..83.2"));
-        add(new SudokuBoard(3, 3, ".8...4.5....7..3............1..85...6.....2......4....3.26............417........"));
-        add(new SudokuBoard(3, 3, "....7..8...6...5...2...3.61.1...7..2..8..534.2..9.......2......58...6.3.4...1...."));
-        add(new SudokuBoard(3, 3, "......8.16..2........7.5......6...2..1....3...8.......2......7..4..8....5...3...."));
-        add(new SudokuBoard(3, 3, ".2..........6....3.74.8.........3..2.8..4..1.6..5.........1.78.5....9..........4."));
-        add(new SudokuBoard(3, 3, ".52..68.......7.2.......6....48..9..2..41......1.....8..61..38.....9...63..6..1.9"));
-        add(new SudokuBoard(3, 3, "....1.78.5....9..........4..2..........6....3.74.8.........3..2.8..4..1.6..5....."));
-        add(new SudokuBoard(3, 3, "1.......3.6.3..7...7...5..121.7...9...7........8.1..2....8.64....9.2..6....4....."));
-        add(new SudokuBoard(3, 3, "4...7.1....19.46.5.....1......7....2..2.3....847..6....14...8.6.2....3..6...9...."));
-        add(new SudokuBoard(3, 3, "......8.17..2........5.6......7...5..1....3...8.......5......2..3..8....6...4...."));
-        add(new SudokuBoard(3, 3, "963......1....8......2.5....4.8......1....7......3..257......3...9.2.4.7......9.."));
-        add(new SudokuBoard(3, 3, "15.3......7..4.2....4.72.....8.........9..1.8.1..8.79......38...........6....7423"));
-        add(new SudokuBoard(3, 3, "..........5724...98....947...9..3...5..9..12...3.1.9...6....25....56.....7......6"));
-        add(new SudokuBoard(3, 3, "....75....1..2.....4...3...5.....3.2...8...1.......6.....1..48.2........7........"));
-        add(new SudokuBoard(3, 3, "6.....7.3.4.8.................5.4.8.7..2.....1.3.......2.....5.....7.9......1...."));
-        add(new SudokuBoard(3, 3, "....6...4..6.3....1..4..5.77.....8.5...8.....6.8....9...2.9....4....32....97..1.."));
-        add(new SudokuBoard(3, 3, ".32.....58..3.....9.428...1...4...39...6...5.....1.....2...67.8.....4....95....6."));
-        add(new SudokuBoard(3, 3, "...5.3.......6.7..5.8....1636..2.......4.1.......3...567....2.8..4.7.......2..5.."));
-        add(new SudokuBoard(3, 3, ".5.3.7.4.1.........3.......5.8.3.61....8..5.9.6..1........4...6...6927....2...9.."));
-        add(new SudokuBoard(3, 3, "..5..8..18......9.......78....4.....64....9......53..2.6.........138..5....9.714."));
-        add(new SudokuBoard(3, 3, "..........72.6.1....51...82.8...13..4.........37.9..1.....238..5.4..9.........79."));
-        add(new SudokuBoard(3, 3, "...658.....4......12............96.7...3..5....2.8...3..19..8..3.6.....4....473.."));
-        add(new SudokuBoard(3, 3, ".2.3.......6..8.9.83.5........2...8.7.9..5........6..4.......1...1...4.22..7..8.9"));
-        add(new SudokuBoard(3, 3, ".5..9....1.....6.....3.8.....8.4...9514.......3....2..........4.8...6..77..15..6."));
-        add(new SudokuBoard(3, 3, ".....2.......7...17..3...9.8..7......2.89.6...13..6....9..5.824.....891.........."));
-        add(new SudokuBoard(3, 3, "3...8.......7....51..............36...2..4....7...........6.13..452...........8.."));
-    }};
+    public static final String CORPUS = "data/top95-puzzles.txt";     //from the project directory
+
+    /**
+     * Reads the puzzles to time the solvers with.
+     *
+     * @param path the file of puzzles, any format PuzzleReader reads
+     * @return the 9x9 puzzles of the file
+     * @throws IOException if the file can not be read
+     */
+    public static List<SudokuBoard> load(String path) throws IOException {
+        final List<SudokuBoard> puzzles = new ArrayList<>();
+        try (PuzzleReader reader = PuzzleReader.open(path, 3, 3)){
+            SudokuBoard board;
+            while ((board = reader.read()) != null){
+                puzzles.add(board);
+            }
+        }
+        if (puzzles.isEmpty()){
+            throw new IOException(path + " has no puzzles");
+        }
+        return puzzles;
+    }
 
     /**
      * Times one solver.
      *
      * @param solver the solver to use
+     * @param puzzles the problems to solve
      * @return time in ms to solve all the problems
      */
-    public static long solve(SudokuSolver solver){
+    public static long solve(SudokuSolver solver, List<SudokuBoard> puzzles){
         long totalTime = 0;
         String name = solver.getClass().getSimpleName();
-        for (int i = 0; i < TOP95.size(); i++){
-            System.out.print("solve: " + name + ": " + (i+1) + " / " + TOP95.size() + "...");
+        SearchStats stats = Main.countWork(solver);
+        for (int i = 0; i < puzzles.size(); i++){
+            System.out.print("solve: " + name + ": " + (i+1) + " / " + puzzles.size() + "...");
+            long nodes = stats == null ? 0 : stats.getNodes();
             long time = System.currentTimeMillis();
-            solver.solve(TOP95.get(i));
+            solver.solve(puzzles.get(i));
             time = System.currentTimeMillis() - time;
             totalTime += time;
-            System.out.println(time + "ms");
+            System.out.println(time + "ms" + (stats == null ? "" : ", " + (stats.getNodes() - nodes) + " nodes"));
         }
         return totalTime;
     }
@@ -139,31 +76,72 @@ public class Top95 {
      * Times one solver.
      *
      * @param solver the solver to use
+     * @param puzzles the problems to test
      * @return time in ms to get the formity all the problems
      */
-    public static long formity(SudokuSolver solver){
+    public static long formity(SudokuSolver solver, List<SudokuBoard> puzzles){
         long totalTime = 0;
         String name = solver.getClass().getSimpleName();
-        for (int i = 0; i < TOP95.size(); i++){
-            System.out.print("form: " + name + ": " + (i+1) + " / " + TOP95.size() + "...");
+        SearchStats stats = Main.countWork(solver);
+        for (int i = 0; i < puzzles.size(); i++){
+            System.out.print("form: " + name + ": " + (i+1) + " / " + puzzles.size() + "...");
+            long nodes = stats == null ? 0 : stats.getNodes();
             long time = System.currentTimeMillis();
-            solver.getFormity(TOP95.get(i));
+            solver.getFormity(puzzles.get(i));
             time = System.currentTimeMillis() - time;
             totalTime += time;
-            System.out.println(time + "ms");
+            System.out.println(time + "ms" + (stats == null ? "" : ", " + (stats.getNodes() - nodes) + " nodes"));
         }
         return totalTime;
     }
 
+    /**
+     * Times the constraint solver at every propagation level, getting the
+     * formity of all the problems, and prints how many cells each level had
+     * to branch on. Less guessing is only worth it if the time goes down too.
+     *
+     * @param puzzles the problems to test
+     */
+    public static void levels(List<SudokuBoard> puzzles){
+        System.out.println("   propagation level    |     nodes    |     formity    ");
+        System.out.println("------------------------+--------------+------------------------");
+        for (PropagationLevel level : PropagationLevel.values()){
+            ConstraintSolver solver = new ConstraintSolver(level);
+            SearchStats stats = Main.countWork(solver);
+            long time = System.currentTimeMillis();
+            for (SudokuBoard board : puzzles){
+                solver.getFormity(board);
+            }
+            time = System.currentTimeMillis() - time;
+            System.out.print(" " + StringUtil.padRight(level.name().toLowerCase(), ' ', 23));
+            System.out.print(StringUtil.padRight("| " + stats.getNodes(), ' ', 15));
+            System.out.println("| " + time + "ms");
+        }
+    }
+
+    /**
+     * @param count how many things were done
+     * @param ms how long it took, in ms
+     * @return how many were done per second
+     */
+    private static long perSecond(long count, long ms){
+        return ms == 0 ? 0 : count * 1000 / ms;
+    }
+
     /**
      * Times all the solvers.
-     * @param args
+     * @param args [corpus]
+     * @throws IOException if the puzzles can not be read
      */
-    public static void main(String[] args){
+    public static void main(String[] args) throws IOException {
+        final List<SudokuBoard> puzzles = load(args.length > 0 ? args[0] : CORPUS);
+        final ConstraintSolver clp = new ConstraintSolver();
         List<SudokuSolver> solvers = new ArrayList<SudokuSolver>(){{
             add(new BacktrackSolver());
-            add(new ConstraintSolver());
+            add(clp);
             add(new ExactCoverSolver());
+            add(new BitboardSolver());
+            add(new ParallelBitboardSolver());
         }};
         SudokuGenerator gen = new DeductionGenerator(3, 3);
 
@@ -178,11 +156,17 @@ public class Top95 {
 
         List<Long> solveTime = new ArrayList<>();
         List<Long> formTime = new ArrayList<>();
+        List<SearchStats> solveWork = new ArrayList<>();
+        List<SearchStats> formWork = new ArrayList<>();
         for (SudokuSolver solver : solvers){
-            solveTime.add(solve(solver));
+            SearchStats work = Main.countWork(solver).snapshot();
+            solveTime.add(solve(solver, puzzles));
+            solveWork.add(Main.countWork(solver).since(work));
         }
         for (SudokuSolver solver : solvers){
-            formTime.add(formity(solver));
+            SearchStats work = Main.countWork(solver).snapshot();
+            formTime.add(formity(solver, puzzles));
+            formWork.add(Main.countWork(solver).since(work));
         }
         System.out.println("        strategy        |      solve             |     formity    ");
         System.out.println("------------------------+------------------------+------------------------");
@@ -190,9 +174,29 @@ public class Top95 {
             SudokuSolver s = solvers.get(i);
             System.out.print(" " + StringUtil.padRight(s.getClass().getSimpleName(), ' ', 23));
             System.out.print(StringUtil.padRight("| " + solveTime.get(i) + "ms", ' ', 13));
-            System.out.print(StringUtil.padRight(" (" + (solveTime.get(i) / TOP95.size()) + "ms)", ' ', 12));
+            System.out.print(StringUtil.padRight(" (" + (solveTime.get(i) / puzzles.size()) + "ms)", ' ', 12));
             System.out.print(StringUtil.padRight("| " + formTime.get(i) + "ms", ' ', 13));
-            System.out.println(StringUtil.padRight(" (" + (formTime.get(i) / TOP95.size()) + "ms)", ' ', 12));
+            System.out.println(StringUtil.padRight(" (" + (formTime.get(i) / puzzles.size()) + "ms)", ' ', 12));
+        }
+        System.out.println();
+        System.out.println("search work, solve");
+        System.out.println(Main.workHeader());
+        for (int i = 0; i < solvers.size(); i++){
+            System.out.println(Main.workRow(solvers.get(i).getClass().getSimpleName(), solveWork.get(i)));
+        }
+        System.out.println();
+        System.out.println("search work, formity");
+        System.out.println(Main.workHeader());
+        for (int i = 0; i < solvers.size(); i++){
+            System.out.println(Main.workRow(solvers.get(i).getClass().getSimpleName(), formWork.get(i)));
         }
+        int index = solvers.indexOf(clp);
+        long solveElims = solveWork.get(index).getEliminations();   //candidates eliminated by the CLP solver
+        long formElims = formWork.get(index).getEliminations();
+        System.out.println();
+        System.out.println("CLP eliminations, solve:   " + solveElims + " (" + perSecond(solveElims, solveTime.get(index)) + "/s)");
+        System.out.println("CLP eliminations, formity: " + formElims + " (" + perSecond(formElims, formTime.get(index)) + "/s)");
+        System.out.println();
+        levels(puzzles);
     }
 }
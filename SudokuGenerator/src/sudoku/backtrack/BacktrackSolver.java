@@ -1,19 +1,17 @@
 package sudoku.backtrack;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
-import sudoku.CandidateSet;
+import java.util.Iterator;
+import sudoku.AbstractSudokuSolver;
+import sudoku.SearchContext;
+import sudoku.SolutionIterator;
 import sudoku.SudokuBoard;
-import sudoku.SudokuSolver;
 
 /**
  * Uses backtracking to solve the sudoku board.
  *
  * @author Taras Mychaskiw
  */
-public class BacktrackSolver implements SudokuSolver {
+public class BacktrackSolver extends AbstractSudokuSolver {
 
     /**
      * Tries to solve the sudoku board starting from the cell given.
@@ -21,22 +19,26 @@ public class BacktrackSolver implements SudokuSolver {
      *
      * @param board the board to solve
      * @param cell the starting cell
+     * @param depth how many empty cells have been filled so far
+     * @param context ticked once per cell branched on
      * @return true if the board was solve
      */
-    private boolean solve(SudokuBoard board, int cell){
+    private boolean solve(SudokuBoard board, int cell, int depth, SearchContext context){
         if (cell == board.getNumCells()){
             return true;
         }
         if (board.isSet(cell)){
-            return solve(board, cell + 1);
+            return solve(board, cell + 1, depth, context);
         }
 
-        final CandidateSet options = board.getOptions(cell);
-        for (Integer opt : options){
+        context.tick(depth);
+        for (int opt = board.nextOption(cell, 0); opt != -1; opt = board.nextOption(cell, opt)){
             board.setCell(cell, opt);
-            if (solve(board, cell + 1)){
+            context.assign(1);
+            if (solve(board, cell + 1, depth + 1, context)){
                 return true;
             }
+            context.backtrack();
         }
 
         board.clearCell(cell);
@@ -52,118 +54,138 @@ public class BacktrackSolver implements SudokuSolver {
     @Override
     public SudokuBoard solve(SudokuBoard board){
         SudokuBoard toSolve = new SudokuBoard(board);
-        if (solve(toSolve, 0)){
-            return toSolve;
+        final SearchContext context = context();
+        try {
+            if (toSolve.isLegal() && solve(toSolve, 0, 0, context)){
+                return toSolve;
+            }
+            return null;
+        } finally {
+            context.flush();
         }
-        return null;
     }
 
 
     /**
-     * Returns a list of all solutions to the board given.
+     * Returns the solutions to the board one at a time.
      *
      * @param board the board to solve
-     * @return the list of all solutions to the board
+     * @return the solutions to the board, in the order the search finds them
      */
     @Override
-    public List<SudokuBoard> enumerate(SudokuBoard board) {
-        List<SudokuBoard> list = new LinkedList<>();
-        fill(new SudokuBoard(board), 0, list);
-        return list;
+    public Iterator<SudokuBoard> solutions(SudokuBoard board){
+        return new Solutions(board, context());
     }
 
     /**
-     * Populates the list with solutions to the board. Basically just solves
-     * the sudoku over and over again, keeping the solutions.
-     *
-     * @param board the board to solve
-     * @param cell the starting cell
-     * @param list where to store the solutions
+     * The backtracking search, with the recursion unrolled. The value in each
+     * empty cell is all the state a level needs, since the next option to try
+     * is just the one after it.
      */
-    private void fill(SudokuBoard board, int cell, List<SudokuBoard> list){
-        if (cell == board.getNumCells()){
-            list.add(new SudokuBoard(board));
-            return;
-        }
-        if (board.isSet(cell)){
-            fill(board, cell + 1, list);
-            return;
+    private static class Solutions extends SolutionIterator {
+        private final SudokuBoard board;    //the board being filled in
+        private final SearchContext context;
+        private final int[] empty;          //the cells to fill, in order
+        private int depth;                  //index into empty, -1 when done
+
+        Solutions(SudokuBoard given, SearchContext context){
+            super(context);
+            this.context = context;
+            board = new SudokuBoard(given);
+            int numEmpty = 0;
+            for (int cell = 0; cell < board.getNumCells(); cell++){
+                if (!board.isSet(cell)){
+                    numEmpty++;
+                }
+            }
+            empty = new int[numEmpty];
+            for (int cell = 0, i = 0; cell < board.getNumCells(); cell++){
+                if (!board.isSet(cell)){
+                    empty[i++] = cell;
+                }
+            }
+            depth = board.isLegal() ? 0 : -1;
         }
 
-        final CandidateSet options = board.getOptions(cell);
-        for (Integer opt : options){
-            board.setCell(cell, opt);
-            fill(board, cell + 1, list);
+        @Override
+        protected SudokuBoard advance(){
+            while (depth >= 0){
+                if (depth == empty.length){
+                    depth--;    //the next call carries on from the last cell
+                    return new SudokuBoard(board);
+                }
+                final int cell = empty[depth];
+                if (board.isSet(cell)){
+                    context.backtrack();    //back from the level below the value
+                }
+                else {
+                    context.tick(depth);    //got to the cell from above
+                }
+                final int opt = board.nextOption(cell, board.getCell(cell));
+                if (opt == -1){
+                    board.clearCell(cell);
+                    depth--;
+                }
+                else {
+                    board.setCell(cell, opt);
+                    context.assign(1);
+                    depth++;
+                }
+            }
+            return null;
         }
-        board.clearCell(cell);
     }
 
 
     /**
-     * Returns true if the board is well formed, that is if the
-     * board only has one solution.
+     * Counts the solutions to the board, but stops searching as soon as the
+     * limit is reached. Solutions are only counted, never built.
      *
-     * @param board the board to test
-     * @return true if it only has one possible solution
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the number of solutions, at most limit
      */
     @Override
-    public boolean isWellFormed(SudokuBoard board){
-        Set<SudokuBoard> set = new HashSet<>();
-        return isWellFormed(new SudokuBoard(board), 0, set) && set.size() == 1;
+    public int countSolutions(SudokuBoard board, int limit){
+        if (!board.isLegal()){
+            return 0;
+        }
+        final SearchContext context = context();
+        try {
+            return count(new SudokuBoard(board), 0, 0, limit, context);
+        } finally {
+            context.flush();
+        }
     }
 
     /**
      * Continually solves the sudoku until there are no more solutions or until
-     * a second solution was found. If a second solution is found, then an
-     * exception is thrown to immediately stop the process. I wish java had
-     * lazy evaluation. length(enumerations(board)) > 1; done
+     * the limit is reached.
      *
-     * @param board the board to check for well formed
+     * @param board the board to count solutions of
      * @param cell the starting cell
-     * @param soln the set to store the solutions in
-     * @return true if the sudoku board has only one solution
+     * @param depth how many empty cells have been filled so far
+     * @param limit the most solutions still wanted
+     * @param context ticked once per cell branched on
+     * @return the number of solutions found, at most limit
      */
-    private boolean isWellFormed(SudokuBoard board, int cell, Set<SudokuBoard> soln){
-        if (Thread.interrupted()){
-            throw new RuntimeException();   //fuck the stack
-            //return false;
-        }
+    private int count(SudokuBoard board, int cell, int depth, int limit, SearchContext context){
         if (cell == board.getNumCells()){
-            return !soln.add(new SudokuBoard(board)) || soln.size() <= 1;
+            return 1;
         }
         if (board.isSet(cell)){
-            return isWellFormed(board, cell + 1, soln);
+            return count(board, cell + 1, depth, limit, context);
         }
+        context.tick(depth);
 
-        final CandidateSet options = board.getOptions(cell);
-        for (Integer opt : options){
+        int found = 0;
+        for (int opt = board.nextOption(cell, 0); opt != -1 && found < limit; opt = board.nextOption(cell, opt)){
             board.setCell(cell, opt);
-            if (!isWellFormed(board, cell + 1, soln)){
-                return false;
-            }
+            context.assign(1);
+            found += count(board, cell + 1, depth + 1, limit - found, context);
+            context.backtrack();
         }
         board.clearCell(cell);
-        return true;
-    }
-
-
-    /**
-     * Returns the formity of the board sent.
-     *
-     * @param board the board to test
-     * @return 0 if no solutions, 1 if unique solution, -1 if multiple solutions
-     */
-    @Override
-    public int getFormity(SudokuBoard board){
-        Set<SudokuBoard> set = new HashSet<>();
-        if (isWellFormed(new SudokuBoard(board), 0, set)){
-            if (set.isEmpty()){
-                return NO_SOLUTIONS;
-            }
-            else if (set.size() == 1){
-                return UNIQUE_SOLUTION;
-            }
-        }
-        return MULTIPLE_SOLUTIONS;
+        return found;
     }
 }
@@ -0,0 +1,43 @@
+package sudoku.bench;
+
+/**
+ * One thing to time. The runner calls setUp() once, then op() over and over,
+ * each time with the next number, so a benchmark over a corpus can take puzzle
+ * number % size. Whatever op() returns is handed to a sink, so the JIT can
+ * not throw the work away.
+ *
+ * @author Taras Mychaskiw
+ */
+public abstract class Benchmark {
+
+    private final String group, name;
+
+    /**
+     * @param group what is timed, like the class
+     * @param name how, like the method
+     */
+    protected Benchmark(String group, String name){
+        this.group = group;
+        this.name = name;
+    }
+
+    /**
+     * @return the full name, group.name
+     */
+    public String getName(){
+        return group + "." + name;
+    }
+
+    /**
+     * Gets ready to run, outside of the timing.
+     */
+    protected void setUp(){}
+
+    /**
+     * Does the thing once.
+     *
+     * @param op how many times it has been done before
+     * @return the result, so it is not optimized away
+     */
+    protected abstract Object op(long op);
+}
@@ -0,0 +1,448 @@
+package sudoku.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import sudoku.SudokuBoard;
+import sudoku.SudokuSolver;
+import sudoku.Top95;
+import sudoku.backtrack.BacktrackSolver;
+import sudoku.bitboard.BitboardSolver;
+import sudoku.bitboard.ParallelBitboardSolver;
+import sudoku.clp.ConstraintSolver;
+import sudoku.clp.PropagationLevel;
+import sudoku.dlx.ExactCoverSolver;
+import sudoku.generate.BottomUpGenerator;
+import sudoku.generate.DeductionGenerator;
+import sudoku.generate.SudokuGenerator;
+import sudoku.generate.TopDownGenerator;
+import sudoku.io.BoardCodec;
+import sudoku.io.PuzzleReader;
+import sudoku.util.StringUtil;
+
+/**
+ * Runs the benchmarks the way JMH would: a few warm up iterations which are
+ * thrown away, then timed iterations of a fixed length, each running the
+ * benchmark in batches so reading the clock costs next to nothing. The score
+ * is the mean time per op with its 99.9% confidence interval, so results
+ * under a millisecond, and changes between runs, can be told apart from
+ * noise. With -prof gc it also counts the bytes allocated per op and the
+ * collections, like the gc profiler of JMH.
+ *
+ * The solvers are run over the puzzles of a corpus, Top95.CORPUS for 9x9
+ * boards by default, or puzzles made up front for other sizes.
+ *
+ * @author Taras Mychaskiw
+ */
+public class BenchmarkRunner {
+
+    //two sided 99.9% of Student's t, by degrees of freedom from 1 to 30
+    private static final double[] T_999 = {
+        636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646
+    };
+    private static volatile Object sink;        //where the results go, so they are used
+
+    private final int warmups, iterations;
+    private final long iterationNanos;
+    private final boolean gcProfile;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final Method allocatedBytes;        //com.sun.management, null if the JVM has none
+
+    /**
+     * @param warmups iterations to throw away
+     * @param iterations iterations to time
+     * @param iterationMillis how long one iteration runs, in ms
+     * @param gcProfile true to count allocations and collections
+     */
+    public BenchmarkRunner(int warmups, int iterations, long iterationMillis, boolean gcProfile){
+        this.warmups = warmups;
+        this.iterations = iterations;
+        this.iterationNanos = iterationMillis * 1000000L;
+        this.gcProfile = gcProfile;
+        Method method = null;
+        try {
+            method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long[].class);
+        } catch (ReflectiveOperationException ex){
+            //not a HotSpot JVM, no allocation counts
+        }
+        this.allocatedBytes = method;
+    }
+
+    /**
+     * Times one benchmark.
+     *
+     * @param bench the benchmark
+     * @return the line of the report for it
+     */
+    public String run(Benchmark bench){
+        bench.setUp();
+        long op = 0;
+        for (int i = 0; i < warmups; i++){
+            op += iteration(bench, op, null);
+        }
+        final double[] scores = new double[iterations];     //ns per op
+        final Map<Long,Long> allocBefore = allocated();
+        final long gcBefore = gcCount(), gcTimeBefore = gcTime();
+        long ops = 0;
+        for (int i = 0; i < iterations; i++){
+            final long[] nanos = new long[1];
+            final long done = iteration(bench, op, nanos);
+            scores[i] = (double)nanos[0] / done;
+            op += done;
+            ops += done;
+        }
+        final long alloc = allocatedSince(allocBefore);
+        final long gcs = gcCount() - gcBefore, gcTime = gcTime() - gcTimeBefore;
+
+        double mean = 0;
+        for (double score : scores){
+            mean += score;
+        }
+        mean /= scores.length;
+        double var = 0;
+        for (double score : scores){
+            var += (score - mean) * (score - mean);
+        }
+        final double error = scores.length < 2 ? Double.NaN
+                : t999(scores.length - 1) * Math.sqrt(var / (scores.length - 1) / scores.length);
+
+        final StringBuilder line = new StringBuilder();
+        line.append(pad(bench.getName(), 46, false));
+        line.append(pad(String.valueOf(iterations), 4, true));
+        line.append(pad(format(mean), 16, true));
+        line.append(" +- ").append(pad(format(error), 12, false));
+        line.append("ns/op");
+        if (gcProfile){
+            line.append(pad(allocatedBytes == null ? "?" : format((double)alloc / ops), 14, true)).append(" B/op");
+            line.append(pad(String.valueOf(gcs), 6, true)).append(" gcs");
+            line.append(pad(String.valueOf(gcTime), 7, true)).append(" ms");
+        }
+        return line.toString();
+    }
+
+    /**
+     * Runs the benchmark for one iteration, in batches which double until
+     * the time is up.
+     *
+     * @param nanos where to put how long the ops took, or null
+     * @return how many ops were done
+     */
+    private long iteration(Benchmark bench, long op, long[] nanos){
+        final long start = System.nanoTime();
+        long done = 0, batch = 1, elapsed;
+        do {
+            for (long i = 0; i < batch; i++){
+                sink = bench.op(op + done + i);
+            }
+            done += batch;
+            batch <<= 1;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        if (nanos != null){
+            nanos[0] = elapsed;
+        }
+        return done;
+    }
+
+    /**
+     * @param df degrees of freedom, at least 1
+     * @return the two sided 99.9% quantile of Student's t, rounded up to the
+     * next smaller tabled df past 30
+     */
+    static double t999(int df){
+        if (df <= T_999.length){
+            return T_999[df - 1];
+        }
+        return df <= 40 ? 3.646 : df <= 60 ? 3.551 : df <= 120 ? 3.460 : 3.373;
+    }
+
+    /**
+     * Every thread counts, so the work a benchmark hands to other threads,
+     * like the fork/join workers of the parallel solver, is counted too.
+     *
+     * @return bytes allocated so far by each live thread, by id, empty if it
+     * is not known
+     */
+    private Map<Long,Long> allocated(){
+        final Map<Long,Long> bytes = new HashMap<>();
+        if (allocatedBytes == null){
+            return bytes;
+        }
+        final long[] ids = threads.getAllThreadIds();
+        try {
+            final long[] counts = (long[])allocatedBytes.invoke(threads, (Object)ids);
+            for (int i = 0; i < ids.length; i++){
+                if (counts[i] >= 0){    //-1 for a thread which died meanwhile
+                    bytes.put(ids[i], counts[i]);
+                }
+            }
+        } catch (ReflectiveOperationException ex){
+            //no counts
+        }
+        return bytes;
+    }
+
+    /**
+     * Threads which died in between are missed, and threads started in
+     * between count from 0.
+     *
+     * @param before what allocated() gave earlier
+     * @return the bytes allocated by every thread since then
+     */
+    private long allocatedSince(Map<Long,Long> before){
+        long total = 0;
+        for (Map.Entry<Long,Long> entry : allocated().entrySet()){
+            final Long was = before.get(entry.getKey());
+            total += entry.getValue() - (was == null ? 0 : was);
+        }
+        return total;
+    }
+
+    private static long gcCount(){
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime(){
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    /**
+     * Pads like StringUtil, but lets a long string through as it is.
+     */
+    private static String pad(String in, int length, boolean left){
+        return in.length() >= length ? in + (left ? "" : " ")
+                : left ? StringUtil.padLeft(in, ' ', length) : StringUtil.padRight(in, ' ', length);
+    }
+
+    private static String format(double value){
+        return Double.isNaN(value) ? "NaN" : String.format("%.3f", value);
+    }
+
+    /**
+     * Makes every benchmark for boards of one size.
+     *
+     * @param p width of the small box
+     * @param q height of the small box
+     * @param corpus the puzzles to solve, all p x q
+     * @return the benchmarks
+     */
+    public static List<Benchmark> benchmarks(final int p, final int q, final List<SudokuBoard> corpus){
+        final List<Benchmark> benches = new ArrayList<>();
+        final List<SudokuSolver> solvers = new ArrayList<>();
+        if (p * q <= 9){
+            solvers.add(new BacktrackSolver());     //far too slow for anything bigger
+        }
+        solvers.add(new ConstraintSolver());
+        solvers.add(new ConstraintSolver(PropagationLevel.ALL_DIFFERENT));
+        solvers.add(new ExactCoverSolver());
+        solvers.add(new BitboardSolver());
+        solvers.add(new ParallelBitboardSolver());
+        for (final SudokuSolver solver : solvers){
+            String group = solver.getClass().getSimpleName();
+            if (solver instanceof ConstraintSolver){
+                group += "(" + ((ConstraintSolver)solver).getLevel().name().toLowerCase() + ")";
+            }
+            benches.add(new Benchmark(group, "solve"){
+                @Override
+                protected Object op(long op){
+                    return solver.solve(corpus.get((int)(op % corpus.size())));
+                }
+            });
+            benches.add(new Benchmark(group, "getFormity"){
+                @Override
+                protected Object op(long op){
+                    return solver.getFormity(corpus.get((int)(op % corpus.size())));
+                }
+            });
+            benches.add(new Benchmark(group, "enumerate"){
+                @Override
+                protected Object op(long op){
+                    return solver.enumerate(corpus.get((int)(op % corpus.size())));
+                }
+            });
+        }
+
+        final List<SudokuGenerator> generators = new ArrayList<>();
+        generators.add(new TopDownGenerator(p, q));
+        generators.add(new BottomUpGenerator(p, q));
+        generators.add(new DeductionGenerator(p, q));
+        for (final SudokuGenerator generator : generators){
+            benches.add(new Benchmark(generator.getClass().getSimpleName(), "getProblem"){
+                @Override
+                protected Object op(long op){
+                    return generator.getProblem();
+                }
+            });
+        }
+
+        final int cells = p * q * p * q;
+        benches.add(new Benchmark("SudokuBoard", "getOptions"){
+            @Override
+            protected Object op(long op){
+                return corpus.get((int)(op / cells % corpus.size())).getOptions((int)(op % cells));
+            }
+        });
+        benches.add(new Benchmark("SudokuBoard", "isAcceptable"){
+            @Override
+            protected Object op(long op){
+                final int n = p * q;
+                final SudokuBoard board = corpus.get((int)(op / cells % corpus.size()));
+                return board.isAcceptable((int)(op % cells), (int)(op % n) + 1);
+            }
+        });
+        final List<String> lines = new ArrayList<>(), grids = new ArrayList<>();
+        for (SudokuBoard board : corpus){
+            lines.add(BoardCodec.toLine(board));
+            grids.add(board.toString());
+        }
+        final SudokuBoard into = new SudokuBoard(p, q);
+        benches.add(new Benchmark("SudokuBoard", "fromString(line)"){
+            @Override
+            protected Object op(long op){
+                into.fromString(lines.get((int)(op % lines.size())));
+                return into;
+            }
+        });
+        benches.add(new Benchmark("SudokuBoard", "fromString(grid)"){
+            @Override
+            protected Object op(long op){
+                into.fromString(grids.get((int)(op % grids.size())));
+                return into;
+            }
+        });
+        benches.add(new Benchmark("SudokuBoard", "toString"){
+            @Override
+            protected Object op(long op){
+                return corpus.get((int)(op % corpus.size())).toString();
+            }
+        });
+        benches.add(new Benchmark("BoardCodec", "decode"){
+            @Override
+            protected Object op(long op){
+                BoardCodec.decode(lines.get((int)(op % lines.size())), 0, into);
+                return into;
+            }
+        });
+        return benches;
+    }
+
+    /**
+     * Reads the puzzles of a file, or if there is no file, the top 95 for
+     * 9x9 boards, or a few new ones for other sizes or when the top 95 are
+     * not there.
+     *
+     * @param path the file, or null
+     * @param p width of the small box
+     * @param q height of the small box
+     * @param num how many puzzles to make if they are made
+     * @return the puzzles
+     * @throws IOException if the file can not be read
+     */
+    public static List<SudokuBoard> corpus(String path, int p, int q, int num) throws IOException {
+        if (path == null && p == 3 && q == 3 && new File(Top95.CORPUS).exists()){
+            path = Top95.CORPUS;
+        }
+        final List<SudokuBoard> corpus = new ArrayList<>();
+        if (path != null){
+            try (PuzzleReader reader = PuzzleReader.open(path, p, q)){
+                SudokuBoard board;
+                while ((board = reader.read()) != null){
+                    corpus.add(board);
+                }
+            }
+        } else {
+            final SudokuGenerator generator = new DeductionGenerator(p, q);
+            while (corpus.size() < num){
+                corpus.add(generator.getProblem());
+            }
+        }
+        if (corpus.isEmpty()){
+            throw new IOException(path + " has no puzzles");
+        }
+        return corpus;
+    }
+
+    /**
+     * Runs the benchmarks.
+     * @param args [-s p q] [-c corpus] [-n puzzles] [-b regex] [-wi n] [-i n] [-t ms] [-prof gc]
+     * @throws IOException if the corpus can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        int p = 3, q = 3, num = 20, warmups = 3, iterations = 5;
+        long millis = 1000;
+        String path = null;
+        Pattern filter = null;
+        boolean gc = false;
+        for (int i = 0; i < args.length; i++){
+            switch (args[i]){
+                case "-s":
+                    p = Integer.valueOf(args[++i]);
+                    q = Integer.valueOf(args[++i]);
+                    break;
+                case "-c":
+                    path = args[++i];
+                    break;
+                case "-n":
+                    num = Integer.valueOf(args[++i]);
+                    break;
+                case "-b":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                case "-wi":
+                    warmups = Integer.valueOf(args[++i]);
+                    break;
+                case "-i":
+                    iterations = Integer.valueOf(args[++i]);
+                    break;
+                case "-t":
+                    millis = Long.valueOf(args[++i]);
+                    break;
+                case "-prof":
+                    gc = args[++i].equals("gc");
+                    break;
+                default:
+                    System.out.println("Usage: java -cp ./build/classes sudoku.bench.BenchmarkRunner [-s p q] [-c corpus] [-n puzzles]"
+                            + " [-b regex] [-wi warmups] [-i iterations] [-t ms] [-prof gc]");
+                    return;
+            }
+        }
+
+        final List<SudokuBoard> corpus = corpus(path, p, q, num);
+        final List<Benchmark> benches = benchmarks(p, q, corpus);
+        if (filter != null){
+            for (Iterator<Benchmark> it = benches.iterator(); it.hasNext(); ){
+                if (!filter.matcher(it.next().getName()).find()){
+                    it.remove();
+                }
+            }
+        }
+        System.out.println("board size: " + p*q + "x" + p*q + ", corpus: " + corpus.size() + " puzzles"
+                + (path == null ? "" : " from " + path));
+        System.out.println(warmups + " warm up and " + iterations + " timed iterations of " + millis + "ms each");
+        System.out.println();
+        final BenchmarkRunner runner = new BenchmarkRunner(warmups, iterations, millis, gc);
+        System.out.println(pad("Benchmark", 46, false) + " Cnt           Score    Error");
+        for (Benchmark bench : benches){
+            System.out.println(runner.run(bench));
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package sudoku.bitboard;
+
+import java.util.concurrent.CancellationException;
+import sudoku.BoardGeometry;
+import sudoku.CandidateSet;
+import sudoku.SearchContext;
+import sudoku.SudokuBoard;
+
+/**
+ * One search over one board. The candidates of every cell are a single long,
+ * bit (value - 1) on if the value is still possible, and each level of the
+ * search tree is just a copy of that array. After every assignment, naked
+ * singles are pushed out to the peers and hidden singles are found in every
+ * unit, and the search branches on the cell with the fewest candidates left.
+ *
+ * A search is not thread safe, but it is cheap to make a new one per call.
+ * When it is part of a ParallelSearch, each task has its own search and the
+ * solutions are counted in the ParallelSearch instead.
+ *
+ * @author Taras Mychaskiw
+ */
+class BitboardSearch {
+
+    private final SudokuBoard board;        //the board being solved
+    private final BoardGeometry geometry;
+    private final int numCells, n;
+    private final long full;                //all values 1..n on
+    private final long[][] levels;          //candidates at each depth
+    private final int[] queue;              //cells that just became singles
+    private final ParallelSearch parallel;  //what this is a part of, or null
+    private final SearchContext context;    //ticked for every node
+    private int base;                       //guesses made above level 0, by a ParallelSearch
+
+    private int limit;                      //stop after this many solutions
+    private int found;                      //solutions found so far
+    private SudokuBoard first;              //the first solution found
+    private int excludedCell = -1;          //cell treated as empty, and
+    private long excludedBit;               //the value it must not take
+
+    /**
+     * Sets up a search for the board, or for one part of a parallel search
+     * of it. Nothing is propagated until a search method is called.
+     *
+     * @param board the board to search
+     * @param parallel the search this is a part of, or null if it is alone
+     * @param context the context of the thread running this search, flushed
+     * when a search of a board alone is over
+     */
+    BitboardSearch(SudokuBoard board, ParallelSearch parallel, SearchContext context){
+        if (board.getSize() > Long.SIZE){
+            throw new IllegalArgumentException("bitboards only handle boards up to 64x64, not "
+                    + board.getSize() + "x" + board.getSize());
+        }
+        this.board = board;
+        this.geometry = board.getGeometry();
+        this.numCells = board.getNumCells();
+        this.n = board.getSize();
+        this.full = CandidateSet.fullMask(n);
+        this.levels = new long[numCells + 1][];
+        this.queue = new int[numCells];
+        this.parallel = parallel;
+        this.context = context;
+    }
+
+    /**
+     * @return the first solution to the board, or null if there is none
+     */
+    SudokuBoard solve(){
+        run(1);
+        return first;
+    }
+
+    /**
+     * @param max the most solutions to count before stopping
+     * @return the number of solutions to the board, at most max
+     */
+    int count(int max){
+        run(max);
+        return found;
+    }
+
+    /**
+     * Looks for a solution where the cell does not hold the value given.
+     *
+     * @param cell the cell to treat as empty
+     * @param value the value the cell must not take
+     * @return true if there is such a solution
+     */
+    boolean hasSolutionWithout(int cell, int value){
+        exclude(cell, value);
+        return count(1) > 0;
+    }
+
+    /**
+     * Treats the cell as empty, and keeps the value out of it.
+     *
+     * @param cell the cell to treat as empty
+     * @param value the value the cell must not take
+     */
+    void exclude(int cell, int value){
+        excludedCell = cell;
+        excludedBit = 1L << (value - 1);
+    }
+
+    /**
+     * Loads the givens and runs the search.
+     *
+     * @param max the most solutions to find before stopping
+     */
+    private void run(int max){
+        limit = max;
+        found = 0;
+        first = null;
+        try {
+            if (load(level(0))){
+                search(0);
+            }
+        } finally {
+            context.flush();
+        }
+    }
+
+    /**
+     * Searches below candidates which have already been propagated.
+     *
+     * @param cells the candidates to start from, they are copied
+     * @param depth the guesses made to get to them
+     */
+    void searchFrom(long[] cells, int depth){
+        System.arraycopy(cells, 0, level(0), 0, numCells);
+        base = depth;
+        search(0);
+    }
+
+    /**
+     * Fills in the candidates of the givens and propagates them.
+     *
+     * @param cells where to put the candidates, one per cell
+     * @return false if the givens already break the rules
+     */
+    boolean load(long[] cells){
+        int tail = 0;
+        for (int cell = 0; cell < numCells; cell++){
+            final int value = cell == excludedCell ? 0 : board.getCell(cell);
+            if (value > 0){
+                cells[cell] = 1L << (value - 1);
+                queue[tail++] = cell;
+            }
+            else {
+                cells[cell] = cell == excludedCell ? full & ~excludedBit : full;
+                if (cells[cell] == 0){
+                    return false;
+                }
+                if (Long.bitCount(cells[cell]) == 1){
+                    queue[tail++] = cell;
+                }
+            }
+        }
+        return propagate(cells, tail);
+    }
+
+    /**
+     * Searches below the given depth, the candidates at that depth have
+     * already been propagated.
+     *
+     * @param depth the current depth of the search tree
+     * @return true if enough solutions have been found to stop
+     * @throws CancellationException if the thread is interrupted
+     */
+    private boolean search(int depth){
+        if (parallel != null && parallel.isDone()){
+            return true;    //decided somewhere else
+        }
+        final long[] cells = levels[depth];
+        final int best = getBestCell(cells);
+        if (best < 0){
+            return addSolution(cells);
+        }
+        context.tick(base + depth);
+
+        final long[] next = level(depth + 1);
+        long options = cells[best];
+        while (options != 0){
+            final long bit = options & -options;
+            options ^= bit;
+            System.arraycopy(cells, 0, next, 0, numCells);
+            if (guess(next, best, bit)){
+                if (search(depth + 1)){
+                    return true;
+                }
+                context.backtrack();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param cells the candidates, one per cell
+     * @return the undecided cell with the fewest candidates, or -1 if every
+     * cell is decided
+     */
+    int getBestCell(long[] cells){
+        int best = -1, fewest = Integer.MAX_VALUE;
+        for (int cell = 0; cell < numCells; cell++){
+            final int size = Long.bitCount(cells[cell]);
+            if (size > 1 && size < fewest){
+                fewest = size;
+                best = cell;
+                if (size == 2){
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Puts the value in the cell and propagates it.
+     *
+     * @param cells the candidates to guess in
+     * @param cell the cell to decide
+     * @param bit the bit of the value to put there
+     * @return false if the guess breaks the rules
+     */
+    boolean guess(long[] cells, int cell, long bit){
+        cells[cell] = bit;
+        queue[0] = cell;
+        return propagate(cells, 1);
+    }
+
+    /**
+     * Pushes the singles in the queue out to their peers, then looks for
+     * hidden singles, until nothing else changes.
+     *
+     * @param cells the candidates to propagate in
+     * @param tail how many cells are already in the queue
+     * @return false if some cell or unit has run out of candidates
+     */
+    private boolean propagate(long[] cells, int tail){
+        final int numPeers = geometry.getNumPeers();
+        final int numUnits = geometry.getNumUnits();
+        int head = 0;
+        while (true){
+            //naked singles: a decided cell removes its value from its peers
+            while (head < tail){
+                final int cell = queue[head++];
+                final long bit = cells[cell];
+                context.assign(1);
+                for (int i = 0; i < numPeers; i++){
+                    final int peer = geometry.getPeer(cell, i);
+                    if ((cells[peer] & bit) != 0){
+                        final long left = cells[peer] &= ~bit;
+                        context.eliminate(1);
+                        if (left == 0){
+                            return false;
+                        }
+                        if ((left & (left - 1)) == 0){
+                            queue[tail++] = peer;
+                        }
+                    }
+                }
+            }
+
+            //hidden singles: a value with only one place left in a unit goes there
+            for (int unit = 0; unit < numUnits; unit++){
+                long once = 0, twice = 0;
+                for (int i = 0; i < n; i++){
+                    final long cand = cells[geometry.getUnitCell(unit, i)];
+                    twice |= once & cand;
+                    once |= cand;
+                }
+                if (once != full){
+                    return false;   //some value has nowhere to go
+                }
+                long hidden = once & ~twice;
+                while (hidden != 0){
+                    final long bit = hidden & -hidden;
+                    hidden ^= bit;
+                    for (int i = 0; i < n; i++){
+                        final int cell = geometry.getUnitCell(unit, i);
+                        if ((cells[cell] & bit) != 0){
+                            if (cells[cell] != bit){
+                                context.eliminate(Long.bitCount(cells[cell]) - 1);
+                                cells[cell] = bit;
+                                queue[tail++] = cell;
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            if (head == tail){
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Records a solution.
+     *
+     * @param cells the candidates, one per cell
+     * @return true if enough solutions have been found to stop
+     */
+    private boolean addSolution(long[] cells){
+        if (parallel != null){
+            return parallel.addSolution(this, cells);
+        }
+        found++;
+        if (first == null){
+            first = toBoard(cells);
+        }
+        return found >= limit;
+    }
+
+    /**
+     * @param cells the candidates, one per cell, all decided
+     * @return a new board with the decided values
+     */
+    SudokuBoard toBoard(long[] cells){
+        final SudokuBoard solved = new SudokuBoard(board);
+        for (int cell = 0; cell < numCells; cell++){
+            solved.setCell(cell, Long.numberOfTrailingZeros(cells[cell]) + 1);
+        }
+        return solved;
+    }
+
+    /**
+     * @param depth the depth of the search tree
+     * @return the candidate array for that depth, made the first time
+     */
+    private long[] level(int depth){
+        if (levels[depth] == null){
+            levels[depth] = new long[numCells];
+        }
+        return levels[depth];
+    }
+}
@@ -0,0 +1,137 @@
+package sudoku.bitboard;
+
+import java.util.Iterator;
+import sudoku.AbstractSudokuSolver;
+import sudoku.SearchContext;
+import sudoku.SolutionIterator;
+import sudoku.SudokuBoard;
+
+/**
+ * Solves the sudoku with the whole board held as bit masks. Every cell is a
+ * single long of candidates, singles are propagated after each guess and the
+ * most constrained cell is always guessed next. Much like the CLP solver, but
+ * with nothing allocated inside the search. Only handles boards up to 64x64.
+ *
+ * @author Taras Mychaskiw
+ */
+public class BitboardSolver extends AbstractSudokuSolver {
+
+    /**
+     * Tries to solve the sudoku board.
+     *
+     * @param board the board to solve
+     * @return a solved version of the board, or null if unsolvable
+     */
+    @Override
+    public SudokuBoard solve(SudokuBoard board){
+        return new BitboardSearch(board, null, context()).solve();
+    }
+
+
+    /**
+     * Returns the solutions to the board one at a time.
+     *
+     * @param board the board to solve
+     * @return the solutions to the board, in the order the search finds them
+     */
+    @Override
+    public Iterator<SudokuBoard> solutions(SudokuBoard board){
+        return new Solutions(board, context());
+    }
+
+    /**
+     * The bitboard search with the recursion unrolled. Each level keeps its
+     * candidates, the cell it branches on and the values left to try there.
+     */
+    private static class Solutions extends SolutionIterator {
+        private final BitboardSearch search;    //for its propagation
+        private final SearchContext context;
+        private final long[][] levels;          //candidates at each depth
+        private final int[] branches;           //cell guessed at each depth
+        private final long[] options;           //values left to try there
+        private int depth;                      //-1 when done
+        private boolean entering = true;        //false when back from a deeper level
+
+        Solutions(SudokuBoard board, SearchContext context){
+            super(context);
+            this.context = context;
+            search = new BitboardSearch(board, null, context);
+            final int numCells = board.getNumCells();
+            levels = new long[numCells + 1][];
+            levels[0] = new long[numCells];
+            branches = new int[numCells + 1];
+            options = new long[numCells + 1];
+            depth = search.load(levels[0]) ? 0 : -1;
+        }
+
+        @Override
+        protected SudokuBoard advance(){
+            while (depth >= 0){
+                final long[] cells = levels[depth];
+                if (entering){
+                    entering = false;
+                    final int best = search.getBestCell(cells);
+                    if (best < 0){
+                        depth--;    //the next call tries the next value a level up
+                        return search.toBoard(cells);
+                    }
+                    context.tick(depth);
+                    branches[depth] = best;
+                    options[depth] = cells[best];
+                }
+                else {
+                    context.backtrack();    //back from the level below the guess
+                }
+                if (levels[depth + 1] == null){
+                    levels[depth + 1] = new long[cells.length];
+                }
+                final long[] next = levels[depth + 1];
+                boolean placed = false;
+                while (options[depth] != 0 && !placed){
+                    final long bit = options[depth] & -options[depth];
+                    options[depth] ^= bit;
+                    System.arraycopy(cells, 0, next, 0, cells.length);
+                    placed = search.guess(next, branches[depth], bit);
+                }
+                if (placed){
+                    depth++;
+                    entering = true;
+                }
+                else {
+                    depth--;
+                }
+            }
+            return null;
+        }
+    }
+
+
+    /**
+     * Counts the solutions to the board, but stops searching as soon as the
+     * limit is reached. Solutions are only counted, never built.
+     *
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the number of solutions, at most limit
+     */
+    @Override
+    public int countSolutions(SudokuBoard board, int limit){
+        return new BitboardSearch(board, null, context()).count(limit);
+    }
+
+
+    /**
+     * Returns true if the board has a solution other than the known one in
+     * which the cell holds a different value. The known value is removed
+     * from the cell's candidates before the search starts.
+     *
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
+     */
+    @Override
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, int cell){
+        return new BitboardSearch(board, null, context()).hasSolutionWithout(cell, knownSolution.getCell(cell));
+    }
+}
@@ -0,0 +1,132 @@
+package sudoku.bitboard;
+
+import java.util.concurrent.ForkJoinPool;
+import sudoku.SudokuBoard;
+
+/**
+ * The bitboard solver, but with one search spread over every core. The top
+ * of the search tree is split into tasks for a fork/join pool, and the whole
+ * search stops as soon as the answer is known, say when a second solution
+ * turns up in any of the tasks. Worth it for the hard questions on the big
+ * boards; an easy 9x9 is over before the tasks are handed out.
+ *
+ * Listing every solution is left to the plain bitboard search.
+ *
+ * Solvers made without a pool all search in one shared pool of every core.
+ * Its threads are daemons, so it never has to be shut down.
+ *
+ * @author Taras Mychaskiw
+ */
+public class ParallelBitboardSolver extends BitboardSolver {
+
+    /**
+     * the pool shared by the solvers made without one, made the first time
+     * it is needed
+     */
+    private static class SharedPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool();
+    }
+
+    private final ForkJoinPool pool;
+    private final int splitDepth;
+    private final boolean owned;    //the pool was made for this solver alone
+
+    /**
+     * Makes a solver using every core, in the shared pool.
+     */
+    public ParallelBitboardSolver(){
+        this(SharedPool.INSTANCE, defaultSplitDepth(SharedPool.INSTANCE.getParallelism()), false);
+    }
+
+    /**
+     * Makes a solver with a pool of its own, which shutdown() stops.
+     *
+     * @param parallelism how many threads to search with
+     */
+    public ParallelBitboardSolver(int parallelism){
+        this(new ForkJoinPool(parallelism), defaultSplitDepth(parallelism), true);
+    }
+
+    /**
+     * @param pool the pool to search in, the solver does not own it
+     * @param splitDepth how many levels of the search tree to split into tasks
+     */
+    public ParallelBitboardSolver(ForkJoinPool pool, int splitDepth){
+        this(pool, splitDepth, false);
+    }
+
+    private ParallelBitboardSolver(ForkJoinPool pool, int splitDepth, boolean owned){
+        this.pool = pool;
+        this.splitDepth = splitDepth;
+        this.owned = owned;
+    }
+
+    /**
+     * About eight tasks per thread, taking most guesses to have two options.
+     * Plenty of them die on the first propagation, and the rest vary a lot
+     * in size, so there have to be many more tasks than threads.
+     *
+     * @param parallelism how many threads will search
+     * @return how many levels of the search tree to split
+     */
+    static int defaultSplitDepth(int parallelism){
+        return Integer.SIZE - Integer.numberOfLeadingZeros(8 * parallelism - 1);
+    }
+
+    public ForkJoinPool getPool(){ return pool; }
+    public int getSplitDepth(){ return splitDepth; }
+
+    /**
+     * Tries to solve the sudoku board.
+     *
+     * @param board the board to solve
+     * @return a solved version of the board, or null if unsolvable
+     */
+    @Override
+    public SudokuBoard solve(SudokuBoard board){
+        final ParallelSearch search = new ParallelSearch(board, 1, splitDepth, context());
+        search.run(pool, -1, 0);
+        return search.getFirst();
+    }
+
+
+    /**
+     * Counts the solutions to the board, but stops searching as soon as the
+     * limit is reached. Solutions are only counted, never built.
+     *
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the number of solutions, at most limit
+     */
+    @Override
+    public int countSolutions(SudokuBoard board, int limit){
+        return new ParallelSearch(board, limit, splitDepth, context()).run(pool, -1, 0);
+    }
+
+
+    /**
+     * Returns true if the board has a solution other than the known one in
+     * which the cell holds a different value. The known value is removed
+     * from the cell's candidates before the search starts.
+     *
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
+     */
+    @Override
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, int cell){
+        return new ParallelSearch(board, 1, splitDepth, context()).run(pool, cell, knownSolution.getCell(cell)) > 0;
+    }
+
+    /**
+     * Stops the threads of the pool, once the searches running finish. Only
+     * a pool made for this solver is stopped, the shared pool and one given
+     * to the solver are left running.
+     */
+    public void shutdown(){
+        if (owned){
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package sudoku.bitboard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import sudoku.SearchContext;
+import sudoku.SudokuBoard;
+
+/**
+ * One search over one board, spread over a fork/join pool. The top levels of
+ * the search tree are split into a task per guess, and below the split depth
+ * each task searches its part of the tree alone with a BitboardSearch. Idle
+ * workers steal the tasks that are left.
+ *
+ * Solutions are counted here for every task. As soon as the limit is reached
+ * the search is done, and every task still running sees that at its next node
+ * and unwinds, so a second solution found anywhere stops the whole search.
+ * The tasks tick a fork of the caller's SearchContext, so its limits hold
+ * for the whole search too, and its stats count the work of every task.
+ *
+ * @author Taras Mychaskiw
+ */
+class ParallelSearch {
+
+    private final SudokuBoard board;        //the board being solved
+    private final int limit;                //stop after this many solutions
+    private final int splitDepth;           //guesses made before tasks stop splitting
+    private final SearchContext context;    //of the thread that asked
+    private final AtomicInteger found = new AtomicInteger();
+    private volatile boolean done;          //limit reached, or the caller gave up
+    private volatile SudokuBoard first;     //the first solution found
+
+    /**
+     * @param board the board to search
+     * @param limit the most solutions to find before stopping
+     * @param splitDepth how many levels of the search tree to split into tasks
+     * @param context the context of the thread that asked, flushed once the
+     * search is over
+     */
+    ParallelSearch(SudokuBoard board, int limit, int splitDepth, SearchContext context){
+        if (limit < 1){
+            throw new IllegalArgumentException("limit must be at least 1, not " + limit);
+        }
+        this.board = board;
+        this.limit = limit;
+        this.splitDepth = splitDepth;
+        this.context = context;
+    }
+
+    /**
+     * Runs the search in the pool, and waits for it to finish.
+     *
+     * @param pool the pool to search in
+     * @param excludedCell cell to treat as empty, or -1 for none
+     * @param excludedValue the value that cell must not take
+     * @return the number of solutions found, at most the limit
+     * @throws CancellationException if the thread is interrupted while waiting
+     */
+    int run(ForkJoinPool pool, int excludedCell, int excludedValue){
+        final BitboardSearch root = new BitboardSearch(board, this, context);
+        if (excludedCell >= 0){
+            root.exclude(excludedCell, excludedValue);
+        }
+        final long[] cells = new long[board.getNumCells()];
+        try {
+            if (!root.load(cells)){
+                return 0;
+            }
+            final ForkJoinTask<Void> task = pool.submit(new Task(cells, 0));
+            task.get();
+        } catch (InterruptedException ex){
+            done = true;    //the tasks still running stop at their next node
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the search");
+        } catch (ExecutionException ex){
+            done = true;    //stopped by the context, or broken
+            if (ex.getCause() instanceof RuntimeException){
+                throw (RuntimeException)ex.getCause();
+            }
+            throw new IllegalStateException("parallel search failed", ex.getCause());
+        } finally {
+            context.flush();
+        }
+        return Math.min(found.get(), limit);
+    }
+
+    /**
+     * @return the first solution found, or null if there was none
+     */
+    SudokuBoard getFirst(){
+        return first;
+    }
+
+    /**
+     * @return true if the search can stop
+     */
+    boolean isDone(){
+        return done;
+    }
+
+    /**
+     * Records a solution found by one of the tasks.
+     *
+     * @param search the search of the task that found it
+     * @param cells the candidates, one per cell, all decided
+     * @return true if enough solutions have been found to stop
+     */
+    boolean addSolution(BitboardSearch search, long[] cells){
+        final int count = found.incrementAndGet();
+        if (count == 1){
+            first = search.toBoard(cells);
+        }
+        if (count >= limit){
+            done = true;
+        }
+        return done;
+    }
+
+    /**
+     * The part of the search tree below some guesses.
+     */
+    private class Task extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] cells;     //candidates after the guesses, propagated
+        private final int depth;        //how many guesses have been made
+
+        Task(long[] cells, int depth){
+            this.cells = cells;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute(){
+            if (done){
+                return;
+            }
+            final SearchContext fork = context.fork();
+            final BitboardSearch search = new BitboardSearch(board, ParallelSearch.this, fork);
+            if (depth >= splitDepth){
+                try {
+                    search.searchFrom(cells, depth);
+                } finally {
+                    fork.flush();
+                }
+                return;
+            }
+            final int best = search.getBestCell(cells);
+            if (best < 0){
+                addSolution(search, cells);
+                return;
+            }
+            //one task per candidate of the most constrained cell
+            final List<Task> tasks = new ArrayList<>();
+            long options = cells[best];
+            try {
+                fork.tick(depth);
+                while (options != 0){
+                    final long bit = options & -options;
+                    options ^= bit;
+                    final long[] next = cells.clone();
+                    if (search.guess(next, best, bit)){
+                        tasks.add(new Task(next, depth + 1));
+                    }
+                }
+            } finally {
+                fork.flush();   //the guesses, before the tasks they made run
+            }
+            invokeAll(tasks);
+            if (!done){
+                for (int i = 0; i < tasks.size(); i++){
+                    fork.backtrack();   //searched below every guess, and none stopped the search
+                }
+                fork.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package sudoku.clp;
+
+import java.util.Arrays;
+import sudoku.BoardGeometry;
+
+/**
+ * Regin's filter for the all-different constraint of every unit. The cells
+ * of a unit and its values form a bipartite graph, and every solution of the
+ * unit is a perfect matching in it. A candidate is kept only if it is in some
+ * perfect matching: having found one matching, a candidate outside it is
+ * used by another one exactly when its cell and value lie in the same
+ * strongly connected component once the matched edges point from value to
+ * cell and the rest from cell to value.
+ *
+ * This finds every naked and hidden subset of any size in one go, which is
+ * what the big boards need. Only the units marked dirty on the board are
+ * filtered, so after a guess only the units it touched are looked at again.
+ *
+ * The propagator is shared by every solver of its level, so the graph it
+ * works in is kept per thread, and reused for every unit of every search
+ * on boards of one size.
+ *
+ * @author Taras Mychaskiw
+ */
+class AllDifferentPropagator implements Propagator {
+
+    private static final ThreadLocal<Graph> graphs = new ThreadLocal<>();   //of the last size used
+
+    @Override
+    public boolean propagate(CLPBoard board){
+        if (!board.isSingleWord()){
+            return true;
+        }
+        final int n = board.getGeometry().getSize();
+        Graph graph = graphs.get();
+        if (graph == null || graph.n != n){
+            graph = new Graph(n);
+            graphs.set(graph);
+        }
+        for (int unit = board.takeDirtyUnit(); unit >= 0; unit = board.takeDirtyUnit()){
+            if (!graph.filter(board, unit)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The graph of one unit at a time, with room for the matching and the
+     * component search. Nodes 0..n-1 are the cells of the unit in order, and
+     * nodes n..2n-1 are the values 1..n.
+     */
+    private static class Graph {
+        private final int n;
+        private final int[] cells;          //board cell of each unit cell
+        private final long[] domain;        //candidates of each unit cell
+        private final int[] cellOf;         //unit cell matched to each value - 1, or -1
+        private final int[] valueOf;        //value - 1 matched to each unit cell, or -1
+        private long seen;                  //values visited by the current augmenting path
+
+        //tarjan's strongly connected components
+        private final int[] index, low, component, stack;
+        private final boolean[] onStack;
+        private int counter, top, numComponents;
+
+        Graph(int n){
+            this.n = n;
+            cells = new int[n];
+            domain = new long[n];
+            cellOf = new int[n];
+            valueOf = new int[n];
+            index = new int[2*n];
+            low = new int[2*n];
+            component = new int[2*n];
+            stack = new int[2*n];
+            onStack = new boolean[2*n];
+        }
+
+        /**
+         * Removes every candidate of the unit which is in no perfect matching.
+         *
+         * @param board the board
+         * @param unit the unit to filter
+         * @return false if the unit has no perfect matching at all
+         */
+        boolean filter(CLPBoard board, int unit){
+            final BoardGeometry geometry = board.getGeometry();
+            boolean open = false;
+            for (int i = 0; i < n; i++){
+                cells[i] = geometry.getUnitCell(unit, i);
+                domain[i] = board.getMask(cells[i]);
+                open |= (domain[i] & (domain[i] - 1)) != 0;
+            }
+            if (!open){
+                return true;    //every cell decided, the singles have done it all
+            }
+            if (!match()){
+                return false;
+            }
+            components();
+            for (int i = 0; i < n; i++){
+                long mask = domain[i] & ~(1L << valueOf[i]);
+                long remove = 0;
+                while (mask != 0){
+                    final long bit = mask & -mask;
+                    mask ^= bit;
+                    if (component[i] != component[n + Long.numberOfTrailingZeros(bit)]){
+                        remove |= bit;
+                    }
+                }
+                if (remove != 0 && !board.eliminateAll(cells[i], remove)){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Finds a perfect matching of cells to values, with augmenting paths.
+         *
+         * @return false if there is none
+         */
+        private boolean match(){
+            Arrays.fill(cellOf, -1);
+            Arrays.fill(valueOf, -1);
+            for (int i = 0; i < n; i++){
+                //the easy way first: a free value in the cell's domain
+                long free = domain[i];
+                while (free != 0){
+                    final long bit = free & -free;
+                    free ^= bit;
+                    final int value = Long.numberOfTrailingZeros(bit);
+                    if (cellOf[value] < 0){
+                        cellOf[value] = i;
+                        valueOf[i] = value;
+                        break;
+                    }
+                }
+            }
+            for (int i = 0; i < n; i++){
+                if (valueOf[i] < 0){
+                    seen = 0;
+                    if (!augment(i)){
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Looks for an augmenting path from the cell.
+         *
+         * @param cell the unmatched unit cell
+         * @return true if the cell was matched
+         */
+        private boolean augment(int cell){
+            long options = domain[cell] & ~seen;
+            while (options != 0){
+                final long bit = options & -options;
+                options ^= bit;
+                seen |= bit;
+                final int value = Long.numberOfTrailingZeros(bit);
+                if (cellOf[value] < 0 || augment(cellOf[value])){
+                    cellOf[value] = cell;
+                    valueOf[cell] = value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Labels the strongly connected components of the graph.
+         */
+        private void components(){
+            Arrays.fill(index, -1);
+            counter = 0;
+            top = 0;
+            numComponents = 0;
+            for (int node = 0; node < 2*n; node++){
+                if (index[node] < 0){
+                    connect(node);
+                }
+            }
+        }
+
+        /**
+         * Tarjan's search from the node.
+         *
+         * @param node the node to start from
+         */
+        private void connect(int node){
+            index[node] = low[node] = counter++;
+            stack[top++] = node;
+            onStack[node] = true;
+            if (node < n){
+                //a cell points at every value it is not matched to
+                long next = domain[node] & ~(1L << valueOf[node]);
+                while (next != 0){
+                    final long bit = next & -next;
+                    next ^= bit;
+                    visit(node, n + Long.numberOfTrailingZeros(bit));
+                }
+            }
+            else {
+                //a value points at the cell it is matched to
+                visit(node, cellOf[node - n]);
+            }
+            if (low[node] == index[node]){
+                int other;
+                do {
+                    other = stack[--top];
+                    onStack[other] = false;
+                    component[other] = numComponents;
+                } while (other != node);
+                numComponents++;
+            }
+        }
+
+        /**
+         * Follows one edge of the search.
+         */
+        private void visit(int from, int to){
+            if (index[to] < 0){
+                connect(to);
+                low[from] = Math.min(low[from], low[to]);
+            }
+            else if (onStack[to]){
+                low[from] = Math.min(low[from], index[to]);
+            }
+        }
+    }
+}
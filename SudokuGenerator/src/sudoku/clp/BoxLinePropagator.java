@@ -0,0 +1,46 @@
+package sudoku.clp;
+
+import sudoku.BoardGeometry;
+
+/**
+ * Box/line reduction. If every place a value can go in a row (or column) is
+ * inside the same box, the value must go on that row inside the box, so it
+ * can be removed from the rest of the box.
+ *
+ * @author Taras Mychaskiw
+ */
+class BoxLinePropagator implements Propagator {
+
+    @Override
+    public boolean propagate(CLPBoard board){
+        if (!board.isSingleWord()){
+            return true;
+        }
+        final BoardGeometry geometry = board.getGeometry();
+        final int n = geometry.getSize();
+        for (int line = 0; line < BoardGeometry.BOX * n; line++){
+            final int kind = line / n;      //COLUMN or ROW
+            for (int value = 1; value <= n; value++){
+                final long bit = 1L << (value - 1);
+                int box = -1, count = 0;
+                for (int i = 0; i < n; i++){
+                    final int cell = geometry.getUnitCell(line, i);
+                    if ((board.getMask(cell) & bit) != 0){
+                        box = count == 0 || box == geometry.getBoxUnit(cell) ? geometry.getBoxUnit(cell) : -2;
+                        count++;
+                    }
+                }
+                if (count < 2 || box < 0){
+                    continue;
+                }
+                for (int i = 0; i < n; i++){
+                    final int cell = geometry.getUnitCell(box, i);
+                    if (geometry.getUnit(cell, kind) != line && !board.eliminate(cell, value)){
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
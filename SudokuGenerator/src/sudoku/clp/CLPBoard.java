@@ -1,9 +1,9 @@
 package sudoku.clp;
 
+import java.util.Arrays;
+import sudoku.BoardGeometry;
 import sudoku.CandidateSet;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import sudoku.SearchContext;
 import sudoku.SudokuBoard;
 
 /**
@@ -13,36 +13,102 @@ import sudoku.SudokuBoard;
  * values to a cell, the major action is instead to eliminate a possible
  * candidate for a cell.
  *
+ * The candidates of every cell are kept in one flat array, laid out the same
+ * way as a CandidateSet, so copying the board is a single array copy.
+ *
+ * Searches do not need to copy the board at all though. Every candidate
+ * eliminated is pushed onto a trail, so a search takes a checkpoint before
+ * trying a value and rolls back to it after. Branching only costs the
+ * eliminations actually made.
+ *
+ * For every unit and value, the number of places in the unit the value can
+ * still go is kept up to date as candidates are eliminated and put back, so
+ * hidden singles and values with nowhere left to go are seen at once.
+ * Every unit which loses a candidate is also marked dirty, for propagators
+ * which only want to look at the units that changed.
+ *
  * @author Taras Mychaskiw
  */
 class CLPBoard {
 
-    private final List<CandidateSet> values;
-    private final SudokuBoard board;  //treat as immutable
+    private final long[] values;        //words longs of candidates per cell
+    private final int words;
+    private final int n;
+    private final int[] places;         //places left for value v in unit u, at u*n + v-1
+    private final long[] dirty;         //bit per unit which lost a candidate
+    private final SudokuBoard board;    //treat as immutable
+    private final BoardGeometry geometry;
+    private boolean consistent = true;  //false if the givens contradict
+
+    private int[] trailWord = new int[64];      //index into values of each removal
+    private long[] trailMask = new long[64];    //the bit removed there
+    private int trailSize;
+    private long eliminations;                  //candidates removed, ever, to see propagation change things
+    private final SearchContext context;        //ticked for every cell branched on
 
     CLPBoard(SudokuBoard board){
+        this(board, SearchContext.current());
+    }
+
+    /**
+     * @param board the board to search
+     * @param context the context of the search, which also counts what is
+     * assigned, eliminated and rolled back
+     */
+    CLPBoard(SudokuBoard board, SearchContext context){
         this.board = board;
-        values = new ArrayList<>(board.getNumCells());
-        for (int i = 0; i < board.getNumCells(); i++){
-            values.add(new CandidateSet(board.getSize()));
-        }
+        this.geometry = board.getGeometry();
+        this.words = CandidateSet.numWords(board.getSize());
+        this.n = board.getSize();
+        this.context = context;
+        values = new long[board.getNumCells() * words];
         for (int cell = 0; cell < board.getNumCells(); cell++){
+            CandidateSet.fill(values, cell * words, n);
+        }
+        places = new int[geometry.getNumUnits() * n];
+        Arrays.fill(places, n);
+        dirty = new long[(geometry.getNumUnits() + 63) >>> 6];
+        for (int cell = 0; cell < board.getNumCells() && consistent; cell++){
             if (board.isSet(cell)){
-                assign(cell, board.getCell(cell));
+                consistent = assign(cell, board.getCell(cell));
             }
         }
+        trailSize = 0;  //the givens are never rolled back
     }
 
     CLPBoard(CLPBoard other){
         this.board = other.board;
-        values = new ArrayList<>(board.getNumCells());
-        for (int i = 0; i < board.getNumCells(); i++){
-            values.add(new CandidateSet(other.getCandidateSet(i)));
-        }
+        this.geometry = other.geometry;
+        this.words = other.words;
+        this.n = other.n;
+        this.context = other.context;
+        this.values = other.values.clone();
+        this.places = other.places.clone();
+        this.dirty = other.dirty.clone();
+        this.consistent = other.consistent;
     }
 
-    CandidateSet getCandidateSet(int cell){ return values.get(cell); }
+    CandidateSet getCandidateSet(int cell){ return new CandidateSet(board.getSize(), values, cell * words); }
     SudokuBoard getBoard(){ return board; }
+    BoardGeometry getGeometry(){ return geometry; }
+    long getEliminations(){ return eliminations; }
+    SearchContext getContext(){ return context; }
+    void addNode(int depth){ context.tick(depth); }
+    void addBacktrack(){ context.backtrack(); }
+    boolean isSingleWord(){ return words == 1; }
+    boolean isConsistent(){ return consistent; }
+
+    boolean has(int cell, int value){ return CandidateSet.has(values, cell * words, value); }
+    int cardinality(int cell){ return CandidateSet.cardinality(values, cell * words, words); }
+    int nextCandidate(int cell, int value){ return CandidateSet.nextCandidate(values, cell * words, words, value); }
+    int getLowestValue(int cell){ return nextCandidate(cell, 0); }
+
+    /**
+     * @param cell the cell index
+     * @return the candidates of the cell, bit (value - 1) on for each one;
+     * only meaningful if isSingleWord()
+     */
+    long getMask(int cell){ return values[cell]; }
 
 
     /**
@@ -54,7 +120,7 @@ class CLPBoard {
      * @return true if it was possible to assign the value
      */
     boolean assign(int cell, int valToAssign){
-        for (Integer value : values.get(cell)){
+        for (int value = nextCandidate(cell, 0); value != -1; value = nextCandidate(cell, value)){
             if (value != valToAssign && !eliminate(cell, value)){
                 return false;
             }
@@ -72,19 +138,21 @@ class CLPBoard {
      * @return true if it was possible to remove the candidate from the cell
      */
     boolean eliminate(int cell, int valToRemove){
-        if (!values.get(cell).has(valToRemove)){
+        if (!has(cell, valToRemove)){
             return true;
         }
 
-        values.get(cell).remove(valToRemove);   //remove the candidate
-        if (values.get(cell).cardinality() == 0){
+        remove(cell, valToRemove);
+        final int remaining = cardinality(cell);
+        if (remaining == 0){
             return false;   //removed last candidate
         }
-        else if (values.get(cell).cardinality() == 1){
+        else if (remaining == 1){
             //only one possibilty left, remove the value from this cell's peers
-            final int value = values.get(cell).getLowestValue();
-            for (int peer : board.getPeers(cell)){
-                if (!eliminate(peer, value)){
+            context.assign(1);
+            final int value = getLowestValue(cell);
+            for (int i = 0; i < geometry.getNumPeers(); i++){
+                if (!eliminate(geometry.getPeer(cell, i), value)){
                     return false;   //failed to eliminate value from a peer
                 }
             }
@@ -94,21 +162,22 @@ class CLPBoard {
          * check units: if any unit is reduced to one place for a value, assign
          * that value there. if there is nowhere else to put the value, fail
          */
-        for (List<Integer> unit : board.getUnits(cell)){
-            final LinkedList<Integer> valuePlaces = new LinkedList<>();
-            for (Integer spot : unit){
-                if (values.get(spot).has(valToRemove)){
-                    valuePlaces.add(spot);
-                }
-            }
-
-            if (valuePlaces.isEmpty()){
+        for (int kind = 0; kind < BoardGeometry.UNITS_PER_CELL; kind++){
+            final int unit = geometry.getUnit(cell, kind);
+            final int left = places[unit*n + valToRemove - 1];
+            if (left == 0){
                 return false;   //nowhere for the value to be
             }
-            else if (valuePlaces.size() == 1){
-                //the value can only be in one place, assign it there
-                if (!assign(valuePlaces.getFirst().intValue(), valToRemove)){
-                    return false;   //failed to assign
+            else if (left == 1){
+                //the value can only be in one place, find it and assign it there
+                for (int i = 0; i < n; i++){
+                    final int spot = geometry.getUnitCell(unit, i);
+                    if (has(spot, valToRemove)){
+                        if (!assign(spot, valToRemove)){
+                            return false;   //failed to assign
+                        }
+                        break;
+                    }
                 }
             }
         }
@@ -116,6 +185,106 @@ class CLPBoard {
     }
 
 
+    /**
+     * Eliminates every candidate in the mask from the cell. Only for boards
+     * where isSingleWord().
+     *
+     * @param cell the cell to eliminate candidates from
+     * @param mask the candidates to eliminate, bit (value - 1) for each
+     * @return true if it was possible to remove all the candidates
+     */
+    boolean eliminateAll(int cell, long mask){
+        while (mask != 0){
+            final long bit = mask & -mask;
+            mask ^= bit;
+            if (!eliminate(cell, Long.numberOfTrailingZeros(bit) + 1)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes a candidate, counts one less place for the value in each unit
+     * of the cell, and remembers the removal on the trail.
+     *
+     * @param cell the cell to remove the candidate from
+     * @param value the candidate, which the cell must have
+     */
+    private void remove(int cell, int value){
+        final int word = cell*words + ((value - 1) >>> 6);
+        final long bit = 1L << (value - 1);
+        if (trailSize == trailWord.length){
+            trailWord = Arrays.copyOf(trailWord, trailSize * 2);
+            trailMask = Arrays.copyOf(trailMask, trailSize * 2);
+        }
+        trailWord[trailSize] = word;
+        trailMask[trailSize++] = bit;
+        values[word] &= ~bit;
+        countPlaces(cell, value, -1);
+        eliminations++;
+        context.eliminate(1);
+    }
+
+    /**
+     * @param cell the cell a candidate was removed from or put back in
+     * @param value the candidate
+     * @param change -1 if removed, 1 if put back
+     */
+    private void countPlaces(int cell, int value, int change){
+        for (int kind = 0; kind < BoardGeometry.UNITS_PER_CELL; kind++){
+            final int unit = geometry.getUnit(cell, kind);
+            places[unit*n + value - 1] += change;
+            if (change < 0){
+                dirty[unit >>> 6] |= 1L << unit;
+            }
+        }
+    }
+
+    /**
+     * Takes a unit which has lost candidates since it was last taken. A unit
+     * is marked again as soon as it loses another candidate. Rolling back
+     * neither marks nor clears units, so a unit may be taken when it is
+     * already back the way it was.
+     *
+     * @return the unit, or -1 if no unit has changed
+     */
+    int takeDirtyUnit(){
+        for (int i = 0; i < dirty.length; i++){
+            if (dirty[i] != 0){
+                final long bit = dirty[i] & -dirty[i];
+                dirty[i] ^= bit;
+                return (i << 6) + Long.numberOfTrailingZeros(bit);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a mark to roll back to, undoing everything eliminated after
+     */
+    int checkpoint(){
+        return trailSize;
+    }
+
+    /**
+     * Puts back every candidate eliminated since the checkpoint was taken,
+     * newest first. Checkpoints taken after this one are no longer valid.
+     *
+     * @param mark the checkpoint to go back to
+     */
+    void rollback(int mark){
+        while (trailSize > mark){
+            trailSize--;
+            final int word = trailWord[trailSize];
+            final long bit = trailMask[trailSize];
+            values[word] |= bit;
+            final int cell = word / words;
+            countPlaces(cell, ((word - cell*words) << 6) + Long.numberOfTrailingZeros(bit) + 1, 1);
+        }
+    }
+
+
     /**
      * Returns the cell which is most constrained, or -1 if the board is solved.
      * The most constrained cell is the one with the fewest number of possible
@@ -126,7 +295,7 @@ class CLPBoard {
     int getConstrainedCell(){
         int cell = -1, min = Integer.MAX_VALUE;
         for (int i = 0; i < board.getNumCells(); i++){
-            int size = values.get(i).cardinality();
+            int size = cardinality(i);
             if (size > 1 && size < min){
                 min = size;
                 cell = i;
@@ -146,7 +315,7 @@ class CLPBoard {
     SudokuBoard getSolvedBoard(){
         SudokuBoard brd = new SudokuBoard(this.board);
         for (int cell = 0; cell < brd.getNumCells(); cell++){
-            brd.setCell(cell, values.get(cell).getLowestValue());
+            brd.setCell(cell, getLowestValue(cell));
         }
         return brd;
     }
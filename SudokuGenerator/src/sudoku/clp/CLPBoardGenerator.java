@@ -1,6 +1,5 @@
 package sudoku.clp;
 
-import sudoku.CandidateSet;
 import java.util.ArrayList;
 import java.util.List;
 import sudoku.SudokuBoard;
@@ -14,14 +13,12 @@ import sudoku.SudokuBoard;
  */
 public class CLPBoardGenerator extends CLPBoard {
 
+    private static final ConstraintSolver solver = new ConstraintSolver();
+
     private CLPBoardGenerator(SudokuBoard board){
         super(board);
     }
 
-    CLPBoardGenerator(CLPBoard other){
-        super(other);
-    }
-
     /**
      * Returns the cell which is most constrained, or -1 if the board is solved.
      * The most constrained cell is the one with the fewest number of possible
@@ -35,7 +32,7 @@ public class CLPBoardGenerator extends CLPBoard {
         final List<Integer> cells = new ArrayList<>(getBoard().getNumCells());
         int min = Integer.MAX_VALUE;
         for (int i = 0; i < getBoard().getNumCells(); i++){
-            int size = getCandidateSet(i).cardinality();
+            int size = cardinality(i);
             if (size > 1 && size < min){
                 min = size;
                 cells.clear();
@@ -72,37 +69,9 @@ public class CLPBoardGenerator extends CLPBoard {
      */
     public static SudokuBoard getRandomBoard(SudokuBoard board){
         CLPBoard conBoard = new CLPBoardGenerator(board);
-        conBoard = solve(conBoard);
-        if (conBoard != null){
+        if (conBoard.isConsistent() && solver.solve(conBoard)){
             return conBoard.getSolvedBoard();
         }
         return null;
     }
-
-
-    /**
-     * Performs the actual backtrack search.
-     *
-     * @param sudoku the board to search on
-     * @return the update values if successful, null otherwise
-     * @see ConstraintSolver.solve(CLPBoard)
-     */
-    private static CLPBoard solve(CLPBoard sudoku){
-        int cell = sudoku.getConstrainedCell();
-        if (cell < 0){
-            return sudoku;   //board is solved
-        }
-
-        final CandidateSet set = sudoku.getCandidateSet(cell);
-        for (Integer value : set){
-            final CLPBoard copy = new CLPBoardGenerator(sudoku);
-            if (copy.assign(cell, value)){
-                final CLPBoard board = solve(copy);
-                if (board != null){
-                    return board;
-                }
-            }
-        }
-        return null;
-    }
 }
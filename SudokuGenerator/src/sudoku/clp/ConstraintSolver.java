@@ -1,19 +1,76 @@
 package sudoku.clp;
 
-import sudoku.CandidateSet;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import sudoku.AbstractSudokuSolver;
+import sudoku.SearchContext;
+import sudoku.SolutionIterator;
 import sudoku.SudokuBoard;
-import sudoku.SudokuSolver;
 
 /**
  * Uses constraint logic programming to solve the sudoku board.
  *
+ * Besides the singles the board always propagates, each solver runs the
+ * propagators of its PropagationLevel after every value it tries, until none
+ * of them can eliminate anything more.
+ *
  * @author Taras Mychaskiw
  */
-public class ConstraintSolver implements SudokuSolver {
+public class ConstraintSolver extends AbstractSudokuSolver {
+
+    private final PropagationLevel level;
+    private final List<Propagator> propagators;
+
+    /**
+     * Makes a solver which only propagates singles.
+     */
+    public ConstraintSolver(){
+        this(PropagationLevel.SINGLES);
+    }
+
+    /**
+     * @param level how much to propagate before guessing
+     */
+    public ConstraintSolver(PropagationLevel level){
+        this.level = level;
+        this.propagators = level.getPropagators();
+    }
+
+    public PropagationLevel getLevel(){ return level; }
+
+    /**
+     * Runs every propagator until none of them eliminates anything. After
+     * one does, the cheaper ones before it get another go.
+     *
+     * @param sudoku the board to propagate on
+     * @return false if the board was found to have no solution
+     */
+    private boolean propagate(CLPBoard sudoku){
+        boolean changed = !propagators.isEmpty();
+        while (changed){
+            final long before = sudoku.getEliminations();
+            changed = false;
+            for (int i = 0; i < propagators.size() && !changed; i++){
+                if (!propagators.get(i).propagate(sudoku)){
+                    return false;
+                }
+                changed = sudoku.getEliminations() != before;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tries a value in a cell.
+     *
+     * @param sudoku the board to search on
+     * @param cell the cell to fill
+     * @param value the value to try
+     * @return false if the value can not go there
+     */
+    private boolean tryValue(CLPBoard sudoku, int cell, int value){
+        return sudoku.assign(cell, value) && propagate(sudoku);
+    }
 
     /**
      * Tries to solve the sudoku board.
@@ -23,138 +80,212 @@ public class ConstraintSolver implements SudokuSolver {
      */
     @Override
     public SudokuBoard solve(SudokuBoard board){
-        CLPBoard conBoard = new CLPBoard(board);
-        conBoard = solve(conBoard);
-        if (conBoard != null){
-            return conBoard.getSolvedBoard();
+        CLPBoard conBoard = new CLPBoard(board, context());
+        try {
+            if (conBoard.isConsistent() && propagate(conBoard) && solve(conBoard, 0)){
+                return conBoard.getSolvedBoard();
+            }
+            return null;
+        } finally {
+            conBoard.getContext().flush();
         }
-        return null;
     }
 
     /**
-     * Performs the actual backtrack search.
+     * Performs the actual backtrack search. Every value tried is rolled back
+     * if it fails, so on success the board is left solved.
      *
      * @param sudoku the board to search on
-     * @return the update values if successful, null otherwise
+     * @return true if the board was solved
      */
-    private CLPBoard solve(CLPBoard sudoku){
+    boolean solve(CLPBoard sudoku){
+        return solve(sudoku, 0);
+    }
+
+    /**
+     * @param depth the guesses made on the way to this level
+     */
+    private boolean solve(CLPBoard sudoku, int depth){
         int cell = sudoku.getConstrainedCell();
         if (cell < 0){
-            return sudoku;   //board is solved
+            return true;    //board is solved
         }
 
-        final CandidateSet set = sudoku.getCandidateSet(cell);
-        for (Integer value : set){
-            final CLPBoard copy = new CLPBoard(sudoku);
-            if (copy.assign(cell, value)){
-                final CLPBoard board = solve(copy);
-                if (board != null){
-                    return board;
+        sudoku.addNode(depth);
+        for (int value = sudoku.nextCandidate(cell, 0); value != -1; value = sudoku.nextCandidate(cell, value)){
+            final int mark = sudoku.checkpoint();
+            if (tryValue(sudoku, cell, value)){
+                if (solve(sudoku, depth + 1)){
+                    return true;
                 }
+                sudoku.addBacktrack();
             }
+            sudoku.rollback(mark);
         }
-        return null;
+        return false;
     }
 
 
     /**
-     * Returns a list of all solutions to the board given.
+     * Returns the solutions to the board one at a time. The work of the
+     * search is added to the solver's totals once every solution is found.
      *
      * @param board the board to solve
-     * @return the list of all solutions to the board
+     * @return the solutions to the board, in the order the search finds them
      */
     @Override
-    public List<SudokuBoard> enumerate(SudokuBoard board){
-        List<SudokuBoard> list = new LinkedList<>();
-        fill(new CLPBoard(board), list);
-        return list;
+    public Iterator<SudokuBoard> solutions(SudokuBoard board){
+        return new Solutions(board, context());
     }
 
     /**
-     * Populates the list with solutions to the board. Basically just solves
-     * the sudoku over and over again, keeping the solutions.
-     *
-     * @param sudoku the board to solve
-     * @param list where to store the solutions
+     * The backtrack search, with the recursion unrolled. Each level keeps the
+     * cell it branches on, the value being tried there and the checkpoint to
+     * roll back to before trying the next one.
      */
-    private void fill(CLPBoard sudoku, List<SudokuBoard> list){
-        int cell = sudoku.getConstrainedCell();
-        if (cell < 0){
-            list.add(sudoku.getSolvedBoard());
-            return; //board is solved
+    private class Solutions extends SolutionIterator {
+        private final CLPBoard sudoku;
+        private final int[] cells, values, marks;   //one of each per level
+        private int depth;                          //-1 when done
+        private boolean entering = true;            //false when back from a deeper level
+
+        Solutions(SudokuBoard board, SearchContext context){
+            super(context);
+            sudoku = new CLPBoard(board, context);
+            final int levels = board.getNumCells() + 1;
+            cells = new int[levels];
+            values = new int[levels];
+            marks = new int[levels];
+            depth = sudoku.isConsistent() && propagate(sudoku) ? 0 : -1;
         }
 
-        final CandidateSet set = sudoku.getCandidateSet(cell);
-        for (Integer value : set){
-            final CLPBoard copy = new CLPBoard(sudoku);
-            if (copy.assign(cell, value)){
-                fill(copy, list);
+        @Override
+        protected SudokuBoard advance(){
+            while (depth >= 0){
+                if (entering){
+                    entering = false;
+                    final int cell = sudoku.getConstrainedCell();
+                    if (cell < 0){
+                        depth--;    //the next call tries the next value a level up
+                        return sudoku.getSolvedBoard();
+                    }
+                    sudoku.addNode(depth);
+                    cells[depth] = cell;
+                    values[depth] = 0;
+                    marks[depth] = sudoku.checkpoint();
+                }
+                else {
+                    sudoku.addBacktrack();  //back from the level below the value
+                    sudoku.rollback(marks[depth]);
+                }
+                int value = sudoku.nextCandidate(cells[depth], values[depth]);
+                while (value != -1 && !tryValue(sudoku, cells[depth], value)){
+                    sudoku.rollback(marks[depth]);
+                    value = sudoku.nextCandidate(cells[depth], value);
+                }
+                if (value == -1){
+                    depth--;
+                }
+                else {
+                    values[depth] = value;
+                    depth++;
+                    entering = true;
+                }
             }
+            sudoku.getContext().flush();
+            return null;
         }
     }
 
 
     /**
-     * Returns true if the board is well formed, that is if the
-     * board only has one solution.
+     * Counts the solutions to the board, but stops searching as soon as the
+     * limit is reached. Solutions are only counted, never built.
      *
-     * @param board the board to test
-     * @return true if it only has one possible solution
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the number of solutions, at most limit
      */
     @Override
-    public boolean isWellFormed(SudokuBoard board){
-        Set<SudokuBoard> set = new HashSet<>();
-        return isWellFormed(new CLPBoard(board), set) && set.size() == 1;
+    public int countSolutions(SudokuBoard board, int limit){
+        CLPBoard conBoard = new CLPBoard(board, context());
+        try {
+            return conBoard.isConsistent() && propagate(conBoard) ? count(conBoard, 0, limit, null) : 0;
+        } finally {
+            conBoard.getContext().flush();
+        }
     }
 
     /**
      * Continually solves the sudoku until there are no more solutions or until
-     * a second solution was found. If a second solution is found, then an
-     * exception is thrown to immediately stop the process. I wish java had
-     * lazy evaluation. length(enumerations(board)) > 1; done
+     * the limit is reached. If a guide is given, the value the guide has in a
+     * cell is always tried first there.
      *
-     * @param sudoku the board to check for well formed
-     * @param soln the set to store the solutions in
-     * @return true if the sudoku board has only one solution
+     * @param sudoku the board to count solutions of
+     * @param depth the guesses made on the way to this level
+     * @param limit the most solutions still wanted
+     * @param guide a solved board to lean towards, or null
+     * @return the number of solutions found, at most limit
      */
-    private boolean isWellFormed(CLPBoard sudoku, Set<SudokuBoard> soln){
-        if (Thread.interrupted()){
-            throw new RuntimeException();
-            //return false;
-        }
+    private int count(CLPBoard sudoku, int depth, int limit, SudokuBoard guide){
         int cell = sudoku.getConstrainedCell();
         if (cell < 0){
-            return !soln.add(sudoku.getSolvedBoard()) || soln.size() <= 1;
+            return 1;   //board is solved
         }
 
-        final CandidateSet set = sudoku.getCandidateSet(cell);
-        for (Integer value : set){
-            final CLPBoard copy = new CLPBoard(sudoku);
-            if (copy.assign(cell, value) && !isWellFormed(copy, soln)){
-                return false;
+        sudoku.addNode(depth);
+        final int first = guide == null ? -1 : guide.getCell(cell);
+        int found = 0;
+        if (first > 0 && sudoku.has(cell, first)){
+            found += branch(sudoku, cell, first, depth, limit, guide);
+        }
+        for (int value = sudoku.nextCandidate(cell, 0); value != -1 && found < limit; value = sudoku.nextCandidate(cell, value)){
+            if (value != first){
+                found += branch(sudoku, cell, value, depth, limit - found, guide);
             }
         }
-        return true;
+        return found;
+    }
+
+    /**
+     * Counts the solutions with the value in the cell, then takes it back out.
+     *
+     * @return the number of solutions found, at most limit
+     */
+    private int branch(CLPBoard sudoku, int cell, int value, int depth, int limit, SudokuBoard guide){
+        final int mark = sudoku.checkpoint();
+        int found = 0;
+        if (tryValue(sudoku, cell, value)){
+            found = count(sudoku, depth + 1, limit, guide);
+            sudoku.addBacktrack();
+        }
+        sudoku.rollback(mark);
+        return found;
     }
 
 
     /**
-     * Returns the formity of the board sent.
+     * Returns true if the board has a solution other than the known one in
+     * which the cell holds a different value. The known value is eliminated
+     * from the cell before the search starts.
      *
-     * @param board the board to test
-     * @return 0 if no solutions, 1 if unique solution, -1 if multiple solutions
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
      */
     @Override
-    public int getFormity(SudokuBoard board){
-        Set<SudokuBoard> set = new HashSet<>();
-        if (isWellFormed(new CLPBoard(board), set)){
-            if (set.isEmpty()){
-                return NO_SOLUTIONS;
-            }
-            else if (set.size() == 1){
-                return UNIQUE_SOLUTION;
-            }
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, int cell){
+        if (board.isSet(cell)){
+            board = new SudokuBoard(board);
+            board.clearCell(cell);
+        }
+        CLPBoard conBoard = new CLPBoard(board, context());
+        try {
+            return conBoard.isConsistent() && conBoard.eliminate(cell, knownSolution.getCell(cell))
+                    && propagate(conBoard) && count(conBoard, 0, 1, knownSolution) > 0;
+        } finally {
+            conBoard.getContext().flush();
         }
-        return MULTIPLE_SOLUTIONS;
     }
 }
@@ -0,0 +1,108 @@
+package sudoku.clp;
+
+import sudoku.BoardGeometry;
+
+/**
+ * Hidden pairs, triples and so on. If some k values can only go in the same
+ * k cells of a unit, those cells must hold those values, so every other
+ * candidate of those cells can go.
+ *
+ * @author Taras Mychaskiw
+ */
+class HiddenSubsetPropagator implements Propagator {
+
+    private final int size;     //values in the subset
+
+    /**
+     * @param size how many values make up a subset, 2 for pairs
+     */
+    HiddenSubsetPropagator(int size){
+        this.size = size;
+    }
+
+    @Override
+    public boolean propagate(CLPBoard board){
+        if (!board.isSingleWord()){
+            return true;
+        }
+        final BoardGeometry geometry = board.getGeometry();
+        final int n = geometry.getSize();
+        final long[] places = new long[n + 1];  //bit i on if the ith cell of the unit can take the value
+        final int[] values = new int[n];        //values with few enough places to be in a subset
+        for (int unit = 0; unit < geometry.getNumUnits(); unit++){
+            for (int value = 1; value <= n; value++){
+                places[value] = 0;
+            }
+            for (int i = 0; i < n; i++){
+                long mask = board.getMask(geometry.getUnitCell(unit, i));
+                while (mask != 0){
+                    final long bit = mask & -mask;
+                    mask ^= bit;
+                    places[Long.numberOfTrailingZeros(bit) + 1] |= 1L << i;
+                }
+            }
+            int num = 0;
+            for (int value = 1; value <= n; value++){
+                final int count = Long.bitCount(places[value]);
+                if (count == 0){
+                    return false;   //nowhere for the value to go
+                }
+                if (count >= 2 && count <= size){
+                    values[num++] = value;
+                }
+            }
+            if (num >= size && !search(board, unit, places, values, num, 0, 0, 0L, 0L)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tries every way of choosing the rest of the subset.
+     *
+     * @param board the board
+     * @param unit the unit being looked at
+     * @param places the places in the unit of every value
+     * @param values the values which may be in a subset
+     * @param num how many values there are
+     * @param depth how many values are chosen
+     * @param start the first of the values which may still be chosen
+     * @param chosen the values chosen so far, bit (value - 1) for each
+     * @param union the places of the values chosen so far
+     * @return false if the board was found to have no solution
+     */
+    private boolean search(CLPBoard board, int unit, long[] places, int[] values, int num,
+            int depth, int start, long chosen, long union){
+        if (depth == size){
+            return Long.bitCount(union) != size || eliminate(board, unit, chosen, union);
+        }
+        for (int i = start; i <= num - (size - depth); i++){
+            final long next = union | places[values[i]];
+            if (Long.bitCount(next) <= size && !search(board, unit, places, values, num,
+                    depth + 1, i + 1, chosen | (1L << (values[i] - 1)), next)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes every other value from the cells of the subset.
+     *
+     * @return false if the board was found to have no solution
+     */
+    private boolean eliminate(CLPBoard board, int unit, long chosen, long positions){
+        final BoardGeometry geometry = board.getGeometry();
+        while (positions != 0){
+            final long bit = positions & -positions;
+            positions ^= bit;
+            final int cell = geometry.getUnitCell(unit, Long.numberOfTrailingZeros(bit));
+            final long others = board.getMask(cell) & ~chosen;
+            if (others != 0 && !board.eliminateAll(cell, others)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
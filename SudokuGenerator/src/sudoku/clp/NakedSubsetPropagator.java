@@ -0,0 +1,106 @@
+package sudoku.clp;
+
+import sudoku.BoardGeometry;
+
+/**
+ * Naked pairs, triples and so on. If some k cells of a unit have only k
+ * candidates between them, those k values must go in those k cells, so no
+ * other cell of the unit can take any of them.
+ *
+ * @author Taras Mychaskiw
+ */
+class NakedSubsetPropagator implements Propagator {
+
+    private final int size;     //cells in the subset
+
+    /**
+     * @param size how many cells make up a subset, 2 for pairs
+     */
+    NakedSubsetPropagator(int size){
+        this.size = size;
+    }
+
+    @Override
+    public boolean propagate(CLPBoard board){
+        if (!board.isSingleWord()){
+            return true;
+        }
+        final BoardGeometry geometry = board.getGeometry();
+        final int n = geometry.getSize();
+        final int[] cells = new int[n];         //cells small enough to be in a subset
+        final int[] chosen = new int[size];
+        for (int unit = 0; unit < geometry.getNumUnits(); unit++){
+            int num = 0;
+            for (int i = 0; i < n; i++){
+                final int cell = geometry.getUnitCell(unit, i);
+                final int count = board.cardinality(cell);
+                if (count >= 2 && count <= size){
+                    cells[num++] = cell;
+                }
+            }
+            if (num >= size && !search(board, unit, cells, num, chosen, 0, 0, 0L)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tries every way of choosing the rest of the subset.
+     *
+     * @param board the board
+     * @param unit the unit being looked at
+     * @param cells the cells which may be in a subset
+     * @param num how many cells there are
+     * @param chosen the cells chosen so far
+     * @param depth how many cells are chosen
+     * @param start the first of the cells which may still be chosen
+     * @param union the candidates of the cells chosen so far
+     * @return false if the board was found to have no solution
+     */
+    private boolean search(CLPBoard board, int unit, int[] cells, int num, int[] chosen,
+            int depth, int start, long union){
+        if (depth == size){
+            return Long.bitCount(union) != size || eliminate(board, unit, chosen, union);
+        }
+        for (int i = start; i <= num - (size - depth); i++){
+            final long next = union | board.getMask(cells[i]);
+            if (Long.bitCount(next) <= size){
+                chosen[depth] = cells[i];
+                if (!search(board, unit, cells, num, chosen, depth + 1, i + 1, next)){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the values of the subset from the rest of the unit.
+     *
+     * @return false if the board was found to have no solution
+     */
+    private boolean eliminate(CLPBoard board, int unit, int[] chosen, long values){
+        final BoardGeometry geometry = board.getGeometry();
+        for (int i = 0; i < geometry.getSize(); i++){
+            final int cell = geometry.getUnitCell(unit, i);
+            if (!contains(chosen, cell) && (board.getMask(cell) & values) != 0
+                    && !board.eliminateAll(cell, values)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the cell is one of the chosen
+     */
+    private static boolean contains(int[] chosen, int cell){
+        for (int other : chosen){
+            if (other == cell){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,62 @@
+package sudoku.clp;
+
+import sudoku.BoardGeometry;
+
+/**
+ * Pointing pairs and triples. If every place a value can go in a box is on
+ * the same row (or column), the value must go on that row inside the box, so
+ * it can be removed from the rest of the row.
+ *
+ * @author Taras Mychaskiw
+ */
+class PointingPropagator implements Propagator {
+
+    @Override
+    public boolean propagate(CLPBoard board){
+        if (!board.isSingleWord()){
+            return true;
+        }
+        final BoardGeometry geometry = board.getGeometry();
+        final int n = geometry.getSize();
+        for (int box = BoardGeometry.BOX * n; box < (BoardGeometry.BOX + 1) * n; box++){
+            for (int value = 1; value <= n; value++){
+                final long bit = 1L << (value - 1);
+                int column = -1, row = -1, count = 0;
+                for (int i = 0; i < n; i++){
+                    final int cell = geometry.getUnitCell(box, i);
+                    if ((board.getMask(cell) & bit) != 0){
+                        column = count == 0 || column == geometry.getColumnUnit(cell) ? geometry.getColumnUnit(cell) : -2;
+                        row = count == 0 || row == geometry.getRowUnit(cell) ? geometry.getRowUnit(cell) : -2;
+                        count++;
+                    }
+                }
+                if (count < 2){
+                    continue;   //nowhere or one place is already handled by the board
+                }
+                if (column >= 0 && !clearOutside(board, column, box, value)){
+                    return false;
+                }
+                if (row >= 0 && !clearOutside(board, row, box, value)){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the value from every cell of the line outside the box.
+     *
+     * @return false if the board was found to have no solution
+     */
+    private static boolean clearOutside(CLPBoard board, int line, int box, int value){
+        final BoardGeometry geometry = board.getGeometry();
+        for (int i = 0; i < geometry.getSize(); i++){
+            final int cell = geometry.getUnitCell(line, i);
+            if (geometry.getBoxUnit(cell) != box && !board.eliminate(cell, value)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+package sudoku.clp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How hard the ConstraintSolver works at each node before it guesses. Harder
+ * levels make the search tree smaller, but each node costs more.
+ *
+ * ALL_DIFFERENT runs the unit matching on its own. It finds every subset of
+ * any size, and only looks at the units which changed, where the intersection
+ * rules scan the whole board every time. On 25x25 boards that makes it the
+ * fastest level by far. FISH runs everything but the subset rules, which the
+ * matching already covers.
+ *
+ * @author Taras Mychaskiw
+ */
+public enum PropagationLevel {
+    SINGLES,            //naked and hidden singles only
+    INTERSECTIONS,      //pointing pairs and box/line reduction
+    SUBSETS,            //intersections, naked and hidden pairs and triples
+    ALL_DIFFERENT,      //matching on every unit that changed, for the big boards
+    FISH;               //intersections, matching and x-wings
+
+    private List<Propagator> propagators;
+
+    /**
+     * @return the propagators of this level, cheapest first
+     */
+    synchronized List<Propagator> getPropagators(){
+        if (propagators == null){
+            List<Propagator> list = new ArrayList<>();
+            if (this == INTERSECTIONS || this == SUBSETS || this == FISH){
+                list.add(new PointingPropagator());
+                list.add(new BoxLinePropagator());
+            }
+            if (this == SUBSETS){
+                list.add(new NakedSubsetPropagator(2));
+                list.add(new HiddenSubsetPropagator(2));
+                list.add(new NakedSubsetPropagator(3));
+                list.add(new HiddenSubsetPropagator(3));
+            }
+            if (this == ALL_DIFFERENT || this == FISH){
+                list.add(new AllDifferentPropagator());
+            }
+            if (this == FISH){
+                list.add(new XWingPropagator());
+            }
+            propagators = Collections.unmodifiableList(list);
+        }
+        return propagators;
+    }
+}
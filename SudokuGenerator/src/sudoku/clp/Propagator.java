@@ -0,0 +1,25 @@
+package sudoku.clp;
+
+/**
+ * A deduction the constraint solver can make beyond the naked and hidden
+ * singles CLPBoard always propagates. A propagator looks over the whole board
+ * and eliminates every candidate its rule rules out, using
+ * CLPBoard.eliminate(int, int) so the eliminations are propagated and can be
+ * rolled back like any other.
+ *
+ * Propagators work on candidate masks of a single long, so they do nothing on
+ * boards bigger than 64x64. They hold no state of their own, one instance is
+ * shared by every search.
+ *
+ * @author Taras Mychaskiw
+ */
+interface Propagator {
+
+    /**
+     * Applies the rule to the board once.
+     *
+     * @param board the board to eliminate candidates from
+     * @return false if the board was found to have no solution
+     */
+    boolean propagate(CLPBoard board);
+}
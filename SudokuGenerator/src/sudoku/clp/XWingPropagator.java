@@ -0,0 +1,79 @@
+package sudoku.clp;
+
+import sudoku.BoardGeometry;
+
+/**
+ * X-wings. If a value can only go in the same two columns on each of two
+ * rows, it must take one corner on each row, and so it fills both of those
+ * columns. The value can be removed from the rest of the two columns. The
+ * same goes with rows and columns swapped.
+ *
+ * @author Taras Mychaskiw
+ */
+class XWingPropagator implements Propagator {
+
+    @Override
+    public boolean propagate(CLPBoard board){
+        if (!board.isSingleWord()){
+            return true;
+        }
+        final int n = board.getGeometry().getSize();
+        final long[] places = new long[n];
+        for (int value = 1; value <= n; value++){
+            if (!propagate(board, value, BoardGeometry.COLUMN, BoardGeometry.ROW, places)
+                    || !propagate(board, value, BoardGeometry.ROW, BoardGeometry.COLUMN, places)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks for x-wings of the value on lines of one kind. The ith cell of a
+     * line of one kind is always on the ith line of the other kind.
+     *
+     * @param board the board
+     * @param value the value to look for
+     * @param kind the kind of the lines with two places each
+     * @param cross the kind of the lines the value is removed from
+     * @param places scratch space, one mask per line
+     * @return false if the board was found to have no solution
+     */
+    private static boolean propagate(CLPBoard board, int value, int kind, int cross, long[] places){
+        final BoardGeometry geometry = board.getGeometry();
+        final int n = geometry.getSize();
+        final long bit = 1L << (value - 1);
+        for (int line = 0; line < n; line++){
+            places[line] = 0;
+            for (int i = 0; i < n; i++){
+                if ((board.getMask(geometry.getUnitCell(kind*n + line, i)) & bit) != 0){
+                    places[line] |= 1L << i;
+                }
+            }
+        }
+        for (int first = 0; first < n; first++){
+            if (Long.bitCount(places[first]) != 2){
+                continue;
+            }
+            for (int second = first + 1; second < n; second++){
+                if (places[second] != places[first]){
+                    continue;
+                }
+                long positions = places[first];
+                while (positions != 0){
+                    final long pos = positions & -positions;
+                    positions ^= pos;
+                    final int other = cross*n + Long.numberOfTrailingZeros(pos);
+                    for (int i = 0; i < n; i++){
+                        final int cell = geometry.getUnitCell(other, i);
+                        final int on = geometry.getUnit(cell, kind) - kind*n;
+                        if (on != first && on != second && !board.eliminate(cell, value)){
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+}
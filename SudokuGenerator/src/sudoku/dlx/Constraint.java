@@ -1,11 +0,0 @@
-package sudoku.dlx;
-
-/**
- * Superclass for constraint types for DLX. Each column in the matrix has
- * one of these constraints at the header.
- *
- * @author Taras Mychaskiw
- */
-interface Constraint {
-
-}
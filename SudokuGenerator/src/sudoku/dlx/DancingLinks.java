@@ -1,8 +1,8 @@
 package sudoku.dlx;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
+import sudoku.BoardGeometry;
 import sudoku.SudokuBoard;
 
 /**
@@ -10,79 +10,318 @@ import sudoku.SudokuBoard;
  * a sudoku problem. Treats sudoku as an exact cover problem, and uses the
  * sparse matrix of constraints (this list) to solve the sudoku. The basis of
  * it's speed lies in the O(1) operation to link or unlink entire columns.
- * 
+ *
+ * The links are kept in parallel int arrays instead of node objects. Node 0
+ * is the root, nodes 1..numColumns are the column headers, and each row of
+ * the matrix is the next four nodes after that. Row r means value
+ * (r % n + 1) goes in cell (r / n), so a solution decodes straight from the
+ * node indices. The matrix always holds every row for every cell; the givens
+ * of a board are selected by covering their rows, and uncovered again after,
+ * so one matrix is built per board size per thread and then reused.
+ *
  * @author Taras Mychaskiw
  */
 class DancingLinks {
 
-    private final ColumnHeader head;            //entry point to the list
-    private final List<ColumnHeader> columns;   //maintain list of headers
-    private final SudokuBoard board;            //board being solved
+    private static final int NODES_PER_ROW = 4;     //column, row, box and cell
 
-    DancingLinks(SudokuBoard board){
-        head = new ColumnHeader();  //points to itself in all directions
-        columns = new ArrayList<>(board.getNumCells() * board.getSize());
-        this.board = board;
+    //one matrix per board size per thread, since searching changes the links
+    private static final ThreadLocal<Map<BoardGeometry,DancingLinks>> cache =
+            new ThreadLocal<Map<BoardGeometry,DancingLinks>>(){
+        @Override
+        protected Map<BoardGeometry,DancingLinks> initialValue(){
+            return new HashMap<>();
+        }
+    };
+
+    final int[] left, right, up, down;  //the links of each node
+    final int[] column;                 //header of the column each node is in
+    final int[] size;                   //number of nodes in each column
+    private final int n, numColumns, firstRowNode;
+    private final BoardGeometry geometry;
+
+    private SudokuBoard board;          //board being solved, null if free
+    private final int[] givens;         //rows selected for the givens
+    private int numGivens;
+    private boolean validGivens;        //false if the givens break the rules
+    private int covered;                //columns currently covered
+    private long operations;            //covers and uncovers, ever
+
+    /**
+     * Builds the full matrix for boards of the given size.
+     *
+     * @param geometry the size of the boards to solve
+     */
+    private DancingLinks(BoardGeometry geometry){
+        this.geometry = geometry;
+        this.n = geometry.getSize();
+        final int numCells = geometry.getNumCells();
+        numColumns = 4 * numCells;
+        firstRowNode = numColumns + 1;
+        final int numNodes = firstRowNode + NODES_PER_ROW * numCells * n;
+        left = new int[numNodes];
+        right = new int[numNodes];
+        up = new int[numNodes];
+        down = new int[numNodes];
+        column = new int[numNodes];
+        size = new int[numColumns + 1];
+        givens = new int[numCells];
+        link();
+    }
+
+    /**
+     * Returns this thread's matrix for the board's size, with the givens of
+     * the board selected. The matrix must be given back with release() once
+     * the search is done.
+     *
+     * @param board the board to solve
+     * @return the matrix ready to search
+     */
+    static DancingLinks acquire(SudokuBoard board){
+        final Map<BoardGeometry,DancingLinks> matrices = cache.get();
+        DancingLinks dlx = matrices.get(board.getGeometry());
+        if (dlx == null){
+            dlx = new DancingLinks(board.getGeometry());
+            matrices.put(board.getGeometry(), dlx);
+        }
+        else if (dlx.board != null){
+            dlx = new DancingLinks(board.getGeometry());  //already in use further up the stack
+        }
+        dlx.select(board);
+        return dlx;
+    }
+
+    /**
+     * Returns a matrix of its own for the board, with the givens selected.
+     * For a search that outlives the call it was started in, and so can not
+     * hold on to this thread's matrix.
+     *
+     * @param board the board to solve
+     * @return the matrix ready to search
+     */
+    static DancingLinks create(SudokuBoard board){
+        final DancingLinks dlx = new DancingLinks(board.getGeometry());
+        dlx.select(board);
+        return dlx;
     }
 
-    boolean isSolved(){ return head.right == head; }
+    /**
+     * Unselects the givens so the matrix can be used for the next board. If
+     * a search was cut short without uncovering, the links are rebuilt.
+     */
+    void release(){
+        if (covered != numGivens * NODES_PER_ROW){
+            link();
+        }
+        else {
+            for (int i = numGivens - 1; i >= 0; i--){
+                unselectRow(givens[i]);
+            }
+        }
+        numGivens = 0;
+        covered = 0;
+        board = null;
+    }
+
+    boolean isSolved(){ return right[0] == 0; }
     SudokuBoard getBoard(){ return board; }
+    long getOperations(){ return operations; }
+
+    /**
+     * Returns false if two of the givens of the board being solved break the
+     * rules, in which case there is nothing to search.
+     *
+     * @return true if the givens could all be selected
+     */
+    boolean hasValidGivens(){
+        return validGivens;
+    }
+
 
     /**
-     * Adds a column to the table.
+     * Links every node of the full matrix, all columns uncovered.
      */
-    void addColumn(Constraint constraint){
-        ColumnHeader top = new ColumnHeader(constraint);    //points to self
-        Node tail = head.left;
-        tail.setRight(top);
-        top.setLeft(tail).setRight(head);
-        head.setLeft(top);
-        columns.add(top);
+    private void link(){
+        for (int col = 0; col <= numColumns; col++){
+            left[col] = col == 0 ? numColumns : col - 1;
+            right[col] = col == numColumns ? 0 : col + 1;
+            up[col] = down[col] = column[col] = col;
+            size[col] = 0;
+        }
+        final int numCells = geometry.getNumCells();
+        int node = firstRowNode;
+        for (int cell = 0; cell < numCells; cell++){
+            for (int value = 1; value <= n; value++){
+                final int first = node;
+                addNode(node++, geometry.getColumnUnit(cell)*n + value);
+                addNode(node++, geometry.getRowUnit(cell)*n + value);
+                addNode(node++, geometry.getBoxUnit(cell)*n + value);
+                addNode(node++, 3*numCells + cell + 1);
+                for (int i = first; i < node; i++){
+                    left[i] = i == first ? node - 1 : i - 1;
+                    right[i] = i == node - 1 ? first : i + 1;
+                }
+            }
+        }
     }
 
     /**
-     * Adds a row to the table.
+     * Adds the node to the bottom of the column.
      *
-     * @param values the columns that are satisfied by this row
-     */
-    void addRow(List<Integer> values){
-        Node prev = null;
-        for (int i : values){
-            ColumnHeader top = columns.get(i);
-            top.size++;
-            Node bottom = top.up;
-            Node node = new Node(null, null, bottom, top, top);
-            bottom.setDown(node);
-            top.setUp(node);
-            if (prev != null){
-                Node front = prev.right;
-                node.setLeft(prev).setRight(front);
-                prev.setRight(node);
-                front.setLeft(node);
+     * @param node the node to add
+     * @param col the header of the column
+     */
+    private void addNode(int node, int col){
+        column[node] = col;
+        up[node] = up[col];
+        down[node] = col;
+        down[up[col]] = node;
+        up[col] = node;
+        size[col]++;
+    }
+
+    /**
+     * Selects the rows for all the givens of the board.
+     *
+     * @param board the board to be solved
+     */
+    private void select(SudokuBoard board){
+        this.board = board;
+        numGivens = 0;
+        validGivens = true;
+        for (int cell = 0; cell < board.getNumCells(); cell++){
+            final int value = board.getCell(cell);
+            if (value > 0){
+                if (value > n || !selectRow(cell*n + value - 1)){
+                    for (int i = numGivens - 1; i >= 0; i--){
+                        unselectRow(givens[i]);
+                    }
+                    numGivens = 0;
+                    validGivens = false;
+                    return;
+                }
+                givens[numGivens++] = cell*n + value - 1;
             }
-            else {
-                node.setLeft(node).setRight(node);
+        }
+    }
+
+    /**
+     * Covers every column of the row, as if the row were in the solution.
+     *
+     * @param row the row to select
+     * @return false if one of the columns was already covered
+     */
+    private boolean selectRow(int row){
+        final int first = getFirstNode(row);
+        for (int node = first; node < first + NODES_PER_ROW; node++){
+            final int col = column[node];
+            if (right[left[col]] != col){
+                for (int undo = node - 1; undo >= first; undo--){
+                    uncover(column[undo]);
+                }
+                return false;
             }
-            prev = node;
+            cover(col);
+        }
+        return true;
+    }
+
+    /**
+     * Uncovers every column of a row covered by selectRow(int).
+     *
+     * @param row the row to unselect
+     */
+    private void unselectRow(int row){
+        final int first = getFirstNode(row);
+        for (int node = first + NODES_PER_ROW - 1; node >= first; node--){
+            uncover(column[node]);
+        }
+    }
+
+
+    /**
+     * Takes a single row out of the matrix, so no solution can use it.
+     *
+     * @param row the row to take out
+     * @return false if the row was already out of the matrix
+     */
+    boolean hideRow(int row){
+        final int first = getFirstNode(row);
+        if (down[up[first]] != first){
+            return false;
+        }
+        for (int node = first; node < first + NODES_PER_ROW; node++){
+            down[up[node]] = down[node];
+            up[down[node]] = up[node];
+            size[column[node]]--;
+        }
+        return true;
+    }
+
+    /**
+     * Puts back a row taken out by hideRow(int).
+     *
+     * @param row the row to put back
+     */
+    void unhideRow(int row){
+        final int first = getFirstNode(row);
+        for (int node = first + NODES_PER_ROW - 1; node >= first; node--){
+            size[column[node]]++;
+            down[up[node]] = node;
+            up[down[node]] = node;
         }
     }
 
 
+    /**
+     * @param row the row index
+     * @return the first node of the row
+     */
+    int getFirstNode(int row){
+        return firstRowNode + NODES_PER_ROW * row;
+    }
+
+    /**
+     * @param node any node not in the header row
+     * @return the row the node is in
+     */
+    int getRow(int node){
+        return (node - firstRowNode) / NODES_PER_ROW;
+    }
+
+    /**
+     * @param node any node not in the header row
+     * @return the cell the row of the node fills
+     */
+    int getCell(int node){
+        return getRow(node) / n;
+    }
+
+    /**
+     * @param node any node not in the header row
+     * @return the value the row of the node puts in its cell
+     */
+    int getValue(int node){
+        return getRow(node) % n + 1;
+    }
+
+
     /**
      * Finds the column with the fewest number of choices.
      *
      * @return the column header
      */
-    ColumnHeader findBestColumn(){
+    int findBestColumn(){
         int lowSize = Integer.MAX_VALUE;
-        ColumnHeader result = null;
-        ColumnHeader current = (ColumnHeader) head.right;
-        while (current != head){
-            if (current.size < lowSize){
-                lowSize = current.size;
-                result = current;
+        int result = 0;
+        for (int col = right[0]; col != 0; col = right[col]){
+            if (size[col] < lowSize){
+                lowSize = size[col];
+                result = col;
+                if (lowSize <= 1){
+                    break;
+                }
             }
-            current = (ColumnHeader) current.right;
         }
         return result;
     }
@@ -93,54 +332,36 @@ class DancingLinks {
      *
      * @param col the column to hide
      */
-    void cover(ColumnHeader col){
-        col.coverLeft();
-        Node row = col.down;
-        while (row != col){
-            Node node = row.right;
-            while (node != row){
-                node.coverUp();
-                node.head.size--;
-                node = node.right;
+    void cover(int col){
+        right[left[col]] = right[col];
+        left[right[col]] = left[col];
+        for (int row = down[col]; row != col; row = down[row]){
+            for (int node = right[row]; node != row; node = right[node]){
+                down[up[node]] = down[node];
+                up[down[node]] = up[node];
+                size[column[node]]--;
             }
-            row = row.down;
         }
+        covered++;
+        operations++;
     }
 
     /**
-     * Uncover a column that was hidden by DancingLinks.cover(ColumnHeader).
+     * Uncover a column that was hidden by DancingLinks.cover(int).
      *
      * @param col the column to un-hide
      */
-    void uncover(ColumnHeader col){
-        Node row = col.up;
-        while (row != col){
-            Node node = row.left;
-            while (node != row){
-                node.head.size++;
-                node.uncoverUp();
-                node = node.left;
+    void uncover(int col){
+        for (int row = up[col]; row != col; row = up[row]){
+            for (int node = left[row]; node != row; node = left[node]){
+                size[column[node]]++;
+                down[up[node]] = node;
+                up[down[node]] = node;
             }
-            row = row.up;
         }
-        col.uncoverLeft();
-    }
-
-
-    /**
-     * Get the name of a row by getting the list of constraints it satisfies.
-     *
-     * @param row the row to make a name for
-     * @return the list of column constraints
-     */
-    List<Constraint> getRowName(Node row){
-        List<Constraint> result = new LinkedList<>();
-        result.add(row.head.constraint);
-        Node node = row.right;
-        while (node != row){
-            result.add(node.head.constraint);
-            node = node.right;
-        }
-        return result;
+        right[left[col]] = col;
+        left[right[col]] = col;
+        covered--;
+        operations++;
     }
 }
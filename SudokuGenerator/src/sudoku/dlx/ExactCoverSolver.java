@@ -1,19 +1,17 @@
 package sudoku.dlx;
 
-import java.util.Deque;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.Iterator;
+import sudoku.AbstractSudokuSolver;
+import sudoku.SearchContext;
+import sudoku.SolutionIterator;
 import sudoku.SudokuBoard;
-import sudoku.SudokuSolver;
 
 /**
  * Uses exact cover and dancing links to solve the sudoku.
  *
  * @author Taras Mychaskiw
  */
-public class ExactCoverSolver implements SudokuSolver {
+public class ExactCoverSolver extends AbstractSudokuSolver {
 
     /**
      * Tries to solve the sudoku board.
@@ -23,42 +21,49 @@ public class ExactCoverSolver implements SudokuSolver {
      */
     @Override
     public SudokuBoard solve(SudokuBoard board){
-        return solve(new LinkedList<Node>(), DLXGenerator.generate(board));
+        DancingLinks dlx = DancingLinks.acquire(board);
+        final SearchContext context = context();
+        final long before = dlx.getOperations();
+        try {
+            if (!dlx.hasValidGivens()){
+                return null;
+            }
+            return solve(new int[board.getNumCells()], 0, dlx, context);
+        } finally {
+            finish(dlx, before, context);
+        }
     }
 
     /**
      * Tries to solve the sudoku board.
      *
-     * @param partial the stack of node containing the solution so far
+     * @param partial the rows in the solution so far, one per level
+     * @param depth how many rows are in the partial solution
      * @param dlx the DancingLinks which holds the board
+     * @param context ticked once per column branched on
      * @return a solved version of the board, or null if unsolvable
      */
-    private SudokuBoard solve(Deque<Node> partial, DancingLinks dlx){
+    private SudokuBoard solve(int[] partial, int depth, DancingLinks dlx, SearchContext context){
         if (dlx.isSolved()){
-            return listToBoard(partial, dlx);
+            return listToBoard(partial, depth, dlx);
         }
-        ColumnHeader col = dlx.findBestColumn();
+        context.tick(depth);
+        int col = dlx.findBestColumn();
         SudokuBoard result = null;
         dlx.cover(col);
-        Node row = col.down;
-        while (row != col){
-            partial.add(row);
-            Node node = row.right;
-            while (node != row){
-                dlx.cover(node.head);
-                node = node.right;
+        for (int row = dlx.down[col]; row != col && result == null; row = dlx.down[row]){
+            partial[depth] = row;
+            for (int node = dlx.right[row]; node != row; node = dlx.right[node]){
+                dlx.cover(dlx.column[node]);
             }
-            result = solve(partial, dlx);
-            if (result != null){
-                return result;
+            context.assign(1);
+            result = solve(partial, depth + 1, dlx, context);
+            for (int node = dlx.left[row]; node != row; node = dlx.left[node]){
+                dlx.uncover(dlx.column[node]);
             }
-            partial.removeLast();
-            node = row.left;
-            while (node != row){
-                dlx.uncover(node.head);
-                node = node.left;
+            if (result == null){
+                context.backtrack();
             }
-            row = row.down;
         }
         dlx.uncover(col);
         return result;
@@ -66,159 +71,212 @@ public class ExactCoverSolver implements SudokuSolver {
 
 
     /**
-     * Returns a list of all solutions to the board given.
+     * Returns the solutions to the board one at a time. The search has a
+     * matrix of its own, since it is left half done between solutions.
      *
      * @param board the board to solve
-     * @return the list of all solutions to the board
+     * @return the solutions to the board, in the order the search finds them
      */
     @Override
-    public List<SudokuBoard> enumerate(SudokuBoard board){
-        List<SudokuBoard> list = new LinkedList<>();
-        fill(new LinkedList<Node>(), DLXGenerator.generate(board), list);
-        return list;
+    public Iterator<SudokuBoard> solutions(SudokuBoard board){
+        return new Solutions(board, context());
     }
 
     /**
-     * Populates the list with solutions to the board. Basically just solves
-     * the sudoku over and over again, keeping the solutions.
-     *
-     * @param partial the stack of node containing the solution so far
-     * @param dlx the DancingLinks which holds the board
-     * @param list where to store the solutions
+     * Algorithm X with the recursion unrolled. Each level keeps the column it
+     * covered and the row of that column it has selected, which is the column
+     * header itself before the first row is tried.
      */
-    private void fill(Deque<Node> partial, DancingLinks dlx, List<SudokuBoard> list){
-        if (dlx.isSolved()){
-            list.add(listToBoard(partial, dlx));
-            return;
+    private class Solutions extends SolutionIterator {
+        private final DancingLinks dlx;
+        private final SearchContext context;
+        private final int[] cols, rows;     //one of each per level
+        private int depth;                  //-1 when done
+        private boolean entering = true;    //false when back from a deeper level
+        private long reported;              //operations of the matrix counted so far
+
+        Solutions(SudokuBoard board, SearchContext context){
+            super(context);
+            this.context = context;
+            dlx = DancingLinks.create(board);
+            cols = new int[board.getNumCells() + 1];
+            rows = new int[board.getNumCells() + 1];
+            depth = dlx.hasValidGivens() ? 0 : -1;
+            reported = dlx.getOperations();     //the givens are not part of the search
         }
-        ColumnHeader col = dlx.findBestColumn();
-        dlx.cover(col);
-        Node row = col.down;
-        while (row != col){
-            partial.add(row);
-            Node node = row.right;
-            while (node != row){
-                dlx.cover(node.head);
-                node = node.right;
+
+        @Override
+        protected SudokuBoard advance(){
+            try {
+                return search();
+            } finally {
+                context.cover(dlx.getOperations() - reported);
+                reported = dlx.getOperations();
             }
-            fill(partial, dlx, list);
-            partial.removeLast();
-            node = row.left;
-            while (node != row){
-                dlx.uncover(node.head);
-                node = node.left;
+        }
+
+        /**
+         * Runs the search on to its next solution.
+         */
+        private SudokuBoard search(){
+            while (depth >= 0){
+                if (entering){
+                    entering = false;
+                    if (dlx.isSolved()){
+                        depth--;    //the next call tries the next row a level up
+                        return listToBoard(rows, depth + 1, dlx);
+                    }
+                    context.tick(depth);
+                    cols[depth] = rows[depth] = dlx.findBestColumn();
+                    dlx.cover(cols[depth]);
+                }
+                else {
+                    //unselect the row tried last
+                    final int row = rows[depth];
+                    for (int node = dlx.left[row]; node != row; node = dlx.left[node]){
+                        dlx.uncover(dlx.column[node]);
+                    }
+                    context.backtrack();
+                }
+                final int row = dlx.down[rows[depth]];
+                if (row == cols[depth]){
+                    dlx.uncover(cols[depth]);
+                    depth--;
+                }
+                else {
+                    rows[depth] = row;
+                    for (int node = dlx.right[row]; node != row; node = dlx.right[node]){
+                        dlx.cover(dlx.column[node]);
+                    }
+                    context.assign(1);
+                    depth++;
+                    entering = true;
+                }
             }
-            row = row.down;
+            return null;
         }
-        dlx.uncover(col);
     }
 
 
     /**
-     * Returns true if the board is well formed, that is if the
-     * board only has one solution.
+     * Counts the solutions to the board, but stops searching as soon as the
+     * limit is reached. Solutions are only counted, never built.
      *
-     * @param board the board to test
-     * @return true if it only has one possible solution
+     * @param board the board to solve
+     * @param limit the most solutions to look for, at least 1
+     * @return the number of solutions, at most limit
      */
     @Override
-    public boolean isWellFormed(SudokuBoard board){
-        Set<SudokuBoard> set = new HashSet<>();
-        return isWellFormed(new LinkedList<Node>(), DLXGenerator.generate(board), set) && set.size() == 1;
+    public int countSolutions(SudokuBoard board, int limit){
+        DancingLinks dlx = DancingLinks.acquire(board);
+        final SearchContext context = context();
+        final long before = dlx.getOperations();
+        try {
+            return dlx.hasValidGivens() ? count(dlx, 0, limit, context) : 0;
+        } finally {
+            finish(dlx, before, context);
+        }
     }
 
     /**
      * Continually solves the sudoku until there are no more solutions or until
-     * a second solution was found. If a second solution is found, then an
-     * exception is thrown to immediately stop the process. I wish java had
-     * lazy evaluation. length(enumerations(board)) > 1; done
+     * the limit is reached. The rows chosen are not needed to count, so they
+     * are not kept.
      *
-     * @param partial the stack of node containing the solution so far
      * @param dlx the DancingLinks which holds the board
-     * @param soln the set to store the solutions in
-     * @return true if the sudoku board has only one solution
+     * @param depth how many rows have been selected
+     * @param limit the most solutions still wanted
+     * @param context ticked once per column branched on
+     * @return the number of solutions found, at most limit
      */
-    private boolean isWellFormed(Deque<Node> partial, DancingLinks dlx, Set<SudokuBoard> soln){
-        if (Thread.interrupted()){
-            throw new RuntimeException();
-            //return false;
-        }
+    private int count(DancingLinks dlx, int depth, int limit, SearchContext context){
         if (dlx.isSolved()){
-            return !soln.add(listToBoard(partial, dlx)) || soln.size() <= 1;
+            return 1;
         }
-        ColumnHeader col = dlx.findBestColumn();
+        context.tick(depth);
+        int col = dlx.findBestColumn();
+        int found = 0;
         dlx.cover(col);
-        Node row = col.down;
-        while (row != col){
-            partial.add(row);
-            Node node = row.right;
-            while (node != row){
-                dlx.cover(node.head);
-                node = node.right;
-            }
-            if (!isWellFormed(partial, dlx, soln)){
-                return false;
+        for (int row = dlx.down[col]; row != col && found < limit; row = dlx.down[row]){
+            for (int node = dlx.right[row]; node != row; node = dlx.right[node]){
+                dlx.cover(dlx.column[node]);
             }
-            partial.removeLast();
-            node = row.left;
-            while (node != row){
-                dlx.uncover(node.head);
-                node = node.left;
+            context.assign(1);
+            found += count(dlx, depth + 1, limit - found, context);
+            for (int node = dlx.left[row]; node != row; node = dlx.left[node]){
+                dlx.uncover(dlx.column[node]);
             }
-            row = row.down;
+            context.backtrack();
         }
         dlx.uncover(col);
-        return true;
+        return found;
     }
 
 
     /**
-     * Returns the formity of the board sent.
+     * Returns true if the board has a solution other than the known one in
+     * which the cell holds a different value. The row putting the known value
+     * in the cell is taken out of the matrix before the search starts.
      *
-     * @param board the board to test
-     * @return 0 if no solutions, 1 if unique solution, -1 if multiple solutions
+     * @param board the board to test, the cell is treated as empty
+     * @param knownSolution a solution to the board
+     * @param cell the cell that must differ from the known solution
+     * @return true if a solution with a different value in the cell exists
      */
     @Override
-    public int getFormity(SudokuBoard board){
-        Set<SudokuBoard> set = new HashSet<>();
-        if (isWellFormed(new LinkedList<Node>(), DLXGenerator.generate(board), set)){
-            if (set.isEmpty()){
-                return NO_SOLUTIONS;
+    public boolean hasOtherSolution(SudokuBoard board, SudokuBoard knownSolution, int cell){
+        if (board.isSet(cell)){
+            board = new SudokuBoard(board);
+            board.clearCell(cell);
+        }
+        DancingLinks dlx = DancingLinks.acquire(board);
+        final SearchContext context = context();
+        final long before = dlx.getOperations();
+        try {
+            if (!dlx.hasValidGivens()){
+                return false;
             }
-            else if (set.size() == 1){
-                return UNIQUE_SOLUTION;
+            final int row = cell*board.getSize() + knownSolution.getCell(cell) - 1;
+            final boolean hidden = dlx.hideRow(row);
+            try {
+                return count(dlx, 0, 1, context) > 0;
+            } finally {
+                if (hidden){
+                    dlx.unhideRow(row);     //even if cancelled, or the matrix stays short a row
+                }
             }
+        } finally {
+            finish(dlx, before, context);
         }
-        return MULTIPLE_SOLUTIONS;
+    }
+
+    /**
+     * Gives the matrix back, and counts the covers of the search.
+     *
+     * @param dlx the matrix of the search
+     * @param before the operations of the matrix when the search started
+     * @param context the context of the search
+     */
+    private void finish(DancingLinks dlx, long before, SearchContext context){
+        context.cover(dlx.getOperations() - before);
+        dlx.release();
+        context.flush();
     }
 
 
     /**
-     * Converts the list containing the solution into a SudokuBoard.
+     * Converts the rows of the solution into a SudokuBoard. Each row decodes
+     * straight to the cell and value it sets.
      *
-     * @param list the list of nodes with the solution
+     * @param partial the rows in the solution
+     * @param depth how many rows are in the solution
      * @param dlx the DancingLinks which holds the board
-     * @return the SudokuBoard held in the list of Nodes
+     * @return the SudokuBoard held in the rows
      */
-    private SudokuBoard listToBoard(Deque<Node> list, DancingLinks dlx){
+    private SudokuBoard listToBoard(int[] partial, int depth, DancingLinks dlx){
         SudokuBoard board = new SudokuBoard(dlx.getBoard());
-        List<List<Constraint>> solution = new LinkedList<>();
-        for (Node row : list){
-            solution.add(dlx.getRowName(row));
-        }
-
-        for (List<Constraint> row : solution){
-            int x = -1, y = -1, value = -1;
-            for (Constraint item : row){
-                if (item instanceof ColumnConstraint){
-                    x = ((ColumnConstraint)item).column;
-                    value = ((ColumnConstraint)item).value;
-                }
-                else if (item instanceof RowConstraint){
-                    y = ((RowConstraint)item).row;
-                }
-            }
-            board.setCell(x, y, value);
+        for (int i = 0; i < depth; i++){
+            board.setCell(dlx.getCell(partial[i]), dlx.getValue(partial[i]));
         }
         return board;
     }
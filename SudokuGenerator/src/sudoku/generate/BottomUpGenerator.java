@@ -5,6 +5,8 @@ import sudoku.CandidateSet;
 import sudoku.SolverService;
 import sudoku.SudokuBoard;
 import sudoku.SudokuSolver;
+import sudoku.metrics.LatencyHistogram;
+import sudoku.metrics.MetricsRegistry;
 import sudoku.util.ArrayUtil;
 
 /**
@@ -20,8 +22,11 @@ import sudoku.util.ArrayUtil;
 public class BottomUpGenerator implements SudokuGenerator {
 
     private final SudokuBoard brd;
+    private final SolverService service;    //asked if boards are well formed
     private final int[] cells;
     private final Random rand = new Random();
+    private final LatencyHistogram additionTimes = MetricsRegistry.getDefault().timer("generator.BottomUpGenerator.addition");
+    private final LatencyHistogram removalTimes = MetricsRegistry.getDefault().timer("generator.BottomUpGenerator.removal");
 
     /**
      * Constructs a sudoku board generator able to generate boards with the
@@ -31,8 +36,21 @@ public class BottomUpGenerator implements SudokuGenerator {
      * @param q the small box height
      */
     public BottomUpGenerator(int p, int q){
+        this(p, q, SolverService.getDefault());
+    }
+
+    /**
+     * Constructs a sudoku board generator able to generate boards with the
+     * given dimensions, asking the given service about each board.
+     *
+     * @param p the small box width
+     * @param q the small box height
+     * @param service the service to check the boards with
+     */
+    public BottomUpGenerator(int p, int q, SolverService service){
         this.brd = new SudokuBoard(p, q);
         cells = ArrayUtil.range(0, brd.getNumCells());
+        this.service = service;
     }
 
     /**
@@ -56,6 +74,7 @@ public class BottomUpGenerator implements SudokuGenerator {
         final SudokuBoard board = new SudokuBoard(brd);
         ArrayUtil.shuffle(cells);
         int pos = 0;
+        long start = System.nanoTime();
 
         while (true){
             int cell;
@@ -71,7 +90,7 @@ public class BottomUpGenerator implements SudokuGenerator {
             int value = options.getRandomValue();
             board.setCell(cell, value);
 
-            int form = SolverService.getFormity(board);
+            int form = service.getFormity(board);
             if (form == SudokuSolver.NO_SOLUTIONS){
                 board.clearCell(cell);
             }
@@ -80,17 +99,21 @@ public class BottomUpGenerator implements SudokuGenerator {
             }
         }
 
+        additionTimes.recordSince(start);
+
         //try removing additional values
+        start = System.nanoTime();
         for (int cell : cells){
             if (board.isSet(cell)){
                 int value = board.getCell(cell);
                 board.clearCell(cell);
-                int form = SolverService.getFormity(board);
+                int form = service.getFormity(board);
                 if (form != SudokuSolver.UNIQUE_SOLUTION){
                     board.setCell(cell, value);
                 }
             }
         }
+        removalTimes.recordSince(start);
 
         return board;
     }
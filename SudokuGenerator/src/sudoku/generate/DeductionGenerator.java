@@ -2,8 +2,9 @@ package sudoku.generate;
 
 import sudoku.SolverService;
 import sudoku.SudokuBoard;
-import sudoku.SudokuSolver;
 import sudoku.clp.CLPBoardGenerator;
+import sudoku.metrics.LatencyHistogram;
+import sudoku.metrics.MetricsRegistry;
 import sudoku.util.ArrayUtil;
 
 /**
@@ -18,6 +19,9 @@ public class DeductionGenerator implements SudokuGenerator {
 
     private final int[] cells;
     private final SudokuBoard brd;
+    private final SolverService service;    //asked if boards are well formed
+    private final LatencyHistogram fillTimes = MetricsRegistry.getDefault().timer("generator.DeductionGenerator.fill");
+    private final LatencyHistogram removalTimes = MetricsRegistry.getDefault().timer("generator.DeductionGenerator.removal");
 
     /**
      * Constructs a sudoku board generator able to generate boards with the
@@ -27,8 +31,21 @@ public class DeductionGenerator implements SudokuGenerator {
      * @param q the small box height
      */
     public DeductionGenerator(int p, int q){
+        this(p, q, SolverService.getDefault());
+    }
+
+    /**
+     * Constructs a sudoku board generator able to generate boards with the
+     * given dimensions, asking the given service about each board.
+     *
+     * @param p the small box width
+     * @param q the small box height
+     * @param service the service to check the boards with
+     */
+    public DeductionGenerator(int p, int q, SolverService service){
         this.brd = new SudokuBoard(p, q);
         cells = ArrayUtil.range(0, brd.getNumCells());
+        this.service = service;
     }
 
     /**
@@ -49,7 +66,9 @@ public class DeductionGenerator implements SudokuGenerator {
      */
     @Override
     public SudokuBoard getProblem(){
+        long start = System.nanoTime();
         final SudokuBoard solved = CLPBoardGenerator.getRandomBoard(brd);
+        fillTimes.recordSince(start);
         final SudokuBoard board = new SudokuBoard(brd);
         ArrayUtil.shuffle(cells);
 
@@ -61,15 +80,16 @@ public class DeductionGenerator implements SudokuGenerator {
         }
 
         //try removing additional values
+        start = System.nanoTime();
         for (int cell : cells){
             if (board.isSet(cell)){
                 board.clearCell(cell);
-                int form = SolverService.getFormity(board);
-                if (form != SudokuSolver.UNIQUE_SOLUTION){
+                if (service.hasOtherSolution(board, solved, cell)){
                     board.setCell(cell, solved.getCell(cell));
                 }
             }
         }
+        removalTimes.recordSince(start);
         return board;
     }
 }
@@ -20,6 +20,7 @@ public class SlowGenerator implements SudokuGenerator {
 
     private final int[] cells;
     private final SudokuBoard brd;
+    private final SolverService service;    //asked if boards are well formed
     private final Random rand;
 
     /**
@@ -30,9 +31,22 @@ public class SlowGenerator implements SudokuGenerator {
      * @param q the small box height
      */
     public SlowGenerator(int p, int q){
+        this(p, q, SolverService.getDefault());
+    }
+
+    /**
+     * Constructs a sudoku board generator able to generate boards with the
+     * given dimensions, asking the given service about each board.
+     *
+     * @param p the small box width
+     * @param q the small box height
+     * @param service the service to check the boards with
+     */
+    public SlowGenerator(int p, int q, SolverService service){
         this.brd = new SudokuBoard(p, q);
         cells = ArrayUtil.range(0, brd.getNumCells());
         rand = new Random();
+        this.service = service;
     }
 
     /**
@@ -64,7 +78,7 @@ public class SlowGenerator implements SudokuGenerator {
             for (int cell = 0; cell < board.getNumCells(); cell++){
                 if (!board.isSet(cell)){
                     CandidateSet options = board.getOptions(cell);
-                    for (int value : options){
+                    for (int value = options.getLowestValue(); value != -1; value = options.nextCandidate(value)){
                         int cardinality = 0;
                         board.setCell(cell, value);
                         for (int i = 0; i < board.getNumCells(); i++){
@@ -82,7 +96,7 @@ public class SlowGenerator implements SudokuGenerator {
                 Cell c = queue.remove();    //set the first value
                 board.setCell(c.cell, c.value);
 
-                int form = SolverService.getFormity(board);
+                int form = service.getFormity(board);
                 if (form == SudokuSolver.NO_SOLUTIONS){
                     board.clearCell(c.cell);    //bad cell, clear and try next
                 }
@@ -102,7 +116,7 @@ public class SlowGenerator implements SudokuGenerator {
             if (board.isSet(cell)){
                 int value = board.getCell(cell);
                 board.clearCell(cell);
-                int form = SolverService.getFormity(board);
+                int form = service.getFormity(board);
                 if (form != SudokuSolver.UNIQUE_SOLUTION){
                     board.setCell(cell, value);
                 }
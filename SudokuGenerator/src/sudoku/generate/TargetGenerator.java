@@ -16,6 +16,7 @@ public class TargetGenerator implements SudokuGenerator {
 
     private final int[] cells;
     private final SudokuBoard brd;
+    private final SolverService service;    //asked if boards are well formed
     private final long NUM_ATTEMPTS;
     private final int TARGET_CLUES;
 
@@ -29,8 +30,23 @@ public class TargetGenerator implements SudokuGenerator {
      * @param tries how many iterations to tries before just returning
      */
     public TargetGenerator(int p, int q, int clues, long tries){
+        this(p, q, clues, tries, SolverService.getDefault());
+    }
+
+    /**
+     * Constructs a sudoku board generator able to generate boards with the
+     * given dimensions, asking the given service about each board.
+     *
+     * @param p the small box width
+     * @param q the small box height
+     * @param clues the target number of clues this generator should aim for
+     * @param tries how many iterations to tries before just returning
+     * @param service the service to check the boards with
+     */
+    public TargetGenerator(int p, int q, int clues, long tries, SolverService service){
         this.brd = new SudokuBoard(p, q);
         cells = ArrayUtil.range(0, brd.getNumCells());
+        this.service = service;
         TARGET_CLUES = clues;
         NUM_ATTEMPTS = tries;
     }
@@ -64,7 +80,7 @@ public class TargetGenerator implements SudokuGenerator {
         for (long i = 0; i < NUM_ATTEMPTS; i++){
             board = new SudokuBoard(brd);
             if (generate(board, TARGET_CLUES)){
-                int form = SolverService.getFormity(board);
+                int form = service.getFormity(board);
                 if (form == SudokuSolver.UNIQUE_SOLUTION){
                     return board;
                 }
@@ -2,8 +2,9 @@ package sudoku.generate;
 
 import sudoku.SolverService;
 import sudoku.SudokuBoard;
-import sudoku.SudokuSolver;
 import sudoku.clp.CLPBoardGenerator;
+import sudoku.metrics.LatencyHistogram;
+import sudoku.metrics.MetricsRegistry;
 import sudoku.util.ArrayUtil;
 
 /**
@@ -18,6 +19,9 @@ public class TopDownGenerator implements SudokuGenerator {
 
     private final int[] cells;
     private final SudokuBoard brd;
+    private final SolverService service;    //asked if boards are well formed
+    private final LatencyHistogram fillTimes = MetricsRegistry.getDefault().timer("generator.TopDownGenerator.fill");
+    private final LatencyHistogram removalTimes = MetricsRegistry.getDefault().timer("generator.TopDownGenerator.removal");
 
     /**
      * Constructs a sudoku board generator able to generate boards with the
@@ -27,8 +31,21 @@ public class TopDownGenerator implements SudokuGenerator {
      * @param q the small box height
      */
     public TopDownGenerator(int p, int q){
+        this(p, q, SolverService.getDefault());
+    }
+
+    /**
+     * Constructs a sudoku board generator able to generate boards with the
+     * given dimensions, asking the given service about each board.
+     *
+     * @param p the small box width
+     * @param q the small box height
+     * @param service the service to check the boards with
+     */
+    public TopDownGenerator(int p, int q, SolverService service){
         this.brd = new SudokuBoard(p, q);
         cells = ArrayUtil.range(0, brd.getNumCells());
+        this.service = service;
     }
 
     /**
@@ -49,20 +66,23 @@ public class TopDownGenerator implements SudokuGenerator {
      */
     @Override
     public SudokuBoard getProblem(){
+        long start = System.nanoTime();
         final SudokuBoard solved = CLPBoardGenerator.getRandomBoard(brd);
+        fillTimes.recordSince(start);
         SudokuBoard board = new SudokuBoard(solved);
         ArrayUtil.shuffle(cells);
 
+        start = System.nanoTime();
         for (int cell : cells){
             //remove the cell from the sudoku problem
             board.clearCell(cell);
 
-            //is it still well fomred?
-            int form = SolverService.getFormity(board);
-            if (form != SudokuSolver.UNIQUE_SOLUTION){
+            //is it still well formed? only the removed cell can differ
+            if (service.hasOtherSolution(board, solved, cell)){
                 board.setCell(cell, solved.getCell(cell));
             }
         }
+        removalTimes.recordSince(start);
         return board;
     }
 }
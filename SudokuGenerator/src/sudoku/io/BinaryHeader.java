@@ -0,0 +1,101 @@
+package sudoku.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import sudoku.SudokuBoard;
+
+/**
+ * The header of a binary puzzle file, as read back, see BinaryPuzzleWriter.
+ *
+ * @author Taras Mychaskiw
+ */
+class BinaryHeader {
+
+    final int version;
+    final int p, q, n;
+    final boolean withSolutions;
+    final long count;           //-1 if the file does not say
+    final int bits;             //per cell
+    final int boardBytes;       //per packed board
+    final int recordBytes;
+
+    /**
+     * @param header the start of the file, from 0 to its position
+     * @param name what to call the file in errors
+     * @throws IOException if it is not a binary puzzle file
+     */
+    BinaryHeader(ByteBuffer header, String name) throws IOException {
+        final int length = header.position();
+        if (length < 8 || !Arrays.equals(Arrays.copyOf(header.array(), 4), BinaryPuzzleWriter.MAGIC)){
+            throw new IOException(name + " is not a binary puzzle file");
+        }
+        version = header.get(4);
+        if (version != BinaryPuzzleWriter.VERSION){
+            throw new IOException(name + " is version " + version + " of the binary format, which is not known");
+        }
+        p = header.get(5) & 0xff;
+        q = header.get(6) & 0xff;
+        n = p * q;
+        if (n == 0){
+            throw new IOException(name + " has a " + p + "x" + q + " box");
+        }
+        withSolutions = (header.get(7) & BinaryPuzzleWriter.FLAG_SOLUTIONS) != 0;
+        if (length < BinaryPuzzleWriter.HEADER_SIZE){
+            throw new IOException(name + " ends in the header");
+        }
+        count = header.getLong(BinaryPuzzleWriter.COUNT_OFFSET);
+        bits = BinaryPuzzleWriter.bitsPerCell(n);
+        boardBytes = BinaryPuzzleWriter.boardBytes(p, q);
+        recordBytes = boardBytes * (withSolutions ? 2 : 1);
+    }
+
+    /**
+     * Reads a packed board into the board given.
+     *
+     * @param buffer the packed boards
+     * @param base where the board starts in buffer
+     * @param into the board to overwrite, the size of the boards in the file
+     * @return false if a cell holds a value too big for the board
+     */
+    boolean unpack(ByteBuffer buffer, int base, SudokuBoard into){
+        for (int cell = 0; cell < n * n; cell++){
+            final int value = unpack(buffer, base, cell);
+            if (value == 0){
+                into.clearCell(cell);
+            } else if (value <= n){
+                into.setCell(cell, value);
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads one cell of the packed board which starts at base. The cells are
+     * packed from the high bit down, so a cell is in the low bits of the bytes
+     * it spans once they are put together. Only absolute gets are used, so
+     * the position of the buffer never moves.
+     *
+     * @param buffer the packed boards
+     * @param base where the board starts in buffer
+     * @param cell the cell to read
+     * @return the value of the cell, 0 if it is empty
+     */
+    int unpack(ByteBuffer buffer, int base, int cell){
+        if (bits == 4){     //every 9x9 board, two cells to a byte
+            final int b = buffer.get(base + (cell >>> 1));
+            return (cell & 1) == 0 ? (b >>> 4) & 0xf : b & 0xf;
+        }
+        final int bit = cell * bits;
+        final int skip = bit & 7;           //bits of the first byte before the cell
+        int pos = base + (bit >>> 3);
+        int acc = 0, held = 0;
+        while (held < skip + bits){
+            acc = (acc << 8) | (buffer.get(pos++) & 0xff);
+            held += 8;
+        }
+        return (acc >>> (held - skip - bits)) & ((1 << bits) - 1);
+    }
+}
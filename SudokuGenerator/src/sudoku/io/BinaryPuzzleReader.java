@@ -0,0 +1,63 @@
+package sudoku.io;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import sudoku.SudokuBoard;
+
+/**
+ * Reads a binary puzzle file as a stream, which works for gzipped ones too.
+ * The solutions are skipped if there are any. PuzzleCorpus is quicker for
+ * files which are not gzipped.
+ *
+ * @author Taras Mychaskiw
+ */
+class BinaryPuzzleReader extends PuzzleReader {
+
+    private final DataInputStream in;
+    private final BinaryHeader header;
+    private final ByteBuffer record;
+
+    /**
+     * @param in where to read the puzzles from, starting at the header
+     * @throws IOException if the header can not be read
+     */
+    BinaryPuzzleReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        final ByteBuffer start = ByteBuffer.allocate(BinaryPuzzleWriter.HEADER_SIZE);
+        this.in.readFully(start.array());
+        start.position(BinaryPuzzleWriter.HEADER_SIZE);
+        header = new BinaryHeader(start, "the input");
+        record = ByteBuffer.allocate(header.recordBytes);
+    }
+
+    @Override
+    protected SudokuBoard readRecord() throws IOException {
+        if (header.count >= 0 && getCount() >= header.count){
+            return null;
+        }
+        final int first = in.read();
+        if (first < 0){
+            return null;
+        }
+        record.put(0, (byte)first);
+        try {
+            in.readFully(record.array(), 1, header.recordBytes - 1);
+        } catch (EOFException ex){
+            return null;    //the last record was not all written
+        }
+        final SudokuBoard board = new SudokuBoard(header.p, header.q);
+        if (!header.unpack(record, 0, board)){
+            throw new IOException("puzzle " + (getCount() + 1) + " has a cell too big for a "
+                    + header.n + "x" + header.n + " board");
+        }
+        return board;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,156 @@
+package sudoku.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import sudoku.SudokuBoard;
+
+/**
+ * Writes puzzles with their cells packed into as few bits as they need.
+ *
+ * The file starts with a 16 byte header: the magic "SDKB", the version, p,
+ * q, a flags byte whose bit 0 says a solution follows every puzzle, and the
+ * number of records as a big endian long. The header is written with the
+ * first puzzle, so it is sized for that puzzle, and every puzzle after has
+ * to be the same size; with no puzzles the file stays empty, which reads
+ * back as no puzzles. The count is -1 until it is known; when the writer is
+ * writing straight to a file it fills the count in at every flush, so the
+ * header always agrees with the records flushed so far.
+ *
+ * Then come the records, all the same length. A board is its cells in order,
+ * each the fewest bits that hold the size of the board, with 0 for an empty
+ * cell, packed from the high bit down and padded out to a whole byte. A 9x9
+ * board takes 4 bits a cell, 41 bytes in all. A record is the puzzle, and
+ * then its solution if the flag is on. Since the records are all the same
+ * size, puzzle i is at HEADER_SIZE + i * record size. PuzzleCorpus reads
+ * them back.
+ *
+ * @author Taras Mychaskiw
+ */
+class BinaryPuzzleWriter extends PuzzleWriter {
+
+    static final byte[] MAGIC = { 'S', 'D', 'K', 'B' };
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int COUNT_OFFSET = 8;      //where the record count is in the header
+    static final int FLAG_SOLUTIONS = 1;
+
+    private final OutputStream out;
+    private final FileChannel file;         //to fill the count in, or null
+    private boolean started;
+    private boolean withSolutions;
+    private int p, q;
+    private byte[] record;
+
+    /**
+     * @param out where to write the puzzles
+     * @param file the file out ends up in, if the count can be filled in,
+     * otherwise null
+     */
+    BinaryPuzzleWriter(OutputStream out, FileChannel file){
+        this.out = out;
+        this.file = file;
+    }
+
+    /**
+     * @param n the size of the board
+     * @return how many bits one cell takes
+     */
+    static int bitsPerCell(int n){
+        return Integer.SIZE - Integer.numberOfLeadingZeros(n);
+    }
+
+    /**
+     * @param p width of the small box
+     * @param q height of the small box
+     * @return how many bytes one packed board takes
+     */
+    static int boardBytes(int p, int q){
+        final int n = p * q;
+        return (n * n * bitsPerCell(n) + 7) / 8;
+    }
+
+    @Override
+    protected void writeRecord(SudokuBoard puzzle, SudokuBoard solution, long nanos) throws IOException {
+        if (!started){
+            start(puzzle, solution != null);
+        }
+        if (puzzle.getSmallWidth() != p || puzzle.getSmallHeight() != q){
+            throw new IllegalArgumentException("every puzzle in a file has to be " + p*q + "x" + p*q);
+        }
+        if (withSolutions && solution == null){
+            throw new IllegalArgumentException("the file has solutions, so every puzzle needs one");
+        }
+        final int size = boardBytes(p, q);
+        pack(puzzle, record, 0);
+        if (withSolutions){
+            pack(solution, record, size);
+        }
+        out.write(record);
+    }
+
+    /**
+     * Writes the header for puzzles like the first one.
+     */
+    private void start(SudokuBoard first, boolean solutions) throws IOException {
+        started = true;
+        withSolutions = solutions;
+        p = first.getSmallWidth();
+        q = first.getSmallHeight();
+        record = new byte[boardBytes(p, q) * (solutions ? 2 : 1)];
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(p);
+        out.write(q);
+        out.write(solutions ? FLAG_SOLUTIONS : 0);
+        out.write(ByteBuffer.allocate(Long.SIZE / 8).putLong(0, -1).array());
+    }
+
+    /**
+     * Packs the cells of the board into the array.
+     *
+     * @param board the board to pack
+     * @param dest where to pack it, the bytes are overwritten
+     * @param offset where the board starts in dest
+     */
+    static void pack(SudokuBoard board, byte[] dest, int offset){
+        final int bits = bitsPerCell(board.getSize());
+        final int end = offset + boardBytes(board.getSmallWidth(), board.getSmallHeight());
+        int acc = 0, held = 0;      //bits not yet written, high ones first
+        int pos = offset;
+        for (int cell = 0; cell < board.getNumCells(); cell++){
+            acc = (acc << bits) | board.getCell(cell);
+            held += bits;
+            while (held >= 8){
+                held -= 8;
+                dest[pos++] = (byte)(acc >>> held);
+            }
+            acc &= (1 << held) - 1;
+        }
+        if (held > 0){
+            dest[pos++] = (byte)(acc << (8 - held));
+        }
+        while (pos < end){
+            dest[pos++] = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        if (file != null && started){
+            final ByteBuffer count = ByteBuffer.allocate(Long.SIZE / 8).putLong(0, getCount());
+            file.write(count, COUNT_OFFSET);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package sudoku.io;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import sudoku.SudokuBoard;
+
+/**
+ * Turns boards into one line of text and back, straight between the cells
+ * and a byte[], CharBuffer or any CharSequence, without a String per cell or
+ * per board. It also reads the grid of SudokuBoard.toString() the same way.
+ *
+ * A line has one character per cell, a '.' for an empty one. Values up to 9
+ * are their digit, and bigger ones go on through the letters, so a 16x16 line
+ * uses 1-9 and A-G, and a 36x36 one goes up to 'a'. Boards up to 61x61 fit.
+ * A '0' is read as an empty cell too, as many other programs write them.
+ *
+ * @author Taras Mychaskiw
+ */
+public final class BoardCodec {
+
+    public static final String ALPHABET = "123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    public static final char EMPTY = '.';
+
+    private static final byte[] SYMBOLS = new byte[ALPHABET.length() + 1];    //by value, 0 is EMPTY
+    private static final byte[] VALUES = new byte[128];     //by character, -1 if not a value
+    static {
+        SYMBOLS[0] = EMPTY;
+        Arrays.fill(VALUES, (byte)-1);
+        VALUES[EMPTY] = 0;
+        VALUES['0'] = 0;
+        for (int i = 0; i < ALPHABET.length(); i++){
+            SYMBOLS[i + 1] = (byte)ALPHABET.charAt(i);
+            VALUES[ALPHABET.charAt(i)] = (byte)(i + 1);
+        }
+    }
+
+    private BoardCodec(){}
+
+    /**
+     * @return the biggest board, n for an n x n board, a line can hold
+     */
+    public static int getMaxSize(){
+        return ALPHABET.length();
+    }
+
+    /**
+     * Writes the board as one line of ASCII.
+     *
+     * @param board the board
+     * @param dest where to write it, it needs room for every cell
+     * @param offset where the line starts in dest
+     * @return the offset just after the line
+     */
+    public static int encode(SudokuBoard board, byte[] dest, int offset){
+        checkSize(board);
+        final int cells = board.getNumCells();
+        for (int cell = 0; cell < cells; cell++){
+            dest[offset + cell] = SYMBOLS[board.getCell(cell)];
+        }
+        return offset + cells;
+    }
+
+    /**
+     * Writes the board as one line at the position of the buffer, and moves
+     * the position past it.
+     *
+     * @param board the board
+     * @param dest where to write it, it needs room for every cell
+     */
+    public static void encode(SudokuBoard board, CharBuffer dest){
+        checkSize(board);
+        final int cells = board.getNumCells();
+        if (dest.remaining() < cells){
+            throw new IllegalArgumentException("a " + board.getSize() + "x" + board.getSize()
+                    + " board needs " + cells + " characters, there is room for " + dest.remaining());
+        }
+        if (dest.hasArray()){       //skip the checks of put() for every cell
+            final char[] array = dest.array();
+            final int start = dest.arrayOffset() + dest.position();
+            for (int cell = 0; cell < cells; cell++){
+                array[start + cell] = (char)SYMBOLS[board.getCell(cell)];
+            }
+            dest.position(dest.position() + cells);
+        } else {
+            for (int cell = 0; cell < cells; cell++){
+                dest.put((char)SYMBOLS[board.getCell(cell)]);
+            }
+        }
+    }
+
+    /**
+     * Adds the board to the builder as one line.
+     *
+     * @param sb where to add the line
+     * @param board the board
+     * @return the builder
+     */
+    public static StringBuilder append(StringBuilder sb, SudokuBoard board){
+        checkSize(board);
+        for (int cell = 0; cell < board.getNumCells(); cell++){
+            sb.append((char)SYMBOLS[board.getCell(cell)]);
+        }
+        return sb;
+    }
+
+    /**
+     * @param board the board
+     * @return the board as one line
+     */
+    public static String toLine(SudokuBoard board){
+        return append(new StringBuilder(board.getNumCells()), board).toString();
+    }
+
+    /**
+     * Reads a board written as one line of ASCII.
+     *
+     * @param src the line, it needs a character for every cell
+     * @param offset where the line starts in src
+     * @param into the board to overwrite, it sets the size of the line, and
+     * it is left cleared part way if the line is bad
+     * @return the offset just after the line
+     * @throws IllegalArgumentException if a character is not a value of the board
+     */
+    public static int decode(byte[] src, int offset, SudokuBoard into){
+        final int n = into.getSize();
+        final int cells = into.getNumCells();
+        into.clear();
+        for (int cell = 0; cell < cells; cell++){
+            final int c = src[offset + cell];
+            final int value = c < 0 ? -1 : VALUES[c];
+            if (value < 0 || value > n){
+                throw notAValue(cell, (char)(c & 0xff), n);
+            }
+            if (value != 0){
+                into.setCell(cell, value);
+            }
+        }
+        return offset + cells;
+    }
+
+    /**
+     * Reads a board written as one line. A CharBuffer is read from its
+     * position on, and the position does not move.
+     *
+     * @param src the line, it needs a character for every cell
+     * @param offset where the line starts in src
+     * @param into the board to overwrite, it sets the size of the line, and
+     * it is left cleared part way if the line is bad
+     * @return the offset just after the line
+     * @throws IllegalArgumentException if a character is not a value of the board
+     */
+    public static int decode(CharSequence src, int offset, SudokuBoard into){
+        final int n = into.getSize();
+        final int cells = into.getNumCells();
+        into.clear();
+        for (int cell = 0; cell < cells; cell++){
+            final char c = src.charAt(offset + cell);
+            final int value = c < VALUES.length ? VALUES[c] : -1;
+            if (value < 0 || value > n){
+                throw notAValue(cell, c, n);
+            }
+            if (value != 0){
+                into.setCell(cell, value);
+            }
+        }
+        return offset + cells;
+    }
+
+    /**
+     * Reads part of a board written as the grid of SudokuBoard.toString():
+     * values in decimal, '.' for an empty cell, and the lines between the
+     * boxes left out. The grid can come a line at a time, each going on from
+     * the cell the one before stopped at.
+     *
+     * @param src some of the grid
+     * @param cell the cell the grid goes on from
+     * @param into the board to write the cells into
+     * @return the cell after the last one read
+     * @throws IllegalArgumentException if there are too many cells, or one is
+     * not a value of the board
+     */
+    public static int decodeGrid(CharSequence src, int cell, SudokuBoard into){
+        final int n = into.getSize();
+        final int length = src.length();
+        int i = 0;
+        while (i < length){
+            char c = src.charAt(i);
+            if (c == EMPTY || (c >= '0' && c <= '9')){
+                if (cell >= into.getNumCells()){
+                    throw new IllegalArgumentException("too many cells for a " + n + "x" + n + " board");
+                }
+                int value = 0;
+                if (c == EMPTY){
+                    i++;
+                } else {
+                    while (i < length && (c = src.charAt(i)) >= '0' && c <= '9'){
+                        value = value * 10 + (c - '0');
+                        if (value > n){
+                            throw new IllegalArgumentException("cell " + cell + " is more than " + n);
+                        }
+                        i++;
+                    }
+                }
+                setCell(into, cell++, value);
+            } else if (c == ' ' || c == '|' || c == '-' || c == '+' || Character.isWhitespace(c)){
+                i++;
+            } else {
+                throw notAValue(cell, c, n);
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * Sets or clears one cell.
+     */
+    private static void setCell(SudokuBoard board, int cell, int value){
+        if (value == 0){
+            if (board.isSet(cell)){
+                board.clearCell(cell);
+            }
+        } else {
+            board.setCell(cell, value);
+        }
+    }
+
+    private static void checkSize(SudokuBoard board){
+        if (board.getSize() > getMaxSize()){
+            throw new IllegalArgumentException(board.getSize() + "x" + board.getSize()
+                    + " boards are too big to write one character per cell");
+        }
+    }
+
+    private static IllegalArgumentException notAValue(int cell, char c, int n){
+        return new IllegalArgumentException("cell " + cell + " is '" + c + "', which is not a value of a "
+                + n + "x" + n + " board");
+    }
+}
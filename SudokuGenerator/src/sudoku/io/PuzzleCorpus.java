@@ -0,0 +1,230 @@
+package sudoku.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import sudoku.SudokuBoard;
+
+/**
+ * Reads a file written in the binary format, see BinaryPuzzleWriter, by
+ * mapping it into memory. The records are all the same size, so any puzzle is
+ * found with one multiply, and its cells are decoded straight out of the
+ * mapped file with nothing copied in between. Reading the puzzles in order
+ * just walks the file, which the OS reads ahead.
+ *
+ * A map can not be bigger than 2GB, so a big file is mapped in segments which
+ * each hold a whole number of records. The reads never move the position of
+ * a buffer, so many threads can read the same corpus at once.
+ *
+ * If the header does not have the count yet, because the file is still being
+ * written or was never closed, the count is how many whole records are there.
+ * An empty file is an empty corpus: the writer only writes the header with
+ * the first puzzle, as it is sized for it, so a run which made no puzzles
+ * leaves nothing. Gzipped files can not be mapped, they have to be unzipped
+ * first.
+ *
+ * @author Taras Mychaskiw
+ */
+public class PuzzleCorpus implements Closeable, Iterable<SudokuBoard> {
+
+    private final RandomAccessFile file;
+    private final BinaryHeader header;      //null if the file is empty
+    private final int p, q, n;              //0 if the file is empty
+    private final long count;
+    private final int recordsPerSegment;
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Opens and maps a binary puzzle file.
+     *
+     * @param path the file to read
+     * @throws IOException if it can not be read, or is not a binary puzzle file
+     */
+    public PuzzleCorpus(String path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            final FileChannel channel = file.getChannel();
+            if (channel.size() == 0){
+                header = null;
+                p = q = n = 0;
+                count = 0;
+                recordsPerSegment = 1;
+                segments = new MappedByteBuffer[0];
+                return;
+            }
+            final ByteBuffer start = ByteBuffer.allocate(BinaryPuzzleWriter.HEADER_SIZE);
+            while (start.hasRemaining() && channel.read(start, start.position()) > 0){
+                //the header is tiny, this only goes around again on a short read
+            }
+            header = new BinaryHeader(start, path);
+            p = header.p;
+            q = header.q;
+            n = header.n;
+
+            final long whole = Math.max(0, channel.size() - BinaryPuzzleWriter.HEADER_SIZE) / header.recordBytes;
+            count = header.count < 0 ? whole : Math.min(header.count, whole);
+
+            recordsPerSegment = Integer.MAX_VALUE / header.recordBytes;
+            segments = new MappedByteBuffer[(int)((count + recordsPerSegment - 1) / recordsPerSegment)];
+            for (int i = 0; i < segments.length; i++){
+                final long first = (long)i * recordsPerSegment;
+                final long records = Math.min(recordsPerSegment, count - first);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        BinaryPuzzleWriter.HEADER_SIZE + first * header.recordBytes, records * header.recordBytes);
+            }
+        } catch (IOException | RuntimeException ex){
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return how many puzzles are in the file
+     */
+    public long size(){ return count; }
+    public int getSmallWidth(){ return p; }
+    public int getSmallHeight(){ return q; }
+
+    /**
+     * @return true if every puzzle has its solution with it
+     */
+    public boolean hasSolutions(){ return header != null && header.withSolutions; }
+
+    /**
+     * @param index which puzzle, from 0
+     * @return the puzzle
+     */
+    public SudokuBoard getPuzzle(long index){
+        return read(index, false, null);
+    }
+
+    /**
+     * Reads a puzzle into a board which is already there, so nothing is made
+     * for each puzzle of a scan.
+     *
+     * @param index which puzzle, from 0
+     * @param into the board to overwrite, it has to be the size of the puzzles
+     * @return into
+     */
+    public SudokuBoard getPuzzle(long index, SudokuBoard into){
+        return read(index, false, into);
+    }
+
+    /**
+     * @param index which puzzle, from 0
+     * @return the solution of the puzzle
+     * @throws IllegalStateException if the file has no solutions
+     */
+    public SudokuBoard getSolution(long index){
+        if (!hasSolutions()){
+            throw new IllegalStateException("the file has no solutions");
+        }
+        return read(index, true, null);
+    }
+
+    /**
+     * @param index which puzzle, from 0
+     * @param into the board to overwrite, it has to be the size of the puzzles
+     * @return into
+     * @throws IllegalStateException if the file has no solutions
+     */
+    public SudokuBoard getSolution(long index, SudokuBoard into){
+        if (!hasSolutions()){
+            throw new IllegalStateException("the file has no solutions");
+        }
+        return read(index, true, into);
+    }
+
+    /**
+     * Decodes one cell of a puzzle, without the rest of it.
+     *
+     * @param index which puzzle, from 0
+     * @param cell the cell
+     * @return the value of the cell, 0 if it is empty
+     */
+    public int getCell(long index, int cell){
+        if (cell < 0 || cell >= n * n){
+            throw new IndexOutOfBoundsException("cell " + cell + " of a " + n + "x" + n + " board");
+        }
+        return header.unpack(segment(index), offset(index), cell);
+    }
+
+    /**
+     * Decodes a board of the record at index into the board given, or into
+     * a new one if it is null.
+     */
+    private SudokuBoard read(long index, boolean solution, SudokuBoard into){
+        final ByteBuffer segment = segment(index);
+        if (into == null){
+            into = new SudokuBoard(p, q);
+        }
+        else if (into.getSmallWidth() != p || into.getSmallHeight() != q){
+            throw new IllegalArgumentException("the puzzles are " + n + "x" + n + ", not "
+                    + into.getSize() + "x" + into.getSize());
+        }
+        final int base = offset(index) + (solution ? header.boardBytes : 0);
+        if (!header.unpack(segment, base, into)){
+            throw new IllegalStateException("puzzle " + index + " has a cell too big for a " + n + "x" + n + " board");
+        }
+        return into;
+    }
+
+    /**
+     * @return the segment holding the record at index
+     */
+    private ByteBuffer segment(long index){
+        if (index < 0 || index >= count){
+            throw new IndexOutOfBoundsException("puzzle " + index + " of " + count);
+        }
+        return segments[(int)(index / recordsPerSegment)];
+    }
+
+    /**
+     * @return where the record at index starts in its segment
+     */
+    private int offset(long index){
+        return (int)(index % recordsPerSegment) * header.recordBytes;
+    }
+
+    /**
+     * @return the puzzles in order, a new board for each
+     */
+    @Override
+    public Iterator<SudokuBoard> iterator(){
+        return new Iterator<SudokuBoard>(){
+            private long next = 0;
+
+            @Override
+            public boolean hasNext(){
+                return next < count;
+            }
+
+            @Override
+            public SudokuBoard next(){
+                if (!hasNext()){
+                    throw new NoSuchElementException();
+                }
+                return getPuzzle(next++);
+            }
+
+            @Override
+            public void remove(){
+                throw new UnsupportedOperationException("the corpus is read only");
+            }
+        };
+    }
+
+    /**
+     * Closes the file. The maps stay until they are garbage collected, Java
+     * has no way to drop them sooner.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
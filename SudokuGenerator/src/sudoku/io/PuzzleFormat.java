@@ -0,0 +1,47 @@
+package sudoku.io;
+
+/**
+ * The ways puzzles can be written out.
+ *
+ * @author Taras Mychaskiw
+ */
+public enum PuzzleFormat {
+    LINE("txt"),        //one puzzle per line, a character per cell
+    PRETTY("txt"),      //the grid from SudokuBoard.toString(), a blank line between
+    CSV("csv"),         //puzzle,solution,clues,time_ms
+    BINARY("bin");      //packed cells, see BinaryPuzzleWriter
+
+    private final String extension;
+
+    private PuzzleFormat(String extension){
+        this.extension = extension;
+    }
+
+    /**
+     * @return the file name extension for the format, without the dot
+     */
+    public String getExtension(){
+        return extension;
+    }
+
+    /**
+     * @return true if the solution of every puzzle has to be written too
+     */
+    public boolean needsSolution(){
+        return this == CSV;
+    }
+
+    /**
+     * @param name the name of a format, in any case
+     * @return the format
+     * @throws IllegalArgumentException if there is no such format
+     */
+    public static PuzzleFormat parse(String name){
+        for (PuzzleFormat format : values()){
+            if (format.name().equalsIgnoreCase(name)){
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("unknown output format: " + name + ", use line|pretty|csv|binary");
+    }
+}
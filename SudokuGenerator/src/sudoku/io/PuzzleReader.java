@@ -0,0 +1,110 @@
+package sudoku.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import sudoku.SudokuBoard;
+
+/**
+ * Reads puzzles back one at a time, so a file of any size can be worked
+ * through without holding it in memory. Everything PuzzleWriter writes can
+ * be read, gzipped or not, and the kind of file is found from its first
+ * bytes, so the name does not matter.
+ *
+ * @author Taras Mychaskiw
+ */
+public abstract class PuzzleReader implements Closeable {
+
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    private long count;
+
+    /**
+     * Opens a file of puzzles.
+     *
+     * @param path the file to read
+     * @param p width of the small box, for text files
+     * @param q height of the small box, for text files
+     * @return the reader, which has to be closed
+     * @throws IOException if the file can not be opened
+     */
+    public static PuzzleReader open(String path, int p, int q) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path), 1 << 16);
+        try {
+            if (peek(in, 2) == GZIP_MAGIC){
+                in = new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+            }
+            return create(in, p, q);
+        } catch (IOException | RuntimeException ex){
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param in where to read the puzzles from, it is closed with the reader,
+     * and has to support mark()
+     * @param p width of the small box, for text
+     * @param q height of the small box, for text
+     * @return the reader
+     * @throws IOException if the start of the input can not be read
+     */
+    public static PuzzleReader create(InputStream in, int p, int q) throws IOException {
+        final int magic = peek(in, 4);
+        final int binary = (BinaryPuzzleWriter.MAGIC[0] << 24) | (BinaryPuzzleWriter.MAGIC[1] << 16)
+                | (BinaryPuzzleWriter.MAGIC[2] << 8) | BinaryPuzzleWriter.MAGIC[3];
+        return magic == binary ? new BinaryPuzzleReader(in) : new TextPuzzleReader(in, p, q);
+    }
+
+    /**
+     * @return the first bytes of the stream, without taking them, or -1 if
+     * it is shorter than that
+     */
+    private static int peek(InputStream in, int bytes) throws IOException {
+        in.mark(bytes);
+        try {
+            int value = 0;
+            for (int i = 0; i < bytes; i++){
+                final int b = in.read();
+                if (b < 0){
+                    return -1;
+                }
+                value = (value << 8) | b;
+            }
+            return value;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Reads the next puzzle.
+     *
+     * @return the puzzle, or null if there are no more
+     * @throws IOException if it can not be read, or is not a puzzle
+     */
+    public SudokuBoard read() throws IOException {
+        final SudokuBoard board = readRecord();
+        if (board != null){
+            count++;
+        }
+        return board;
+    }
+
+    /**
+     * Reads one puzzle in the format of the reader.
+     *
+     * @return the puzzle, or null at the end
+     */
+    protected abstract SudokuBoard readRecord() throws IOException;
+
+    /**
+     * @return how many puzzles have been read
+     */
+    public long getCount(){
+        return count;
+    }
+}
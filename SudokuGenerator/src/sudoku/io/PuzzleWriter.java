@@ -0,0 +1,89 @@
+package sudoku.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+import sudoku.SudokuBoard;
+
+/**
+ * Writes puzzles out one at a time, as soon as they are made, so nothing is
+ * kept in memory. Every so often the writer flushes on its own, gzip
+ * included, so the file can be read while a long run is still going.
+ *
+ * @author Taras Mychaskiw
+ */
+public abstract class PuzzleWriter implements Closeable, Flushable {
+
+    static final long FLUSH_INTERVAL = 1000000000L;     //ns between flushes
+
+    private long count;
+    private long lastFlush = System.nanoTime();
+
+    /**
+     * Opens a file to write puzzles to.
+     *
+     * @param path the file to write
+     * @param format how to write the puzzles
+     * @param gzip true to compress the file
+     * @return the writer, which has to be closed
+     * @throws IOException if the file can not be opened
+     */
+    public static PuzzleWriter open(String path, PuzzleFormat format, boolean gzip) throws IOException {
+        final FileOutputStream file = new FileOutputStream(path);
+        OutputStream out = file;
+        try {
+            out = gzip ? new GZIPOutputStream(out, 1 << 16, true) : new BufferedOutputStream(out, 1 << 16);
+            if (format == PuzzleFormat.BINARY){
+                return new BinaryPuzzleWriter(out, gzip ? null : file.getChannel());
+            }
+            return create(out, format);
+        } catch (IOException | RuntimeException ex){
+            out.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param out where to write the puzzles, it is closed with the writer
+     * @param format how to write the puzzles
+     * @return the writer
+     * @throws IOException if the start of the output can not be written
+     */
+    public static PuzzleWriter create(OutputStream out, PuzzleFormat format) throws IOException {
+        return format == PuzzleFormat.BINARY ? new BinaryPuzzleWriter(out, null) : new TextPuzzleWriter(out, format);
+    }
+
+    /**
+     * Writes a puzzle.
+     *
+     * @param puzzle the puzzle
+     * @param solution its solution, needed if the format says so
+     * @param nanos how long the puzzle took to make
+     * @throws IOException if it can not be written
+     */
+    public void write(SudokuBoard puzzle, SudokuBoard solution, long nanos) throws IOException {
+        writeRecord(puzzle, solution, nanos);
+        count++;
+        final long now = System.nanoTime();
+        if (now - lastFlush >= FLUSH_INTERVAL){
+            flush();
+            lastFlush = now;
+        }
+    }
+
+    /**
+     * Writes one puzzle in the format of the writer.
+     */
+    protected abstract void writeRecord(SudokuBoard puzzle, SudokuBoard solution, long nanos) throws IOException;
+
+    /**
+     * @return how many puzzles have been written
+     */
+    public long getCount(){
+        return count;
+    }
+}
@@ -0,0 +1,115 @@
+package sudoku.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import sudoku.SudokuBoard;
+
+/**
+ * Reads puzzles written as text: one per line, the pretty grid, or csv, see
+ * TextPuzzleWriter. The cells are read by BoardCodec. Blank lines,
+ * lines starting with '#' and the csv header are skipped, and only the first
+ * column of a csv line is read.
+ *
+ * @author Taras Mychaskiw
+ */
+class TextPuzzleReader extends PuzzleReader {
+
+    private final BufferedReader in;
+    private final int p, q, n;
+    private int lineNumber;
+
+    /**
+     * @param in where to read the puzzles from
+     * @param p width of the small box
+     * @param q height of the small box
+     */
+    TextPuzzleReader(InputStream in, int p, int q){
+        this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16);
+        this.p = p;
+        this.q = q;
+        this.n = p * q;
+    }
+
+    @Override
+    protected SudokuBoard readRecord() throws IOException {
+        String line = nextLine();
+        if (line == null){
+            return null;
+        }
+        if (line.startsWith("puzzle,")){    //the csv header
+            line = nextLine();
+            if (line == null){
+                return null;
+            }
+        }
+        final SudokuBoard board = new SudokuBoard(p, q);
+        if (line.indexOf(' ') >= 0 || line.indexOf('|') >= 0){
+            readGrid(line, board);
+        } else {
+            readLine(line, board);
+        }
+        return board;
+    }
+
+    /**
+     * @return the next line which is not blank or a comment, or null
+     */
+    private String nextLine() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null){
+            lineNumber++;
+            line = line.trim();
+            if (!line.isEmpty() && line.charAt(0) != '#'){
+                return line;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a board written on one line, up to the first comma.
+     */
+    private void readLine(String line, SudokuBoard board) throws IOException {
+        final int comma = line.indexOf(',');
+        final int length = comma < 0 ? line.length() : comma;
+        if (length != n * n){
+            throw new IOException("line " + lineNumber + " has " + length + " cells, a " + n + "x" + n
+                    + " board has " + n * n + ", set the size of the boards");
+        }
+        try {
+            BoardCodec.decode(line, 0, board);
+        } catch (IllegalArgumentException ex){
+            throw new IOException("line " + lineNumber + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Reads a board written as the grid of SudokuBoard.toString(), which
+     * starts at the line given.
+     */
+    private void readGrid(String line, SudokuBoard board) throws IOException {
+        int cell = 0;
+        while (true){
+            try {
+                cell = BoardCodec.decodeGrid(line, cell, board);
+            } catch (IllegalArgumentException ex){
+                throw new IOException("line " + lineNumber + ": " + ex.getMessage());
+            }
+            if (cell == n * n){
+                return;
+            }
+            line = nextLine();
+            if (line == null){
+                throw new IOException("the input ends in the middle of a board");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
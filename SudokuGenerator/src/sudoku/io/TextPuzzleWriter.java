@@ -0,0 +1,68 @@
+package sudoku.io;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import sudoku.SudokuBoard;
+
+/**
+ * Writes puzzles as text: one line each, the pretty grid, or csv.
+ *
+ * A line is written by BoardCodec, one character per cell.
+ *
+ * @author Taras Mychaskiw
+ */
+class TextPuzzleWriter extends PuzzleWriter {
+
+    private final Writer out;
+    private final PuzzleFormat format;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param out where to write the puzzles
+     * @param format LINE, PRETTY or CSV
+     * @throws IOException if the csv header can not be written
+     */
+    TextPuzzleWriter(OutputStream out, PuzzleFormat format) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.US_ASCII));
+        this.format = format;
+        if (format == PuzzleFormat.CSV){
+            this.out.write("puzzle,solution,clues,time_ms\n");
+        }
+    }
+
+    @Override
+    protected void writeRecord(SudokuBoard puzzle, SudokuBoard solution, long nanos) throws IOException {
+        line.setLength(0);
+        switch (format){
+            case LINE:
+                BoardCodec.append(line, puzzle).append('\n');
+                break;
+            case PRETTY:
+                line.append(puzzle).append("\n\n");
+                break;
+            case CSV:
+                BoardCodec.append(line, puzzle).append(',');
+                if (solution != null){
+                    BoardCodec.append(line, solution);
+                }
+                line.append(',').append(puzzle.getNumClues());
+                line.append(',').append(nanos / 1000000).append('\n');
+                break;
+        }
+        out.append(line);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,150 @@
+package sudoku.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how many times took how long, in ns, so the tail can be read back
+ * and not just the average. Times are kept in buckets, 16 to every power of
+ * two, so a percentile is never off by more than a sixteenth of its value,
+ * and the memory taken is the same for a million times as for one. Times
+ * under 32ns get a bucket each. The longest time is kept exactly.
+ *
+ * Any number of threads can record at once. Like a StripedCounter, each
+ * stripe of the buckets is only added to by the threads of that stripe, and
+ * reading merges them.
+ *
+ * @author Taras Mychaskiw
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;      //buckets per power of two
+    static final int BUCKETS = (Long.SIZE - SUB_BITS) * SUB;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(StripedCounter.STRIPES * BUCKETS);
+    private final StripedCounter count = new StripedCounter();
+    private final StripedCounter total = new StripedCounter();    //ns
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param name what is being timed
+     */
+    public LatencyHistogram(String name){
+        this.name = name;
+    }
+
+    public String getName(){ return name; }
+    public long getCount(){ return count.sum(); }
+    public long getMax(){ return max.get(); }
+
+    /**
+     * @return the average time, in ns
+     */
+    public double getMean(){
+        final long n = count.sum();
+        return n == 0 ? 0 : (double)total.sum() / n;
+    }
+
+    /**
+     * @param nanos how long something took
+     */
+    public void record(long nanos){
+        if (nanos < 0){
+            nanos = 0;      //the clock went back
+        }
+        buckets.getAndIncrement(StripedCounter.stripe() * BUCKETS + bucket(nanos));
+        count.increment();
+        total.add(nanos);
+        long longest = max.get();
+        while (nanos > longest && !max.compareAndSet(longest, nanos)){
+            longest = max.get();
+        }
+    }
+
+    /**
+     * Records the time since the start.
+     *
+     * @param start what System.nanoTime() was when it started
+     */
+    public void recordSince(long start){
+        record(System.nanoTime() - start);
+    }
+
+    /**
+     * @param percentile the fraction of times to be at or under, 0.5 for the median
+     * @return the time that many of the times were at or under, in ns
+     */
+    public long getPercentile(double percentile){
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Reads several percentiles from one merge of the stripes, so they agree
+     * with each other even while times are being recorded.
+     *
+     * @param percentiles fractions of the times, in increasing order
+     * @return the time at each percentile, in ns, 0 if nothing was recorded
+     */
+    public long[] getPercentiles(double... percentiles){
+        final long[] merged = new long[BUCKETS];
+        long n = 0;
+        for (int stripe = 0; stripe < StripedCounter.STRIPES; stripe++){
+            for (int i = 0; i < BUCKETS; i++){
+                final long c = buckets.get(stripe * BUCKETS + i);
+                merged[i] += c;
+                n += c;
+            }
+        }
+        final long longest = max.get();
+        final long[] times = new long[percentiles.length];
+        long seen = 0;
+        int i = 0;
+        for (int p = 0; p < percentiles.length && n > 0; p++){
+            final long rank = Math.max(1, (long)Math.ceil(percentiles[p] * n));
+            while (i < BUCKETS - 1 && seen + merged[i] < rank){
+                seen += merged[i++];
+            }
+            times[p] = Math.min(highest(i), longest);
+        }
+        return times;
+    }
+
+    /**
+     * Clears every count. Times recorded meanwhile may be lost.
+     */
+    public void reset(){
+        for (int i = 0; i < buckets.length(); i++){
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * @param nanos a time
+     * @return the bucket it goes in
+     */
+    static int bucket(long nanos){
+        if (nanos < 2 * SUB){
+            return (int)nanos;
+        }
+        final int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        return shift * SUB + (int)(nanos >>> shift);
+    }
+
+    /**
+     * @param bucket a bucket
+     * @return the longest time that goes in it
+     */
+    static long highest(int bucket){
+        if (bucket < 2 * SUB){
+            return bucket;
+        }
+        final int shift = bucket / SUB - 1;
+        final long mantissa = bucket - shift * SUB;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,135 @@
+package sudoku.metrics;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Timers and counters by name, shared by every thread. Asking for a name the
+ * first time makes it, so code only needs the name to record, and whatever
+ * was recorded is printed together by dump().
+ *
+ * Names go from the general to the particular, split by dots:
+ *   generator.[class].getProblem       a whole problem
+ *   generator.[class].fill             filling a random grid
+ *   generator.[class].addition         adding clues until there is one solution
+ *   generator.[class].removal          taking out every clue it can
+ *   service.[question]                 a question to a SolverService, any policy
+ *   solver.[class].[question]          one solver answering, raced or not
+ *   solver.[class].cancelled           answers given up when another won
+ *
+ * The questions are getFormity, hasOtherSolution and solve.
+ *
+ * @author Taras Mychaskiw
+ */
+public class MetricsRegistry {
+
+    /**
+     * the shared registry, made the first time it is asked for
+     */
+    private static class DefaultHolder {
+        static final MetricsRegistry INSTANCE = new MetricsRegistry();
+    }
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentMap<String,LatencyHistogram> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,StripedCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @return the registry shared by everything not given one of its own
+     */
+    public static MetricsRegistry getDefault(){
+        return DefaultHolder.INSTANCE;
+    }
+
+    /**
+     * @param name what is timed
+     * @return the timer of that name, made if there is none yet
+     */
+    public LatencyHistogram timer(String name){
+        LatencyHistogram timer = timers.get(name);
+        if (timer == null){
+            LatencyHistogram fresh = new LatencyHistogram(name);
+            timer = timers.putIfAbsent(name, fresh);
+            if (timer == null){
+                timer = fresh;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * @param name what is counted
+     * @return the counter of that name, made if there is none yet
+     */
+    public StripedCounter counter(String name){
+        StripedCounter counter = counters.get(name);
+        if (counter == null){
+            StripedCounter fresh = new StripedCounter();
+            counter = counters.putIfAbsent(name, fresh);
+            if (counter == null){
+                counter = fresh;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Clears every timer and counter, they are kept for those holding them.
+     */
+    public void reset(){
+        for (LatencyHistogram timer : timers.values()){
+            timer.reset();
+        }
+        for (StripedCounter counter : counters.values()){
+            counter.reset();
+        }
+    }
+
+    /**
+     * Prints every timer which has recorded something, as a table of its
+     * count, mean, percentiles and longest time in ms, and then every counter
+     * which is not 0. Both are sorted by name.
+     *
+     * @param out where to print
+     */
+    public void dump(PrintStream out){
+        final List<String> names = new ArrayList<>(timers.keySet());
+        Collections.sort(names);
+        int width = "timer".length();
+        for (String name : names){
+            width = Math.max(width, name.length());
+        }
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-" + width + "s %9s %10s %10s %10s %10s %10s %10s\n",
+                "timer", "count", "mean ms", "p50", "p90", "p99", "p999", "max"));
+        for (String name : names){
+            final LatencyHistogram timer = timers.get(name);
+            final long count = timer.getCount();
+            if (count == 0){
+                continue;
+            }
+            final long[] times = timer.getPercentiles(PERCENTILES);
+            sb.append(String.format("%-" + width + "s %9d %10.3f", name, count, timer.getMean() / 1e6));
+            for (long time : times){
+                sb.append(String.format(" %10.3f", time / 1e6));
+            }
+            sb.append(String.format(" %10.3f\n", timer.getMax() / 1e6));
+        }
+
+        final List<String> counted = new ArrayList<>(counters.keySet());
+        Collections.sort(counted);
+        for (String name : counted){
+            final long sum = counters.get(name).sum();
+            if (sum != 0){
+                sb.append(name).append(": ").append(sum).append("\n");
+            }
+        }
+        out.print(sb);
+        out.flush();
+    }
+}
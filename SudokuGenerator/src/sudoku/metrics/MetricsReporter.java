@@ -0,0 +1,63 @@
+package sudoku.metrics;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dumps a registry every so often from a thread of its own, so a long run
+ * shows how its times are going before it is over. The times are the totals
+ * since the start, not since the last dump.
+ *
+ * @author Taras Mychaskiw
+ */
+public class MetricsReporter implements Closeable {
+
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Starts dumping the registry, the first time after one period.
+     *
+     * @param registry what to dump
+     * @param out where to print it
+     * @param period how long between dumps, more than 0
+     * @param unit the unit of the period
+     */
+    public MetricsReporter(final MetricsRegistry registry, final PrintStream out, long period, TimeUnit unit){
+        final long start = System.nanoTime();
+        timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable task){
+                Thread thread = new Thread(task, "metrics-reporter");
+                thread.setDaemon(true);     //never keeps the program alive
+                return thread;
+            }
+        });
+        timer.scheduleAtFixedRate(new Runnable(){
+            @Override
+            public void run(){
+                synchronized (out){     //no other line lands in the middle of the dump
+                    out.println("\nmetrics after " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + "s:");
+                    registry.dump(out);
+                    out.println();
+                }
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Stops dumping. A dump already being printed is finished first.
+     */
+    @Override
+    public void close(){
+        timer.shutdown();
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package sudoku.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count many threads can add to at once without fighting over it. The count
+ * is split into stripes, each on a cache line of its own, and a thread always
+ * adds to the stripe picked by its id. Reading adds the stripes up, so a sum
+ * taken while threads are still adding is only a snapshot.
+ *
+ * @author Taras Mychaskiw
+ */
+public class StripedCounter {
+
+    static final int STRIPES = stripes();   //a power of 2
+    private static final int PAD = 8;       //longs per cache line
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    /**
+     * @return a stripe per processor, up to 16
+     */
+    private static int stripes(){
+        final int cpus = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        return Integer.highestOneBit(cpus) << (Integer.bitCount(cpus) > 1 ? 1 : 0);
+    }
+
+    /**
+     * @return the stripe of the calling thread
+     */
+    static int stripe(){
+        return (int)Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    /**
+     * @param x how much to add
+     */
+    public void add(long x){
+        cells.getAndAdd(stripe() * PAD, x);
+    }
+
+    public void increment(){
+        add(1);
+    }
+
+    /**
+     * @return the count, adding up every stripe
+     */
+    public long sum(){
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++){
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the count back to 0. What other threads add meanwhile may be lost.
+     */
+    public void reset(){
+        for (int i = 0; i < STRIPES; i++){
+            cells.set(i * PAD, 0);
+        }
+    }
+
+    @Override
+    public String toString(){
+        return Long.toString(sum());
+    }
+}
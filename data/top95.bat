@@ -1 +1 @@
-powershell "java -cp ../SudokuGenerator/build/classes sudoku.Top95 | tee top95.txt"
\ No newline at end of file
+powershell "java -cp ../SudokuGenerator/build/classes sudoku.Top95 ../SudokuGenerator/data/top95-puzzles.txt | tee top95.txt"
\ No newline at end of file